@@ -0,0 +1,98 @@
+package smarthome;
+
+import java.awt.FlowLayout;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+
+import smarthome.models.AirConditioner;
+
+class AirConditionerControlPanel extends DeviceControlPanel<AirConditioner> {
+
+    private JSlider tempSlider;
+    private JLabel tempValueLabel;
+    private JComboBox<String> modeComboBox;
+    private JCheckBox energyCheckbox;
+    private JCheckBox autoTempCheckbox;
+
+    AirConditionerControlPanel(Actions actions, boolean canControl) {
+        super(AirConditioner.class, actions, canControl);
+        buildSections();
+    }
+
+    @Override
+    protected void buildControls() {
+        // Temperature control
+        JPanel tempPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        tempSlider = new JSlider(16, 30, 24);
+        tempSlider.setMajorTickSpacing(2);
+        tempSlider.setPaintTicks(true);
+        tempSlider.setPaintLabels(true);
+        tempValueLabel = new JLabel("24°C");
+        tempSlider.addChangeListener(e -> {
+            int value = tempSlider.getValue();
+            tempValueLabel.setText(value + "°C");
+            // Only the released value is sent to the device
+            if (!updating && !tempSlider.getValueIsAdjusting()) {
+                actions.control(device, d -> ((AirConditioner) d).setTemperature(value));
+            }
+        });
+        tempPanel.add(new JLabel("Temperature:"));
+        tempPanel.add(tempSlider);
+        tempPanel.add(tempValueLabel);
+        add(tempPanel);
+
+        // Mode control
+        JPanel modePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        modeComboBox = new JComboBox<>(new String[] {"COOL", "HEAT", "FAN", "DRY", "AUTO"});
+        modeComboBox.addActionListener(e -> {
+            if (!updating) {
+                String selectedMode = (String) modeComboBox.getSelectedItem();
+                actions.control(device, d -> ((AirConditioner) d).setMode(selectedMode));
+            }
+        });
+        modePanel.add(new JLabel("Mode:"));
+        modePanel.add(modeComboBox);
+        add(modePanel);
+
+        // Energy saving mode
+        JPanel energyPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        energyCheckbox = new JCheckBox("Energy Saving Mode");
+        energyCheckbox.addActionListener(e -> {
+            if (!updating) {
+                boolean selected = energyCheckbox.isSelected();
+                actions.control(device, d -> ((AirConditioner) d).setEnergySavingMode(selected));
+            }
+        });
+        energyPanel.add(energyCheckbox);
+        add(energyPanel);
+
+        // Auto temperature adjust
+        JPanel autoTempPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        autoTempCheckbox = new JCheckBox("Auto Temperature Adjust");
+        autoTempCheckbox.addActionListener(e -> {
+            if (!updating) {
+                boolean selected = autoTempCheckbox.isSelected();
+                actions.control(device, d -> ((AirConditioner) d).setAutoTempAdjust(selected));
+            }
+        });
+        autoTempPanel.add(autoTempCheckbox);
+        add(autoTempPanel);
+    }
+
+    @Override
+    protected void update(AirConditioner ac) {
+        setValue(tempSlider, ac.getTemperature());
+        setText(tempValueLabel, tempSlider.getValue() + "°C");
+        setSelected(modeComboBox, ac.getMode());
+        if (energyCheckbox.isSelected() != ac.isEnergySavingMode()) {
+            energyCheckbox.setSelected(ac.isEnergySavingMode());
+        }
+        if (autoTempCheckbox.isSelected() != ac.isAutoTempAdjust()) {
+            autoTempCheckbox.setSelected(ac.isAutoTempAdjust());
+        }
+    }
+}
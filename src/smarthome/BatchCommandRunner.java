@@ -0,0 +1,439 @@
+package smarthome;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import smarthome.catalog.DeviceCatalog;
+import smarthome.exceptions.*;
+import smarthome.models.*;
+import smarthome.system.SmartHomeSystem;
+
+// Non-interactive console mode: streams a command file and runs it against
+// SmartHomeSystem. Device commands are pipelined, i.e. sent without waiting
+// for the previous acknowledgement, and their results are collected in
+// batches; commands that read or restructure the home first wait for
+// everything before them. Results are reported per command, in file order.
+//
+// One command per line, '#' starts a comment, names with spaces are quoted:
+//   login <user> <password>            logout
+//   add <light|fan|ac|security> <name> <location>
+//   control <device> on|off
+//   control <device> brightness|speed|temperature <value>
+//   control <device> mode|color|security-mode <value>
+//   schedule <device> <HH:mm> <action> [parameter] [@daily|@weekdays|@weekends|@MON,WED,...]
+//   query <device>|all                 remove <device>
+//   system on|off                      wait
+//   import <file.csv|file.json>        export <file.csv|file.json>
+// Devices are referred to by id or name.
+public class BatchCommandRunner {
+
+    // Device commands in flight before results are collected
+    private static final int PIPELINE_DEPTH = 512;
+
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    private static class Result {
+        private final int line;
+        private final String command;
+        private final CompletableFuture<String> outcome;
+
+        private Result(int line, String command, CompletableFuture<String> outcome) {
+            this.line = line;
+            this.command = command;
+            this.outcome = outcome;
+        }
+    }
+
+    private final SmartHomeSystem system;
+    private final PrintStream out;
+    private final boolean quiet;
+    private final List<Result> pipeline;
+    private final Map<String, Integer> commandCounts;
+    private int succeeded;
+    private int failed;
+
+    public BatchCommandRunner(SmartHomeSystem system, PrintStream out, boolean quiet) {
+        this.system = system;
+        this.out = out;
+        this.quiet = quiet;
+        this.pipeline = new ArrayList<>();
+        this.commandCounts = new TreeMap<>();
+    }
+
+    // Usage: BatchCommandRunner [--quiet] [--verbose] <file|->
+    public static void main(String[] args) {
+        boolean quiet = false;
+        boolean verbose = false;
+        String file = null;
+        for (String arg : args) {
+            if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.equals("--verbose")) {
+                verbose = true;
+            } else {
+                file = arg;
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: BatchCommandRunner [--quiet] [--verbose] <file|->");
+            System.exit(2);
+        }
+
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        if (!verbose) {
+            // Keep the output to one line per command
+            Device.setConsoleOutput(false);
+            system.setConsoleEcho(false);
+        }
+
+        boolean ok;
+        try (BufferedReader reader = file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            ok = new BatchCommandRunner(system, System.out, quiet).run(reader);
+        } catch (IOException e) {
+            System.err.println("Error reading batch file: " + e.getMessage());
+            ok = false;
+        }
+        system.shutdown();
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Returns true if every command succeeded
+    public boolean run(BufferedReader reader) throws IOException {
+        long start = System.nanoTime();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            List<String> tokens;
+            try {
+                tokens = tokenize(line);
+            } catch (IllegalArgumentException e) {
+                pipeline.add(new Result(lineNumber, line.trim(), CompletableFuture.failedFuture(e)));
+                continue;
+            }
+            if (tokens.isEmpty()) {
+                continue;
+            }
+
+            String verb = tokens.get(0).toLowerCase();
+            commandCounts.merge(verb, 1, Integer::sum);
+            if (!verb.equals("control") && !verb.equals("add") && !verb.equals("schedule")) {
+                // Reads and structural changes see all earlier commands applied
+                collect();
+            }
+            pipeline.add(new Result(lineNumber, line.trim(), execute(verb, tokens)));
+            if (pipeline.size() >= PIPELINE_DEPTH) {
+                collect();
+            }
+        }
+        collect();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int total = succeeded + failed;
+        out.printf("Batch finished: %d command(s), %d succeeded, %d failed in %.2f s (%.0f commands/s)%n",
+                   total, succeeded, failed, seconds, seconds > 0 ? total / seconds : 0);
+        out.println("Commands: " + commandCounts);
+        return failed == 0;
+    }
+
+    private void collect() {
+        for (Result result : pipeline) {
+            try {
+                String message = result.outcome.join();
+                succeeded++;
+                if (!quiet) {
+                    out.println("line " + result.line + ": OK " + result.command +
+                                (message.isEmpty() ? "" : " -> " + message));
+                }
+            } catch (CompletionException e) {
+                failed++;
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                out.println("line " + result.line + ": FAILED " + result.command + " -> " + cause.getMessage());
+            }
+        }
+        pipeline.clear();
+    }
+
+    private CompletableFuture<String> execute(String verb, List<String> tokens) {
+        try {
+            switch (verb) {
+                case "login":
+                    requireArguments(tokens, 3);
+                    system.login(tokens.get(1), tokens.get(2));
+                    return done("");
+                case "logout":
+                    system.logout();
+                    return done("");
+                case "add":
+                    return add(tokens);
+                case "control":
+                    return control(tokens);
+                case "schedule":
+                    return schedule(tokens);
+                case "query":
+                    return query(tokens);
+                case "remove":
+                    requireArguments(tokens, 2);
+                    Device removed = system.findDevice(tokens.get(1));
+                    system.removeDevice(removed.getId());
+                    return done(removed.getId());
+                case "system":
+                    requireArguments(tokens, 2);
+                    return switchSystem(tokens.get(1));
+                case "wait":
+                    // Everything before it was collected already
+                    return done("");
+                case "import":
+                    requireArguments(tokens, 2);
+                    return done(new DeviceCatalog(system).importFrom(Paths.get(tokens.get(1))) + " device(s)");
+                case "export":
+                    requireArguments(tokens, 2);
+                    return done(new DeviceCatalog(system).exportTo(Paths.get(tokens.get(1))) + " device(s)");
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + verb);
+            }
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static CompletableFuture<String> done(String message) {
+        return CompletableFuture.completedFuture(message);
+    }
+
+    private CompletableFuture<String> add(List<String> tokens) throws AuthenticationException {
+        requireArguments(tokens, 4);
+        String name = tokens.get(2);
+        String location = tokens.get(3);
+        String createdBy = requireUser().getUsername();
+
+        Device device;
+        switch (tokens.get(1).toLowerCase()) {
+            case "light":
+                device = new Light(name, location, createdBy);
+                break;
+            case "fan":
+                device = new Fan(name, location, createdBy);
+                break;
+            case "ac":
+            case "airconditioner":
+                device = new AirConditioner(name, location, createdBy);
+                break;
+            case "security":
+                device = new SecuritySystem(name, location, createdBy);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown device type: " + tokens.get(1));
+        }
+        system.addDevice(device);
+        return done(device.getId());
+    }
+
+    private CompletableFuture<String> control(List<String> tokens) throws Exception {
+        requireArguments(tokens, 3);
+        if (!requireUser().hasPermission("CONTROL_DEVICES")) {
+            throw new AuthenticationException("User does not have permission to control devices");
+        }
+        Device device = system.findDevice(tokens.get(1));
+        String action = tokens.get(2).toLowerCase();
+
+        Consumer<Device> command;
+        if (action.equals("on")) {
+            command = new DeviceCommand("ON")::execute;
+        } else if (action.equals("off")) {
+            command = new DeviceCommand("OFF")::execute;
+        } else {
+            requireArguments(tokens, 4);
+            command = valueCommand(device, action, tokens.get(3));
+        }
+        return system.sendCommand(device, command).thenApply(ignored -> "");
+    }
+
+    private static Consumer<Device> valueCommand(Device device, String action, String value) {
+        switch (action) {
+            case "brightness":
+                Light light = as(Light.class, device, action);
+                int brightness = parseNumber(value);
+                return d -> light.setBrightness(brightness);
+            case "color":
+                Light colored = as(Light.class, device, action);
+                return d -> colored.setColor(value);
+            case "speed":
+                Fan fan = as(Fan.class, device, action);
+                int speed = parseNumber(value);
+                return d -> fan.setSpeed(speed);
+            case "temperature":
+                AirConditioner ac = as(AirConditioner.class, device, action);
+                int temperature = parseNumber(value);
+                return d -> ac.setTemperature(temperature);
+            case "mode":
+                AirConditioner unit = as(AirConditioner.class, device, action);
+                return d -> unit.setMode(value.toUpperCase());
+            case "security-mode":
+                SecuritySystem security = as(SecuritySystem.class, device, action);
+                return d -> security.setSecurityMode(value.toUpperCase());
+            default:
+                throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+
+    private static <T extends Device> T as(Class<T> type, Device device, String action) {
+        if (!type.isInstance(device)) {
+            throw new IllegalArgumentException(device.getName() + " does not support " + action);
+        }
+        return type.cast(device);
+    }
+
+    private static int parseNumber(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private CompletableFuture<String> schedule(List<String> tokens) throws Exception {
+        requireArguments(tokens, 4);
+        requireUser();
+        Device device = system.findDevice(tokens.get(1));
+
+        LocalTime time;
+        try {
+            time = LocalTime.parse(tokens.get(2));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time: " + tokens.get(2));
+        }
+        String action = tokens.get(3).toUpperCase();
+
+        List<String> rest = new ArrayList<>(tokens.subList(4, tokens.size()));
+        boolean[] days = parseDays("@daily");
+        if (!rest.isEmpty() && rest.get(rest.size() - 1).startsWith("@")) {
+            days = parseDays(rest.remove(rest.size() - 1));
+        }
+
+        ScheduledTask task = new ScheduledTask(action + " at " + tokens.get(2), device, action,
+                                               rest.toArray(new String[0]), time, days);
+        // In the device's mailbox, like every other state change
+        return system.submit(device, d -> d.addScheduledTask(task)).thenApply(done -> task.toString());
+    }
+
+    private static boolean[] parseDays(String spec) {
+        boolean[] days = new boolean[7];
+        switch (spec.toLowerCase()) {
+            case "@daily":
+                Arrays.fill(days, true);
+                return days;
+            case "@weekdays":
+                Arrays.fill(days, 1, 6, true);
+                return days;
+            case "@weekends":
+                days[0] = true;
+                days[6] = true;
+                return days;
+            default:
+                for (String day : spec.substring(1).split(",")) {
+                    int index = Arrays.asList(DAY_NAMES).indexOf(day.trim().toUpperCase());
+                    if (index < 0) {
+                        throw new IllegalArgumentException("Unknown day: " + day);
+                    }
+                    days[index] = true;
+                }
+                return days;
+        }
+    }
+
+    private CompletableFuture<String> query(List<String> tokens) throws DeviceNotFoundException {
+        requireArguments(tokens, 2);
+        if (tokens.get(1).equalsIgnoreCase("all")) {
+            Map<String, Integer> byType = new TreeMap<>();
+            system.forEachDevice(device -> byType.merge(device.getClass().getSimpleName(), 1, Integer::sum));
+            return done(system.getDeviceCount() + " device(s) " + byType);
+        }
+        // Read on the device's queue so it reflects every earlier command
+        Device device = system.findDevice(tokens.get(1));
+        return system.submitAndGet(device, Device::toString);
+    }
+
+    private CompletableFuture<String> switchSystem(String state) {
+        if (state.equalsIgnoreCase("on")) {
+            return system.turnSystemOn().thenApply(done -> "");
+        } else if (state.equalsIgnoreCase("off")) {
+            return system.turnSystemOff().thenApply(done -> "");
+        }
+        throw new IllegalArgumentException("Expected on or off: " + state);
+    }
+
+    private User requireUser() throws AuthenticationException {
+        User user = system.getCurrentUser();
+        if (user == null) {
+            throw new AuthenticationException("User not authenticated");
+        }
+        return user;
+    }
+
+    private static void requireArguments(List<String> tokens, int count) {
+        if (tokens.size() < count) {
+            throw new IllegalArgumentException("Missing arguments");
+        }
+    }
+
+    // Splits on whitespace; double quotes group words and \" escapes a quote
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    token.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else if (c == '#' && !inToken) {
+                break;
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
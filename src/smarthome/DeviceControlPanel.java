@@ -0,0 +1,225 @@
+package smarthome;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSlider;
+import javax.swing.JToggleButton;
+
+import smarthome.models.Device;
+import smarthome.models.ScheduledTask;
+
+// Control panel for one device type. It is built once and then bound to
+// whichever device of that type is selected; bind() and refresh() only
+// push the device's current state into the existing widgets. While they
+// do, "updating" is set so the widgets' listeners do not echo the values
+// back to the device as commands.
+abstract class DeviceControlPanel<T extends Device> extends JPanel {
+
+    // What the panel's widgets do, implemented by the GUI
+    interface Actions {
+        void control(Device device, Consumer<Device> command);
+
+        void addSchedule(Device device);
+
+        void removeSchedule(Device device, ScheduledTask task);
+    }
+
+    protected final Actions actions;
+    protected T device;
+    protected boolean updating;
+
+    private final Class<T> type;
+    private final boolean canControl;
+    private final JLabel titleLabel;
+    private final JLabel locationLabel;
+    private JToggleButton powerToggle;
+    private JPanel tasksPanel;
+    private List<ScheduledTask> shownTasks;
+
+    DeviceControlPanel(Class<T> type, Actions actions, boolean canControl) {
+        this.type = type;
+        this.actions = actions;
+        this.canControl = canControl;
+        this.shownTasks = new ArrayList<>();
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+
+        titleLabel = new JLabel(" ");
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        titleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        add(titleLabel);
+
+        locationLabel = new JLabel(" ");
+        locationLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        add(locationLabel);
+        add(Box.createRigidArea(new Dimension(0, 20)));
+
+        if (!canControl) {
+            JLabel infoLabel = new JLabel("You don't have permission to control this device");
+            infoLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            add(infoLabel);
+        }
+    }
+
+    // Called by subclass constructors once their fields are set
+    protected final void buildSections() {
+        if (!canControl) {
+            return;
+        }
+        JPanel switchPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        powerToggle = new JToggleButton("OFF");
+        powerToggle.addActionListener(e -> {
+            if (updating) {
+                return;
+            }
+            boolean on = powerToggle.isSelected();
+            powerToggle.setText(on ? "ON" : "OFF");
+            actions.control(device, d -> {
+                if (on) {
+                    d.turnOn();
+                } else {
+                    d.turnOff();
+                }
+            });
+        });
+        switchPanel.add(new JLabel("Power:"));
+        switchPanel.add(powerToggle);
+        add(switchPanel);
+
+        buildControls();
+        buildSchedule();
+    }
+
+    // Adds the type specific widgets
+    protected abstract void buildControls();
+
+    // Copies the type specific state of the bound device into the widgets
+    protected abstract void update(T device);
+
+    boolean canShow(Device device) {
+        return type.isInstance(device);
+    }
+
+    void bind(Device device) {
+        this.device = type.cast(device);
+        refresh();
+    }
+
+    Device getDevice() {
+        return device;
+    }
+
+    void refresh() {
+        if (device == null) {
+            return;
+        }
+        updating = true;
+        try {
+            setText(titleLabel, device.getName());
+            setText(locationLabel, "Location: " + device.getLocation());
+            if (powerToggle != null) {
+                boolean on = device.isOn();
+                powerToggle.setSelected(on);
+                setText(powerToggle, on ? "ON" : "OFF");
+            }
+            if (canControl) {
+                update(device);
+                updateTasks();
+            }
+        } finally {
+            updating = false;
+        }
+    }
+
+    private void buildSchedule() {
+        add(Box.createRigidArea(new Dimension(0, 20)));
+        JPanel schedulePanel = new JPanel(new BorderLayout());
+        schedulePanel.setBorder(BorderFactory.createTitledBorder("Scheduled Tasks"));
+
+        JButton addScheduleButton = new JButton("Add Schedule");
+        addScheduleButton.addActionListener(e -> actions.addSchedule(device));
+        schedulePanel.add(addScheduleButton, BorderLayout.NORTH);
+
+        tasksPanel = new JPanel();
+        tasksPanel.setLayout(new BoxLayout(tasksPanel, BoxLayout.Y_AXIS));
+        schedulePanel.add(new JScrollPane(tasksPanel), BorderLayout.CENTER);
+        add(schedulePanel);
+    }
+
+    // Task rows are rebuilt only when the task list itself changed
+    private void updateTasks() {
+        List<ScheduledTask> tasks = device.getScheduledTasks();
+        if (sameTasks(tasks)) {
+            return;
+        }
+        shownTasks = new ArrayList<>(tasks);
+        tasksPanel.removeAll();
+        for (ScheduledTask task : shownTasks) {
+            JPanel taskItemPanel = new JPanel(new BorderLayout());
+            taskItemPanel.setBorder(BorderFactory.createEtchedBorder());
+
+            JButton removeButton = new JButton("Remove");
+            Device owner = device;
+            removeButton.addActionListener(e -> actions.removeSchedule(owner, task));
+
+            taskItemPanel.add(new JLabel(task.toString()), BorderLayout.CENTER);
+            taskItemPanel.add(removeButton, BorderLayout.EAST);
+            tasksPanel.add(taskItemPanel);
+        }
+        tasksPanel.revalidate();
+        tasksPanel.repaint();
+    }
+
+    private boolean sameTasks(List<ScheduledTask> tasks) {
+        if (tasks.size() != shownTasks.size()) {
+            return false;
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i) != shownTasks.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Helpers that skip no-op updates, so unchanged widgets are not repainted
+
+    protected static void setText(JLabel label, String text) {
+        if (!text.equals(label.getText())) {
+            label.setText(text);
+        }
+    }
+
+    protected static void setText(JToggleButton button, String text) {
+        if (!text.equals(button.getText())) {
+            button.setText(text);
+        }
+    }
+
+    // Leaves the slider alone while the user is dragging it
+    protected static void setValue(JSlider slider, int value) {
+        if (!slider.getValueIsAdjusting() && slider.getValue() != value) {
+            slider.setValue(value);
+        }
+    }
+
+    protected static void setSelected(JComboBox<String> comboBox, String value) {
+        if (value != null && !value.equals(comboBox.getSelectedItem())) {
+            comboBox.setSelectedItem(value);
+        }
+    }
+}
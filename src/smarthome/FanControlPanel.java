@@ -0,0 +1,48 @@
+package smarthome;
+
+import java.awt.FlowLayout;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+
+import smarthome.models.Fan;
+
+class FanControlPanel extends DeviceControlPanel<Fan> {
+
+    private JSlider speedSlider;
+    private JLabel speedValueLabel;
+
+    FanControlPanel(Actions actions, boolean canControl) {
+        super(Fan.class, actions, canControl);
+        buildSections();
+    }
+
+    @Override
+    protected void buildControls() {
+        // Speed control
+        JPanel speedPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        speedSlider = new JSlider(1, 5, 1);
+        speedSlider.setMajorTickSpacing(1);
+        speedSlider.setPaintTicks(true);
+        speedSlider.setPaintLabels(true);
+        speedValueLabel = new JLabel("Speed: 1");
+        speedSlider.addChangeListener(e -> {
+            int value = speedSlider.getValue();
+            speedValueLabel.setText("Speed: " + value);
+            // Only the released value is sent to the device
+            if (!updating && !speedSlider.getValueIsAdjusting()) {
+                actions.control(device, d -> ((Fan) d).setSpeed(value));
+            }
+        });
+        speedPanel.add(speedValueLabel);
+        speedPanel.add(speedSlider);
+        add(speedPanel);
+    }
+
+    @Override
+    protected void update(Fan fan) {
+        setValue(speedSlider, fan.getSpeed());
+        setText(speedValueLabel, "Speed: " + speedSlider.getValue());
+    }
+}
@@ -0,0 +1,293 @@
+package smarthome;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+
+import smarthome.interfaces.Switchable;
+import smarthome.models.AirConditioner;
+import smarthome.models.Device;
+import smarthome.models.Fan;
+import smarthome.models.Light;
+import smarthome.models.SecuritySystem;
+
+// Building overview: one box per location with an icon per device. The
+// layout is computed only when the device list changes; painting walks
+// just the rooms and devices inside the clip and stamps pre-rendered icon
+// images. A state change repaints only the changed devices' cells.
+class FloorPlanPanel extends JComponent {
+
+    private static final int CELL = 28;
+    private static final int ICON = 22;
+    private static final int ROOM_PADDING = 8;
+    private static final int ROOM_HEADER = 18;
+    private static final int ROOM_GAP = 12;
+    private static final int MAX_ROOM_COLUMNS = 8;
+    // Past this many changed devices a single repaint is cheaper than many small ones
+    private static final int MAX_SEPARATE_REPAINTS = 64;
+
+    private static final Color BACKGROUND = new Color(245, 245, 240);
+    private static final Color ROOM_FILL = Color.WHITE;
+    private static final Color ROOM_BORDER = new Color(120, 120, 120);
+
+    private enum IconState { OFF, ON, ALERT }
+
+    private static class Room {
+        private final String name;
+        private final List<Device> devices = new ArrayList<>();
+        private final Rectangle bounds = new Rectangle();
+
+        private Room(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Consumer<Device> onSelect;
+    private final List<Room> rooms;
+    private final Map<String, Rectangle> cellsById;
+    private final Map<String, Device> devicesById;
+    private final Map<String, BufferedImage> iconCache;
+
+    FloorPlanPanel(Consumer<Device> onSelect) {
+        this.onSelect = onSelect;
+        this.rooms = new ArrayList<>();
+        this.cellsById = new HashMap<>();
+        this.devicesById = new HashMap<>();
+        this.iconCache = new HashMap<>();
+        setOpaque(true);
+        setFont(new Font(Font.SANS_SERIF, Font.BOLD, 11));
+        ToolTipManager.sharedInstance().registerComponent(this);
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Device device = deviceAt(e.getX(), e.getY());
+                if (device != null) {
+                    onSelect.accept(device);
+                }
+            }
+        });
+    }
+
+    // Lays the rooms out in rows, each room a grid of device cells
+    void setDevices(List<Device> devices) {
+        rooms.clear();
+        cellsById.clear();
+        devicesById.clear();
+
+        Map<String, Room> byLocation = new LinkedHashMap<>();
+        for (Device device : devices) {
+            byLocation.computeIfAbsent(device.getLocation(), Room::new).devices.add(device);
+            devicesById.put(device.getId(), device);
+        }
+        rooms.addAll(byLocation.values());
+
+        int roomColumns = Math.max(1, Math.min(MAX_ROOM_COLUMNS, (int) Math.ceil(Math.sqrt(rooms.size()))));
+        int x = ROOM_GAP;
+        int y = ROOM_GAP;
+        int rowHeight = 0;
+        int width = 0;
+        for (int i = 0; i < rooms.size(); i++) {
+            if (i > 0 && i % roomColumns == 0) {
+                x = ROOM_GAP;
+                y += rowHeight + ROOM_GAP;
+                rowHeight = 0;
+            }
+            Room room = rooms.get(i);
+            int count = room.devices.size();
+            int columns = Math.max(3, (int) Math.ceil(Math.sqrt(count)));
+            int rows = (count + columns - 1) / columns;
+            room.bounds.setBounds(x, y, columns * CELL + 2 * ROOM_PADDING,
+                                  ROOM_HEADER + rows * CELL + 2 * ROOM_PADDING);
+            for (int d = 0; d < count; d++) {
+                cellsById.put(room.devices.get(d).getId(),
+                              new Rectangle(x + ROOM_PADDING + (d % columns) * CELL,
+                                            y + ROOM_HEADER + ROOM_PADDING + (d / columns) * CELL, CELL, CELL));
+            }
+            x += room.bounds.width + ROOM_GAP;
+            width = Math.max(width, x);
+            rowHeight = Math.max(rowHeight, room.bounds.height);
+        }
+        setPreferredSize(new Dimension(width, y + rowHeight + ROOM_GAP));
+        revalidate();
+        repaint();
+    }
+
+    // Repaints the cells of the given devices, each on its own when there
+    // are few of them; RepaintManager would otherwise merge far-apart cells
+    // into one large region
+    void devicesChanged(Set<String> deviceIds) {
+        if (!isShowing()) {
+            return;
+        }
+        if (deviceIds.size() > MAX_SEPARATE_REPAINTS) {
+            repaint();
+            return;
+        }
+        for (String id : deviceIds) {
+            Rectangle cell = cellsById.get(id);
+            if (cell != null) {
+                paintImmediately(cell);
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g2.setColor(BACKGROUND);
+        g2.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        FontMetrics metrics = g2.getFontMetrics();
+
+        for (Room room : rooms) {
+            if (!room.bounds.intersects(clip)) {
+                continue;
+            }
+            Rectangle r = room.bounds;
+            g2.setColor(ROOM_FILL);
+            g2.fillRect(r.x, r.y, r.width, r.height);
+            g2.setColor(ROOM_BORDER);
+            g2.drawRect(r.x, r.y, r.width - 1, r.height - 1);
+            g2.drawString(clipText(room.name, metrics, r.width - 2 * ROOM_PADDING),
+                          r.x + ROOM_PADDING, r.y + ROOM_PADDING + metrics.getAscent());
+
+            for (Device device : room.devices) {
+                Rectangle cell = cellsById.get(device.getId());
+                if (cell.intersects(clip)) {
+                    g2.drawImage(icon(device), cell.x + (CELL - ICON) / 2, cell.y + (CELL - ICON) / 2, null);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        Device device = deviceAt(event.getX(), event.getY());
+        if (device == null) {
+            return null;
+        }
+        String state = device instanceof Switchable ? (device.isOn() ? "ON" : "OFF") : "N/A";
+        return device.getName() + " (" + device.getClass().getSimpleName() + ") - " + state;
+    }
+
+    private Device deviceAt(int x, int y) {
+        for (Room room : rooms) {
+            if (room.bounds.contains(x, y)) {
+                for (Device device : room.devices) {
+                    if (cellsById.get(device.getId()).contains(x, y)) {
+                        return device;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String clipText(String text, FontMetrics metrics, int width) {
+        if (metrics.stringWidth(text) <= width) {
+            return text;
+        }
+        String clipped = text;
+        while (clipped.length() > 1 && metrics.stringWidth(clipped + "...") > width) {
+            clipped = clipped.substring(0, clipped.length() - 1);
+        }
+        return clipped + "...";
+    }
+
+    private BufferedImage icon(Device device) {
+        IconState state;
+        if (device instanceof SecuritySystem && ((SecuritySystem) device).isAlarmActive()) {
+            state = IconState.ALERT;
+        } else {
+            state = device.isOn() ? IconState.ON : IconState.OFF;
+        }
+        String key = device.getClass().getSimpleName() + ":" + state;
+        BufferedImage image = iconCache.get(key);
+        if (image == null) {
+            image = renderIcon(device, state);
+            iconCache.put(key, image);
+        }
+        return image;
+    }
+
+    // Drawn once per device type and state, then only copied
+    private BufferedImage renderIcon(Device device, IconState state) {
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        BufferedImage image = configuration != null
+                ? configuration.createCompatibleImage(ICON, ICON, Transparency.TRANSLUCENT)
+                : new BufferedImage(ICON, ICON, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setStroke(new BasicStroke(2f));
+
+        Color fill;
+        if (state == IconState.ALERT) {
+            fill = new Color(220, 40, 40);
+        } else if (state == IconState.ON) {
+            fill = device instanceof Light ? new Color(250, 200, 40)
+                 : device instanceof AirConditioner ? new Color(70, 150, 230)
+                 : device instanceof Fan ? new Color(90, 190, 120)
+                 : new Color(60, 120, 60);
+        } else {
+            fill = new Color(200, 200, 200);
+        }
+        Color outline = fill.darker();
+
+        if (device instanceof Light) {
+            g.setColor(fill);
+            g.fillOval(3, 2, 16, 16);
+            g.setColor(outline);
+            g.drawOval(3, 2, 16, 16);
+            g.fillRect(8, 18, 6, 3);
+        } else if (device instanceof Fan) {
+            g.setColor(fill);
+            g.fillOval(1, 1, 20, 20);
+            g.setColor(outline);
+            g.drawOval(1, 1, 20, 20);
+            g.drawLine(11, 3, 11, 19);
+            g.drawLine(3, 11, 19, 11);
+        } else if (device instanceof AirConditioner) {
+            g.setColor(fill);
+            g.fillRoundRect(1, 5, 20, 12, 4, 4);
+            g.setColor(outline);
+            g.drawRoundRect(1, 5, 20, 12, 4, 4);
+            g.drawLine(5, 13, 17, 13);
+        } else {
+            int[] xs = {11, 20, 18, 11, 4, 2};
+            int[] ys = {1, 4, 14, 21, 14, 4};
+            g.setColor(fill);
+            g.fillPolygon(xs, ys, xs.length);
+            g.setColor(outline);
+            g.drawPolygon(xs, ys, xs.length);
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,102 @@
+package smarthome;
+
+import java.awt.Color;
+import java.awt.FlowLayout;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+
+import smarthome.models.Light;
+
+class LightControlPanel extends DeviceControlPanel<Light> {
+
+    private JSlider brightnessSlider;
+    private JLabel brightnessValueLabel;
+    private JComboBox<String> colorComboBox;
+    private JCheckBox motionCheckbox;
+
+    LightControlPanel(Actions actions, boolean canControl) {
+        super(Light.class, actions, canControl);
+        buildSections();
+    }
+
+    @Override
+    protected void buildControls() {
+        // Brightness control
+        JPanel brightnessPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        brightnessSlider = new JSlider(0, 100, 0);
+        brightnessValueLabel = new JLabel("0%");
+        brightnessSlider.addChangeListener(e -> {
+            int value = brightnessSlider.getValue();
+            brightnessValueLabel.setText(value + "%");
+            // Only the released value is sent to the device
+            if (!updating && !brightnessSlider.getValueIsAdjusting()) {
+                actions.control(device, d -> ((Light) d).setBrightness(value));
+            }
+        });
+        brightnessPanel.add(new JLabel("Brightness:"));
+        brightnessPanel.add(brightnessSlider);
+        brightnessPanel.add(brightnessValueLabel);
+        add(brightnessPanel);
+
+        // Color selection
+        JPanel colorPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        colorPanel.add(new JLabel("Color:"));
+        colorComboBox = new JComboBox<>(new String[] {
+            Light.COLOR_WHITE,
+            Light.COLOR_WARM,
+            Light.COLOR_BLUE,
+            Light.COLOR_RED
+        });
+        colorComboBox.addActionListener(e -> {
+            if (!updating) {
+                String selectedColor = (String) colorComboBox.getSelectedItem();
+                actions.control(device, d -> ((Light) d).setColor(selectedColor));
+            }
+        });
+        colorPanel.add(colorComboBox);
+        add(colorPanel);
+
+        // Buttons with the actual colors; selecting the combo box item sends the command
+        JPanel colorButtonsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        colorButtonsPanel.add(colorButton(Light.COLOR_WHITE, Color.WHITE));
+        colorButtonsPanel.add(colorButton(Light.COLOR_WARM, new Color(255, 244, 229)));
+        colorButtonsPanel.add(colorButton(Light.COLOR_BLUE, Color.BLUE));
+        colorButtonsPanel.add(colorButton(Light.COLOR_RED, Color.RED));
+        add(colorButtonsPanel);
+
+        // Motion activation control
+        JPanel motionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        motionCheckbox = new JCheckBox("Motion Activated");
+        motionCheckbox.addActionListener(e -> {
+            if (!updating) {
+                boolean selected = motionCheckbox.isSelected();
+                actions.control(device, d -> ((Light) d).setMotionActivated(selected));
+            }
+        });
+        motionPanel.add(motionCheckbox);
+        add(motionPanel);
+    }
+
+    private JButton colorButton(String color, Color background) {
+        JButton button = new JButton("   ");
+        button.setBackground(background);
+        button.setToolTipText(color);
+        button.addActionListener(e -> colorComboBox.setSelectedItem(color));
+        return button;
+    }
+
+    @Override
+    protected void update(Light light) {
+        setValue(brightnessSlider, light.getBrightness());
+        setText(brightnessValueLabel, brightnessSlider.getValue() + "%");
+        setSelected(colorComboBox, light.getColor());
+        if (motionCheckbox.isSelected() != light.isMotionActivated()) {
+            motionCheckbox.setSelected(light.isMotionActivated());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package smarthome;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractListModel;
+
+// List model over a log that is too long to copy into a component. Rows
+// are fetched from the source a page at a time when the list asks for
+// them, which with a fixed cell size is only for the visible rows, and the
+// most recently used pages are cached. poll() picks up entries appended
+// since the last call.
+class LogListModel extends AbstractListModel<String> {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int MAX_CACHED_PAGES = 16;
+
+    interface Source {
+        int size();
+
+        // Entries ever appended; runs ahead of size() once the log starts
+        // dropping its oldest entries
+        long appended();
+
+        // Entries [from, from + count), oldest first
+        List<String> page(int from, int count);
+    }
+
+    // Fixed list, e.g. search results
+    static Source of(List<String> lines) {
+        List<String> copy = new ArrayList<>(lines);
+        return new Source() {
+            @Override
+            public int size() {
+                return copy.size();
+            }
+
+            @Override
+            public long appended() {
+                return copy.size();
+            }
+
+            @Override
+            public List<String> page(int from, int count) {
+                return copy.subList(from, Math.min(from + count, copy.size()));
+            }
+        };
+    }
+
+    private Source source;
+    private int size;
+    private long appended;
+    private final Map<Integer, List<String>> pages;
+
+    LogListModel(Source source) {
+        this.pages = new LinkedHashMap<Integer, List<String>>(MAX_CACHED_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<String>> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        this.source = source;
+        this.appended = source.appended();
+        this.size = source.size();
+    }
+
+    void setSource(Source source) {
+        int previous = size;
+        this.source = source;
+        pages.clear();
+        appended = source.appended();
+        size = 0;
+        if (previous > 0) {
+            fireIntervalRemoved(this, 0, previous - 1);
+        }
+        size = source.size();
+        if (size > 0) {
+            fireIntervalAdded(this, 0, size - 1);
+        }
+    }
+
+    // Returns true if entries were appended since the last call
+    boolean poll() {
+        long nowAppended = source.appended();
+        if (nowAppended == appended) {
+            return false;
+        }
+        int nowSize = source.size();
+        long added = nowAppended - appended;
+        int previous = size;
+        appended = nowAppended;
+        size = nowSize;
+
+        if (nowSize == previous + added) {
+            // Only appended: the last page may have been cached while partial
+            pages.remove(previous / PAGE_SIZE);
+            fireIntervalAdded(this, previous, nowSize - 1);
+        } else {
+            // Old entries were dropped, so every index moved
+            pages.clear();
+            if (nowSize > previous) {
+                fireIntervalAdded(this, previous, nowSize - 1);
+            } else if (nowSize < previous) {
+                fireIntervalRemoved(this, nowSize, previous - 1);
+            }
+            if (nowSize > 0) {
+                fireContentsChanged(this, 0, nowSize - 1);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        int pageNumber = index / PAGE_SIZE;
+        List<String> page = pages.get(pageNumber);
+        if (page == null) {
+            page = source.page(pageNumber * PAGE_SIZE, PAGE_SIZE);
+            pages.put(pageNumber, page);
+        }
+        int offset = index % PAGE_SIZE;
+        // The source may have shrunk since the last poll
+        return offset < page.size() ? page.get(offset) : "";
+    }
+}
@@ -0,0 +1,92 @@
+package smarthome;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+
+import javax.swing.JCheckBox;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+// Scrollable log view backed by a LogListModel. Cells have a fixed size so
+// the list never measures rows it does not show. While displayed it polls
+// the source for new entries and, with "Follow" checked, stays scrolled to
+// the newest one.
+class LogViewPanel extends JPanel {
+
+    private static final int POLL_INTERVAL_MILLIS = 500;
+    private static final String PROTOTYPE_ROW =
+            "2026-01-01 00:00:00 - Executed scheduled task: SET_TEMPERATURE at 07:30 for Living Room Air Conditioner";
+
+    private final LogListModel model;
+    private final JList<String> list;
+    private final JCheckBox followBox;
+    private final Timer pollTimer;
+
+    LogViewPanel(LogListModel.Source source, int visibleRows) {
+        super(new BorderLayout());
+        this.model = new LogListModel(source);
+        this.list = new JList<>(model);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        list.setPrototypeCellValue(PROTOTYPE_ROW);
+        list.setVisibleRowCount(visibleRows);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        this.followBox = new JCheckBox("Follow", true);
+        followBox.addActionListener(e -> {
+            if (followBox.isSelected()) {
+                scrollToEnd();
+            }
+        });
+        this.pollTimer = new Timer(POLL_INTERVAL_MILLIS, e -> {
+            if (model.poll() && followBox.isSelected()) {
+                scrollToEnd();
+            }
+        });
+
+        JPanel optionsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        optionsPanel.add(followBox);
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        add(optionsPanel, BorderLayout.SOUTH);
+    }
+
+    // Shows another source, e.g. search results. Following is reset to the
+    // caller's choice: on for a live log, off for a fixed list of matches
+    void setSource(LogListModel.Source source, boolean follow) {
+        model.setSource(source);
+        followBox.setSelected(follow);
+        if (follow) {
+            scrollToEnd();
+        } else if (model.getSize() > 0) {
+            list.ensureIndexIsVisible(0);
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        model.poll();
+        pollTimer.start();
+        if (followBox.isSelected()) {
+            // After the first layout, when the viewport has its size
+            SwingUtilities.invokeLater(this::scrollToEnd);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        pollTimer.stop();
+        super.removeNotify();
+    }
+
+    private void scrollToEnd() {
+        int last = model.getSize() - 1;
+        if (last >= 0) {
+            list.ensureIndexIsVisible(last);
+        }
+    }
+}
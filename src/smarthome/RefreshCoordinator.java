@@ -0,0 +1,93 @@
+package smarthome;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+// Collects refresh requests from any thread and applies them on the event
+// thread at most FRAMES_PER_SECOND times a second. A burst of device
+// events costs one frame, in which each changed device's row is updated
+// once; the device list and the control panel are rebuilt only when that
+// was asked for. Nothing runs while nothing is dirty.
+class RefreshCoordinator {
+
+    private static final int FRAMES_PER_SECOND = 30;
+    private static final int FRAME_MILLIS = 1000 / FRAMES_PER_SECOND;
+
+    private final Consumer<Set<String>> refreshRows;
+    private final Runnable rebuildList;
+    private final Runnable rebuildControlPanel;
+
+    private final Set<String> dirtyDevices;
+    private final AtomicBoolean listDirty;
+    private final AtomicBoolean controlPanelDirty;
+    private final AtomicBoolean frameRequested;
+    private final Timer frameTimer;
+    private long lastFrame;
+
+    RefreshCoordinator(Consumer<Set<String>> refreshRows, Runnable rebuildList, Runnable rebuildControlPanel) {
+        this.refreshRows = refreshRows;
+        this.rebuildList = rebuildList;
+        this.rebuildControlPanel = rebuildControlPanel;
+        this.dirtyDevices = ConcurrentHashMap.newKeySet();
+        this.listDirty = new AtomicBoolean();
+        this.controlPanelDirty = new AtomicBoolean();
+        this.frameRequested = new AtomicBoolean();
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> frame());
+        this.frameTimer.setRepeats(false);
+    }
+
+    // The device's row shows stale state
+    void deviceChanged(String deviceId) {
+        dirtyDevices.add(deviceId);
+        requestFrame();
+    }
+
+    // Devices were added or removed
+    void deviceListChanged() {
+        listDirty.set(true);
+        requestFrame();
+    }
+
+    void controlPanelChanged() {
+        controlPanelDirty.set(true);
+        requestFrame();
+    }
+
+    private void requestFrame() {
+        if (frameRequested.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                long wait = lastFrame + FRAME_MILLIS - System.currentTimeMillis();
+                frameTimer.setInitialDelay((int) Math.max(0, wait));
+                frameTimer.restart();
+            });
+        }
+    }
+
+    private void frame() {
+        lastFrame = System.currentTimeMillis();
+        // Requests from here on get a frame of their own
+        frameRequested.set(false);
+
+        Set<String> rows = new HashSet<>();
+        for (Iterator<String> it = dirtyDevices.iterator(); it.hasNext(); ) {
+            rows.add(it.next());
+            it.remove();
+        }
+        if (listDirty.getAndSet(false)) {
+            // A rebuild shows the current state of every row
+            rebuildList.run();
+        } else if (!rows.isEmpty()) {
+            refreshRows.accept(rows);
+        }
+        if (controlPanelDirty.getAndSet(false)) {
+            rebuildControlPanel.run();
+        }
+    }
+}
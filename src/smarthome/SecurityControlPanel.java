@@ -0,0 +1,126 @@
+package smarthome;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import smarthome.models.SecuritySystem;
+import smarthome.models.SecurityEventLog;
+
+class SecurityControlPanel extends DeviceControlPanel<SecuritySystem> {
+
+    private final boolean canViewLogs;
+    private JComboBox<String> modeComboBox;
+    private JLabel alarmStatusLabel;
+    private JButton alarmButton;
+    private LogViewPanel logsView;
+    private SecurityEventLog shownLog;
+
+    SecurityControlPanel(Actions actions, boolean canControl, boolean canViewLogs) {
+        super(SecuritySystem.class, actions, canControl);
+        this.canViewLogs = canViewLogs;
+        buildSections();
+    }
+
+    @Override
+    protected void buildControls() {
+        // Security mode control; the modes come from the bound system's zone map
+        JPanel modePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        modeComboBox = new JComboBox<>();
+        modeComboBox.addActionListener(e -> {
+            if (!updating) {
+                String selectedMode = (String) modeComboBox.getSelectedItem();
+                actions.control(device, d -> ((SecuritySystem) d).setSecurityMode(selectedMode));
+            }
+        });
+        modePanel.add(new JLabel("Security Mode:"));
+        modePanel.add(modeComboBox);
+        add(modePanel);
+
+        // Alarm status; the alarm's state events refresh the label and button
+        JPanel alarmPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        alarmStatusLabel = new JLabel("Alarm Status: Inactive");
+        alarmButton = new JButton("Test Alarm");
+        alarmButton.addActionListener(e -> actions.control(device, d -> {
+            SecuritySystem security = (SecuritySystem) d;
+            if (security.isAlarmActive()) {
+                security.deactivateAlarm();
+            } else {
+                security.activateAlarm();
+            }
+        }));
+        alarmPanel.add(alarmStatusLabel);
+        alarmPanel.add(alarmButton);
+        add(alarmPanel);
+
+        // Security logs
+        if (canViewLogs) {
+            JPanel logsPanel = new JPanel(new BorderLayout());
+            logsPanel.setBorder(BorderFactory.createTitledBorder("Security Logs"));
+            logsView = new LogViewPanel(LogListModel.of(new ArrayList<>()), 10);
+            logsPanel.add(logsView, BorderLayout.CENTER);
+            add(logsPanel);
+        }
+    }
+
+    @Override
+    protected void update(SecuritySystem security) {
+        List<String> modes = security.getZoneMap().getModeNames();
+        if (!sameModes(modes)) {
+            modeComboBox.setModel(new DefaultComboBoxModel<>(modes.toArray(new String[0])));
+        }
+        setSelected(modeComboBox, security.getSecurityMode());
+
+        boolean alarmActive = security.isAlarmActive();
+        setText(alarmStatusLabel, "Alarm Status: " + (alarmActive ? "ACTIVE" : "Inactive"));
+        alarmStatusLabel.setForeground(alarmActive ? Color.RED : Color.BLACK);
+        if (alarmActive != "Deactivate Alarm".equals(alarmButton.getText())) {
+            alarmButton.setText(alarmActive ? "Deactivate Alarm" : "Test Alarm");
+        }
+
+        if (logsView != null && security.getSecurityEventLog() != shownLog) {
+            shownLog = security.getSecurityEventLog();
+            logsView.setSource(source(shownLog), true);
+        }
+    }
+
+    private boolean sameModes(List<String> modes) {
+        if (modes.size() != modeComboBox.getItemCount()) {
+            return false;
+        }
+        for (int i = 0; i < modes.size(); i++) {
+            if (!modes.get(i).equals(modeComboBox.getItemAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static LogListModel.Source source(SecurityEventLog eventLog) {
+        return new LogListModel.Source() {
+            @Override
+            public int size() {
+                return eventLog.size();
+            }
+
+            @Override
+            public long appended() {
+                return eventLog.getTotalRecorded();
+            }
+
+            @Override
+            public List<String> page(int from, int count) {
+                return eventLog.render(from, count);
+            }
+        };
+    }
+}
@@ -3,34 +3,79 @@ package smarthome;
 import smarthome.system.SmartHomeSystem;
 import smarthome.models.*;
 import smarthome.exceptions.*;
-import smarthome.SmartHomeGUI;
+import smarthome.interfaces.Switchable;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class SmartHomeApp {
     private static SmartHomeSystem system;
     private static Scanner scanner;
     
+    private static final int MAX_CONSOLE_LOG_LINES = 50;
+    private static final String SYSTEM_LOG_FILE = "system_log.txt";
+    
+    // Usage: SmartHomeApp [--headless [server options] | --batch [options] <file> | --console]
     public static void main(String[] args) {
+        // Decide before anything touches AWT/Swing
+        if (args.length > 0 && args[0].equals("--headless")) {
+            SmartHomeServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchCommandRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         // Initialize the system
         system = SmartHomeSystem.getInstance();
         scanner = new Scanner(System.in);
+        enableLogFile(system);
+        // Scheduled tasks run in the background for the GUI and the console alike
+        system.startScheduler();
         
         // For console testing before GUI launch
-        boolean useConsole = false;
+        boolean useConsole = args.length > 0 && args[0].equals("--console");
         
         if (useConsole) {
             runConsoleInterface();
         } else {
             // Initialize default devices
-            initializeDefaultDevices();
-            
-            // Launch the GUI
-            SmartHomeGUI gui = new SmartHomeGUI(system);
-            gui.launch();
+            initializeDefaultDevices(system);
+            launchGui();
         }
     }
     
+    // Persists the system log to system_log.txt; entries still in the
+    // appender's buffer are written when the JVM exits
+    static void enableLogFile(SmartHomeSystem homeSystem) {
+        try {
+            homeSystem.enableLogFile(Paths.get(SYSTEM_LOG_FILE));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> homeSystem.setLogFile(null), "log-close"));
+        } catch (IOException e) {
+            System.err.println("Could not open " + SYSTEM_LOG_FILE + ", logging to memory only: " + e.getMessage());
+        }
+    }
+    
+    // Kept in its own method so the console and headless paths never load
+    // the GUI classes
+    private static void launchGui() {
+        SmartHomeGUI gui = new SmartHomeGUI(system);
+        gui.launch();
+    }
+    
+    // Console front end, also used by the headless server
+    static void runConsole(SmartHomeSystem homeSystem) {
+        system = homeSystem;
+        scanner = new Scanner(System.in);
+        runConsoleInterface();
+    }
+    
     private static void runConsoleInterface() {
         System.out.println("Welcome to Smart Home System");
         System.out.println("----------------------------");
@@ -127,9 +172,15 @@ public class SmartHomeApp {
     private static void viewAllDevices() {
         System.out.println("\n===== All Devices =====");
         
-        for (Device device : system.getAllDevices()) {
-            System.out.println(device);
-        }
+        // Read consistently so a scene being applied is never shown half-way
+        String listing = system.readConsistent(() -> {
+            StringBuilder builder = new StringBuilder();
+            for (Device device : system.getAllDevices()) {
+                builder.append(device).append(System.lineSeparator());
+            }
+            return builder.toString();
+        });
+        System.out.print(listing);
         
         if (system.getAllDevices().isEmpty()) {
             System.out.println("No devices found.");
@@ -137,7 +188,121 @@ public class SmartHomeApp {
     }
     
     private static void controlDevice() {
-        // Implementation omitted for brevity
+        System.out.println("\n===== Control a Device =====");
+        if (!system.getCurrentUser().hasPermission("CONTROL_DEVICES")) {
+            System.out.println("You do not have permission to control devices.");
+            return;
+        }
+        
+        Device device = chooseDevice();
+        if (device == null) {
+            return;
+        }
+        
+        System.out.println("1. Turn On");
+        System.out.println("2. Turn Off");
+        if (device instanceof Light) {
+            System.out.println("3. Set Brightness (0-100)");
+        } else if (device instanceof Fan) {
+            System.out.println("3. Set Speed (1-5)");
+        } else if (device instanceof AirConditioner) {
+            System.out.println("3. Set Temperature (16-30)");
+            System.out.println("4. Set Mode (COOL, HEAT, FAN, DRY, AUTO)");
+        } else if (device instanceof SecuritySystem) {
+            System.out.println("3. Set Security Mode " + ((SecuritySystem) device).getZoneMap().getModeNames());
+        }
+        System.out.println("0. Cancel");
+        
+        System.out.print("\nEnter your choice: ");
+        String choice = scanner.nextLine().trim();
+        
+        DeviceCommand command;
+        switch (choice) {
+            case "0":
+                return;
+            case "1":
+                command = new DeviceCommand("ON");
+                break;
+            case "2":
+                command = new DeviceCommand("OFF");
+                break;
+            case "3":
+                command = valueCommand(device);
+                break;
+            case "4":
+                if (device instanceof AirConditioner) {
+                    System.out.print("Enter mode: ");
+                    String mode = scanner.nextLine().trim().toUpperCase();
+                    AirConditioner ac = (AirConditioner) device;
+                    sendAndWait(device, d -> ac.setMode(mode));
+                    return;
+                }
+                command = null;
+                break;
+            default:
+                command = null;
+        }
+        
+        if (command == null) {
+            System.out.println("Invalid option!");
+            return;
+        }
+        sendAndWait(device, command::execute);
+    }
+    
+    private static DeviceCommand valueCommand(Device device) {
+        System.out.print("Enter value: ");
+        String value = scanner.nextLine().trim();
+        if (device instanceof Light) {
+            return new DeviceCommand("SET_BRIGHTNESS", value);
+        } else if (device instanceof Fan) {
+            return new DeviceCommand("SET_SPEED", value);
+        } else if (device instanceof AirConditioner) {
+            return new DeviceCommand("SET_TEMPERATURE", value);
+        } else if (device instanceof SecuritySystem) {
+            return new DeviceCommand("SET_SECURITY_MODE", value.toUpperCase());
+        }
+        return null;
+    }
+    
+    // Console users expect to see the result, so wait for the acknowledgement
+    private static void sendAndWait(Device device, Consumer<Device> command) {
+        try {
+            system.sendCommand(device, command).join();
+            System.out.println("Done: " + device);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.out.println("Command failed: " + cause.getMessage());
+        }
+    }
+    
+    private static Device chooseDevice() {
+        List<Device> devices = system.getAllDevices();
+        if (devices.isEmpty()) {
+            System.out.println("No devices found.");
+            return null;
+        }
+        
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            String status = device instanceof Switchable ? (((Switchable) device).isOn() ? "ON" : "OFF") : "N/A";
+            System.out.println((i + 1) + ". " + device.getName() + " (" + device.getLocation() + ") - " + status);
+        }
+        System.out.print("\nSelect a device (0 to cancel): ");
+        
+        try {
+            int index = Integer.parseInt(scanner.nextLine().trim());
+            if (index == 0) {
+                return null;
+            }
+            if (index > 0 && index <= devices.size()) {
+                return devices.get(index - 1);
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        System.out.println("Invalid device!");
+        return null;
     }
     
     private static void addNewDevice() {
@@ -192,23 +357,54 @@ public class SmartHomeApp {
     }
     
     private static void removeDevice() {
-        // Implementation omitted for brevity
+        System.out.println("\n===== Remove Device =====");
+        Device device = chooseDevice();
+        if (device == null) {
+            return;
+        }
+        
+        System.out.print("Remove " + device.getName() + "? (y/n): ");
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            return;
+        }
+        
+        try {
+            system.removeDevice(device.getId());
+            System.out.println("Device removed successfully: " + device.getName());
+        } catch (DeviceNotFoundException | AuthenticationException e) {
+            System.out.println("Error removing device: " + e.getMessage());
+        }
     }
     
     private static void viewSystemLogs() {
-        // Implementation omitted for brevity
+        System.out.println("\n===== System Logs =====");
+        List<String> logs = system.getSystemLogs();
+        if (logs.isEmpty()) {
+            System.out.println("No logs available.");
+            return;
+        }
+        
+        // Only the most recent entries, a long-running server has many
+        int first = Math.max(0, logs.size() - MAX_CONSOLE_LOG_LINES);
+        if (first > 0) {
+            System.out.println("(showing the last " + MAX_CONSOLE_LOG_LINES + " of " + logs.size() + " entries)");
+        }
+        for (int i = first; i < logs.size(); i++) {
+            System.out.println(logs.get(i));
+        }
     }
     
-    private static void initializeDefaultDevices() {
+    static void initializeDefaultDevices(SmartHomeSystem system) {
         try {
             // Login as admin to add devices
             system.login("admin", "admin123");
             
             // Add some default devices
-            system.addDevice(new Light("Living Room Light", "Living Room", "admin"));
-            system.addDevice(new Fan("Bedroom Fan", "Bedroom", "admin"));
-            system.addDevice(new AirConditioner("Living Room AC", "Living Room", "admin"));
-            system.addDevice(new SecuritySystem("Main Security System", "Entrance", "admin"));
+            system.addDevices(Arrays.asList(
+                    new Light("Living Room Light", "Living Room", "admin"),
+                    new Fan("Bedroom Fan", "Bedroom", "admin"),
+                    new AirConditioner("Living Room AC", "Living Room", "admin"),
+                    new SecuritySystem("Main Security System", "Entrance", "admin")));
             
             // Logout
             system.logout();
@@ -12,18 +12,42 @@ import smarthome.interfaces.Dimmable;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class SmartHomeGUI {
+    private static final int MAX_LOG_SEARCH_RESULTS = 1000;
+    
     private SmartHomeSystem system;
     private JFrame mainFrame;
     private JPanel mainPanel;
     private JPanel devicePanel;
+    private FloorPlanPanel floorPlan;
     private JPanel controlPanel;
-    private Timer scheduleTimer;
+    
+    // Device shown in the control panel and the state version its controls
+    // are based on; changes made elsewhere in the meantime are conflicts
+    private volatile Device panelDevice;
+    private volatile long panelVersion;
+    private CompletableFuture<?> pendingControl = CompletableFuture.completedFuture(null);
+    
+    // Repaints are batched into frames; rows are updated in place by device id
+    private RefreshCoordinator refresh;
+    private final Map<String, JLabel> deviceRowLabels = new HashMap<>();
+    
+    // Control panels are built once per device type and rebound on selection
+    private final Map<Class<?>, DeviceControlPanel<?>> controlPanels = new HashMap<>();
+    private DeviceControlPanel<?> shownControlPanel;
     
     public SmartHomeGUI(SmartHomeSystem system) {
         this.system = system;
@@ -42,14 +66,89 @@ public class SmartHomeGUI {
         // Create the login panel
         createLoginPanel();
         
-        // Start a timer to check scheduled tasks every minute
-        scheduleTimer = new Timer(60000, e -> system.executeScheduledTasks());
-        scheduleTimer.start();
+        refresh = new RefreshCoordinator(this::refreshDeviceRows, this::rebuildDeviceList, this::refreshControlPanel);
+        // Device changes from any source (rules, schedules, other users)
+        // just mark the row; the coordinator repaints it in the next frame
+        system.addDeviceStateListener((device, attribute, value) -> refresh.deviceChanged(device.getId()));
+        
+        // Tasks run on the system's scheduler thread; only the refresh
+        // comes back to the event thread
+        system.startScheduler();
+        system.addScheduleListener((minute, executed) -> {
+            if (!executed.isEmpty()) {
+                SwingUtilities.invokeLater(() -> onTasksExecuted(executed));
+            }
+        });
         
         // Show the frame
         mainFrame.setVisible(true);
     }
     
+    // Rows of the executed tasks' devices were marked by their state changes
+    private void onTasksExecuted(List<ScheduledTask> executed) {
+        Device shown = panelDevice;
+        for (ScheduledTask task : executed) {
+            if (task.getDevice() == shown) {
+                refresh.controlPanelChanged();
+                break;
+            }
+        }
+    }
+    
+    private boolean isDeviceViewShown() {
+        return system.getCurrentUser() != null && devicePanel != null;
+    }
+    
+    private void rebuildDeviceList() {
+        if (isDeviceViewShown()) {
+            updateDeviceList();
+        }
+    }
+    
+    // Pushes the shown device's current state into the existing controls
+    private void refreshControlPanel() {
+        if (isDeviceViewShown() && shownControlPanel != null && shownControlPanel.getDevice() == panelDevice) {
+            panelVersion = panelDevice.getVersion();
+            shownControlPanel.refresh();
+        }
+    }
+    
+    // Updates the text of the given devices' rows without relayout of the list
+    private void refreshDeviceRows(Set<String> deviceIds) {
+        if (!isDeviceViewShown()) {
+            return;
+        }
+        floorPlan.devicesChanged(deviceIds);
+        if (panelDevice != null && deviceIds.contains(panelDevice.getId())) {
+            refreshControlPanel();
+        }
+        List<Device> changed = new ArrayList<>();
+        for (Device device : system.getAllDevices()) {
+            if (deviceIds.contains(device.getId()) && deviceRowLabels.containsKey(device.getId())) {
+                changed.add(device);
+            }
+        }
+        List<String> statusTexts = system.readConsistent(() -> {
+            List<String> texts = new ArrayList<>();
+            for (Device device : changed) {
+                texts.add(statusText(device));
+            }
+            return texts;
+        });
+        for (int i = 0; i < changed.size(); i++) {
+            Device device = changed.get(i);
+            deviceRowLabels.get(device.getId()).setText(rowText(device, statusTexts.get(i)));
+        }
+    }
+    
+    private static String statusText(Device device) {
+        return device instanceof Switchable ? (((Switchable) device).isOn() ? "ON" : "OFF") : "N/A";
+    }
+    
+    private static String rowText(Device device, String statusText) {
+        return device.getName() + " (" + device.getLocation() + ") - " + statusText;
+    }
+    
     private void createLoginPanel() {
         JPanel loginPanel = new JPanel();
         loginPanel.setLayout(new GridBagLayout());
@@ -169,12 +268,25 @@ public class SmartHomeGUI {
         devicePanel = new JPanel();
         devicePanel.setLayout(new BoxLayout(devicePanel, BoxLayout.Y_AXIS));
         JScrollPane deviceScrollPane = new JScrollPane(devicePanel);
-        deviceScrollPane.setBorder(BorderFactory.createTitledBorder("Devices"));
+        
+        // Building overview of the same devices, click a device to control it
+        floorPlan = new FloorPlanPanel(this::showDeviceControl);
+        JScrollPane floorPlanScrollPane = new JScrollPane(floorPlan);
+        floorPlanScrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        
+        JTabbedPane deviceTabs = new JTabbedPane();
+        deviceTabs.setBorder(BorderFactory.createTitledBorder("Devices"));
+        deviceTabs.addTab("List", deviceScrollPane);
+        deviceTabs.addTab("Floor Plan", floorPlanScrollPane);
         
         // Create the control panel (right side)
         controlPanel = new JPanel();
         controlPanel.setLayout(new BorderLayout());
         controlPanel.setBorder(BorderFactory.createTitledBorder("Control Panel"));
+        // The cached panels were built for the previous user's permissions
+        controlPanels.clear();
+        shownControlPanel = null;
+        panelDevice = null;
         
         // Create a default message for the control panel
         JLabel defaultControlLabel = new JLabel("Select a device to control");
@@ -182,7 +294,7 @@ public class SmartHomeGUI {
         controlPanel.add(defaultControlLabel, BorderLayout.CENTER);
         
         // Create a split pane
-        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, deviceScrollPane, controlPanel);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, deviceTabs, controlPanel);
         splitPane.setDividerLocation(300);
         
         // Add "Add Device" button if user has permission
@@ -215,14 +327,16 @@ public class SmartHomeGUI {
         systemToggle.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (systemToggle.isSelected()) {
-                    system.turnSystemOn();
-                    systemToggle.setText("System ON");
-                } else {
-                    system.turnSystemOff();
-                    systemToggle.setText("System OFF");
-                }
-                updateDeviceList();
+                // Every device is switched on its own queue; the toggle stays
+                // disabled until all of them were handled
+                boolean on = systemToggle.isSelected();
+                systemToggle.setEnabled(false);
+                CompletableFuture<Void> switched = on ? system.turnSystemOn() : system.turnSystemOff();
+                switched.whenComplete((done, error) -> SwingUtilities.invokeLater(() -> {
+                    systemToggle.setText(on ? "System ON" : "System OFF");
+                    systemToggle.setEnabled(true);
+                    refresh.deviceListChanged();
+                }));
             }
         });
         
@@ -232,18 +346,30 @@ public class SmartHomeGUI {
     
     private void updateDeviceList() {
         devicePanel.removeAll();
+        deviceRowLabels.clear();
         
         List<Device> devices = system.getAllDevices();
+        floorPlan.setDevices(devices);
+        
+        // Read every status in one consistent pass so a scene is never shown half-applied
+        List<String> statusTexts = system.readConsistent(() -> {
+            List<String> texts = new ArrayList<>();
+            for (Device device : devices) {
+                texts.add(statusText(device));
+            }
+            return texts;
+        });
         
-        for (Device device : devices) {
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
             JPanel deviceItemPanel = new JPanel(new BorderLayout());
             deviceItemPanel.setBorder(BorderFactory.createEtchedBorder());
             
-            String statusText = device instanceof Switchable ? 
-                                (((Switchable) device).isOn() ? "ON" : "OFF") : "N/A";
+            String statusText = statusTexts.get(i);
             
-            JLabel deviceLabel = new JLabel(device.getName() + " (" + device.getLocation() + ") - " + statusText);
+            JLabel deviceLabel = new JLabel(rowText(device, statusText));
             deviceItemPanel.add(deviceLabel, BorderLayout.CENTER);
+            deviceRowLabels.put(device.getId(), deviceLabel);
             
             // All users should be able to select devices
             deviceItemPanel.addMouseListener(new MouseAdapter() {
@@ -259,7 +385,7 @@ public class SmartHomeGUI {
                 removeButton.addActionListener(e -> {
                     try {
                         system.removeDevice(device.getId());
-                        updateDeviceList();
+                        refresh.deviceListChanged();
                     } catch (Exception ex) {
                         JOptionPane.showMessageDialog(mainFrame, 
                                                      "Error removing device: " + ex.getMessage(),
@@ -276,360 +402,100 @@ public class SmartHomeGUI {
         devicePanel.repaint();
     }
     
-    private void showDeviceControl(Device device) {
-        controlPanel.removeAll();
-        
-        JPanel deviceControlPanel = new JPanel();
-        deviceControlPanel.setLayout(new BoxLayout(deviceControlPanel, BoxLayout.Y_AXIS));
-        
-        // Device title
-        JLabel titleLabel = new JLabel(device.getName());
-        titleLabel.setFont(new Font("Arial", Font.BOLD, 18));
-        titleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-        deviceControlPanel.add(titleLabel);
-        
-        // Location
-        JLabel locationLabel = new JLabel("Location: " + device.getLocation());
-        locationLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-        deviceControlPanel.add(locationLabel);
-        
-        deviceControlPanel.add(Box.createRigidArea(new Dimension(0, 20)));
-        
-        // Check if user has control permission before adding controls
-        if (system.getCurrentUser().hasPermission("CONTROL_DEVICES")) {
-            // On/Off control if device is Switchable
-            if (device instanceof Switchable) {
-                Switchable switchableDevice = (Switchable) device;
-                JPanel switchPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JToggleButton onOffToggle = new JToggleButton(switchableDevice.isOn() ? "ON" : "OFF");
-                onOffToggle.setSelected(switchableDevice.isOn());
-                
-                onOffToggle.addActionListener(new ActionListener() {
-                    @Override
-                    public void actionPerformed(ActionEvent e) {
-                        if (onOffToggle.isSelected()) {
-                            switchableDevice.turnOn();
-                            onOffToggle.setText("ON");
-                        } else {
-                            switchableDevice.turnOff();
-                            onOffToggle.setText("OFF");
-                        }
-                        updateDeviceList();
+    // Device commands are sent to the device and applied once it acknowledged
+    // them; the GUI is refreshed on the event dispatch thread afterwards.
+    // Commands only apply if the device is still in the state the panel
+    // showed, and are sent one after another so they don't conflict with
+    // each other.
+    private void control(Device device, Consumer<Device> command) {
+        pendingControl = pendingControl.handle((result, error) -> null)
+            .thenCompose(ignored -> system.sendCommandIfVersion(device,
+                    device == panelDevice ? panelVersion : device.getVersion(), command))
+            .whenComplete((version, error) -> {
+                if (version != null && device == panelDevice) {
+                    panelVersion = version;
+                }
+                SwingUtilities.invokeLater(() -> {
+                    refresh.deviceChanged(device.getId());
+                    if (error != null) {
+                        showControlError(device, error);
                     }
                 });
-                
-                switchPanel.add(new JLabel("Power:"));
-                switchPanel.add(onOffToggle);
-                deviceControlPanel.add(switchPanel);
+            });
+    }
+    
+    // Task changes are state changes, so they run in the device's mailbox
+    // like commands; the panel is refreshed once they have
+    private void updateSchedule(Device device, Consumer<Device> change) {
+        system.submit(device, change)
+              .whenComplete((done, error) -> SwingUtilities.invokeLater(refresh::controlPanelChanged));
+    }
+    
+    private void showControlError(Device device, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof StaleDeviceStateException) {
+            JOptionPane.showMessageDialog(mainFrame, device.getName() + " was changed by another user or a scheduled task.\n" +
+                                          "The controls now show its current state.",
+                                          "Device Changed", JOptionPane.WARNING_MESSAGE);
+            if (device == panelDevice) {
+                refresh.controlPanelChanged();
+            }
+        } else {
+            JOptionPane.showMessageDialog(mainFrame, device.getName() + " did not respond to the command",
+                                          "Device Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void showDeviceControl(Device device) {
+        panelDevice = device;
+        panelVersion = device.getVersion();
+        
+        // One panel per device type, built on first use and then only rebound
+        DeviceControlPanel<?> panel = controlPanels.get(device.getClass());
+        if (panel == null) {
+            panel = createControlPanel(device);
+            controlPanels.put(device.getClass(), panel);
+        }
+        panel.bind(device);
+        
+        if (panel != shownControlPanel) {
+            shownControlPanel = panel;
+            controlPanel.removeAll();
+            controlPanel.add(new JScrollPane(panel), BorderLayout.CENTER);
+            controlPanel.revalidate();
+            controlPanel.repaint();
+        }
+    }
+    
+    private DeviceControlPanel<?> createControlPanel(Device device) {
+        DeviceControlPanel.Actions actions = new DeviceControlPanel.Actions() {
+            @Override
+            public void control(Device device, Consumer<Device> command) {
+                SmartHomeGUI.this.control(device, command);
             }
             
-            // Device-specific controls
-            if (device instanceof Light) {
-                Light light = (Light) device;
-                
-                // Brightness control
-                JPanel brightnessPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JSlider brightnessSlider = new JSlider(0, 100, light.getBrightness());
-                JLabel brightnessValueLabel = new JLabel(light.getBrightness() + "%");
-                
-                brightnessSlider.addChangeListener(e -> {
-                    int value = brightnessSlider.getValue();
-                    light.setBrightness(value);
-                    brightnessValueLabel.setText(value + "%");
-                    if (!brightnessSlider.getValueIsAdjusting()) {
-                        updateDeviceList();
-                    }
-                });
-                
-                brightnessPanel.add(new JLabel("Brightness:"));
-                brightnessPanel.add(brightnessSlider);
-                brightnessPanel.add(brightnessValueLabel);
-                deviceControlPanel.add(brightnessPanel);
-                
-                // Color selection - NEW FEATURE
-                JPanel colorPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                colorPanel.add(new JLabel("Color:"));
-                
-                String[] colors = {
-                    Light.COLOR_WHITE, 
-                    Light.COLOR_WARM, 
-                    Light.COLOR_BLUE, 
-                    Light.COLOR_RED
-                };
-                
-                JComboBox<String> colorComboBox = new JComboBox<>(colors);
-                colorComboBox.setSelectedItem(light.getColor());
-                
-                // Create color buttons with actual colors
-                JPanel colorButtonsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                
-                JButton whiteButton = new JButton("   ");
-                whiteButton.setBackground(Color.WHITE);
-                whiteButton.setToolTipText(Light.COLOR_WHITE);
-                whiteButton.addActionListener(e -> {
-                    light.setColor(Light.COLOR_WHITE);
-                    colorComboBox.setSelectedItem(Light.COLOR_WHITE);
-                    updateDeviceList();
-                });
-                
-                JButton warmButton = new JButton("   ");
-                warmButton.setBackground(new Color(255, 244, 229)); // Warm white color
-                warmButton.setToolTipText(Light.COLOR_WARM);
-                warmButton.addActionListener(e -> {
-                    light.setColor(Light.COLOR_WARM);
-                    colorComboBox.setSelectedItem(Light.COLOR_WARM);
-                    updateDeviceList();
-                });
-                
-                JButton blueButton = new JButton("   ");
-                blueButton.setBackground(Color.BLUE);
-                blueButton.setToolTipText(Light.COLOR_BLUE);
-                blueButton.addActionListener(e -> {
-                    light.setColor(Light.COLOR_BLUE);
-                    colorComboBox.setSelectedItem(Light.COLOR_BLUE);
-                    updateDeviceList();
-                });
-                
-                JButton redButton = new JButton("   ");
-                redButton.setBackground(Color.RED);
-                redButton.setToolTipText(Light.COLOR_RED);
-                redButton.addActionListener(e -> {
-                    light.setColor(Light.COLOR_RED);
-                    colorComboBox.setSelectedItem(Light.COLOR_RED);
-                    updateDeviceList();
-                });
-                
-                colorButtonsPanel.add(whiteButton);
-                colorButtonsPanel.add(warmButton);
-                colorButtonsPanel.add(blueButton);
-                colorButtonsPanel.add(redButton);
-                
-                colorComboBox.addActionListener(e -> {
-                    String selectedColor = (String) colorComboBox.getSelectedItem();
-                    light.setColor(selectedColor);
-                    updateDeviceList();
-                });
-                
-                colorPanel.add(colorComboBox);
-                deviceControlPanel.add(colorPanel);
-                deviceControlPanel.add(colorButtonsPanel);
-                
-                // Motion activation control
-                JPanel motionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JCheckBox motionCheckbox = new JCheckBox("Motion Activated", light.isMotionActivated());
-                
-                motionCheckbox.addActionListener(e -> {
-                    light.setMotionActivated(motionCheckbox.isSelected());
-                });
-                
-                motionPanel.add(motionCheckbox);
-                deviceControlPanel.add(motionPanel);
-                
-            } else if (device instanceof Fan) {
-                Fan fan = (Fan) device;
-                
-                // Speed control
-                JPanel speedPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JSlider speedSlider = new JSlider(1, 5, fan.getSpeed());
-                speedSlider.setMajorTickSpacing(1);
-                speedSlider.setPaintTicks(true);
-                speedSlider.setPaintLabels(true);
-                JLabel speedValueLabel = new JLabel("Speed: " + fan.getSpeed());
-                
-                speedSlider.addChangeListener(e -> {
-                    int value = speedSlider.getValue();
-                    fan.setSpeed(value);
-                    speedValueLabel.setText("Speed: " + value);
-                    if (!speedSlider.getValueIsAdjusting()) {
-                        updateDeviceList();
-                    }
-                });
-                
-                speedPanel.add(speedValueLabel);
-                speedPanel.add(speedSlider);
-                deviceControlPanel.add(speedPanel);
-                
-                // Oscillation and Auto-adjust options removed as requested
-                
-            } else if (device instanceof AirConditioner) {
-                AirConditioner ac = (AirConditioner) device;
-                
-                // Temperature control
-                JPanel tempPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JSlider tempSlider = new JSlider(16, 30, ac.getTemperature());
-                tempSlider.setMajorTickSpacing(2);
-                tempSlider.setPaintTicks(true);
-                tempSlider.setPaintLabels(true);
-                JLabel tempValueLabel = new JLabel(ac.getTemperature() + "°C");
-                
-                tempSlider.addChangeListener(e -> {
-                    int value = tempSlider.getValue();
-                    ac.setTemperature(value);
-                    tempValueLabel.setText(value + "°C");
-                    if (!tempSlider.getValueIsAdjusting()) {
-                        updateDeviceList();
-                    }
-                });
-                
-                tempPanel.add(new JLabel("Temperature:"));
-                tempPanel.add(tempSlider);
-                tempPanel.add(tempValueLabel);
-                deviceControlPanel.add(tempPanel);
-                
-                // Mode control
-                JPanel modePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                String[] modes = {"COOL", "HEAT", "FAN", "DRY", "AUTO"};
-                JComboBox<String> modeComboBox = new JComboBox<>(modes);
-                modeComboBox.setSelectedItem(ac.getMode());
-                
-                modeComboBox.addActionListener(e -> {
-                    String selectedMode = (String) modeComboBox.getSelectedItem();
-                    ac.setMode(selectedMode);
-                    updateDeviceList();
-                });
-                
-                modePanel.add(new JLabel("Mode:"));
-                modePanel.add(modeComboBox);
-                deviceControlPanel.add(modePanel);
-                
-                // Energy saving mode
-                JPanel energyPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JCheckBox energyCheckbox = new JCheckBox("Energy Saving Mode", ac.isEnergySavingMode());
-                
-                energyCheckbox.addActionListener(e -> {
-                    ac.setEnergySavingMode(energyCheckbox.isSelected());
-                    updateDeviceList();
-                });
-                
-                energyPanel.add(energyCheckbox);
-                deviceControlPanel.add(energyPanel);
-                
-                // Auto temperature adjust - NEW FEATURE
-                JPanel autoTempPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JCheckBox autoTempCheckbox = new JCheckBox("Auto Temperature Adjust", ac.isAutoTempAdjust());
-                
-                autoTempCheckbox.addActionListener(e -> {
-                    ac.setAutoTempAdjust(autoTempCheckbox.isSelected());
-                    updateDeviceList();
-                });
-                
-                autoTempPanel.add(autoTempCheckbox);
-                deviceControlPanel.add(autoTempPanel);
-                
-            } else if (device instanceof SecuritySystem) {
-                SecuritySystem security = (SecuritySystem) device;
-                
-                // Security mode control
-                JPanel modePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                String[] modes = {"DISARMED", "HOME", "AWAY"};
-                JComboBox<String> modeComboBox = new JComboBox<>(modes);
-                modeComboBox.setSelectedItem(security.getSecurityMode());
-                
-                modeComboBox.addActionListener(e -> {
-                    String selectedMode = (String) modeComboBox.getSelectedItem();
-                    security.setSecurityMode(selectedMode);
-                    updateDeviceList();
-                });
-                
-                modePanel.add(new JLabel("Security Mode:"));
-                modePanel.add(modeComboBox);
-                deviceControlPanel.add(modePanel);
-                
-                // Alarm status
-                JPanel alarmPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-                JLabel alarmStatusLabel = new JLabel("Alarm Status: " + 
-                                                    (security.isAlarmActive() ? "ACTIVE" : "Inactive"));
-                alarmStatusLabel.setForeground(security.isAlarmActive() ? Color.RED : Color.BLACK);
-                
-                JButton alarmButton = new JButton(security.isAlarmActive() ? "Deactivate Alarm" : "Test Alarm");
-                
-                alarmButton.addActionListener(e -> {
-                    if (security.isAlarmActive()) {
-                        security.deactivateAlarm();
-                    } else {
-                        security.activateAlarm();
-                    }
-                    updateDeviceList();
-                    showDeviceControl(device); // Refresh the control panel
-                });
-                
-                alarmPanel.add(alarmStatusLabel);
-                alarmPanel.add(alarmButton);
-                deviceControlPanel.add(alarmPanel);
-                
-                // Security logs
-                if (system.getCurrentUser().hasPermission("VIEW_LOGS")) {
-                    JPanel logsPanel = new JPanel(new BorderLayout());
-                    logsPanel.setBorder(BorderFactory.createTitledBorder("Security Logs"));
-                    
-                    JTextArea logsTextArea = new JTextArea(10, 30);
-                    logsTextArea.setEditable(false);
-                    JScrollPane logsScrollPane = new JScrollPane(logsTextArea);
-                    
-                    List<String> logs = security.getSecurityLogs();
-                    for (String log : logs) {
-                        logsTextArea.append(log + "\n");
-                    }
-                    
-                    logsPanel.add(logsScrollPane, BorderLayout.CENTER);
-                    deviceControlPanel.add(logsPanel);
-                }
+            @Override
+            public void addSchedule(Device device) {
+                showAddScheduleDialog(device);
             }
             
-            // Scheduling section
-            if (system.getCurrentUser().hasPermission("CONTROL_DEVICES")) {
-                deviceControlPanel.add(Box.createRigidArea(new Dimension(0, 20)));
-                JPanel schedulePanel = new JPanel(new BorderLayout());
-                schedulePanel.setBorder(BorderFactory.createTitledBorder("Scheduled Tasks"));
-                
-                JButton addScheduleButton = new JButton("Add Schedule");
-                schedulePanel.add(addScheduleButton, BorderLayout.NORTH);
-                
-                JPanel tasksPanel = new JPanel();
-                tasksPanel.setLayout(new BoxLayout(tasksPanel, BoxLayout.Y_AXIS));
-                JScrollPane tasksScrollPane = new JScrollPane(tasksPanel);
-                
-                // Populate scheduled tasks
-                List<ScheduledTask> tasks = device.getScheduledTasks();
-                for (ScheduledTask task : tasks) {
-                    JPanel taskItemPanel = new JPanel(new BorderLayout());
-                    taskItemPanel.setBorder(BorderFactory.createEtchedBorder());
-                    
-                    JLabel taskLabel = new JLabel(task.toString());
-                    JButton removeButton = new JButton("Remove");
-                    
-                    removeButton.addActionListener(e -> {
-                        device.removeScheduledTask(task);
-                        showDeviceControl(device); // Refresh the control panel
-                    });
-                    
-                    taskItemPanel.add(taskLabel, BorderLayout.CENTER);
-                    taskItemPanel.add(removeButton, BorderLayout.EAST);
-                    
-                    tasksPanel.add(taskItemPanel);
-                }
-                
-                schedulePanel.add(tasksScrollPane, BorderLayout.CENTER);
-                deviceControlPanel.add(schedulePanel);
-                
-                // Add schedule button action
-                addScheduleButton.addActionListener(e -> {
-                    showAddScheduleDialog(device);
-                });
+            @Override
+            public void removeSchedule(Device device, ScheduledTask task) {
+                updateSchedule(device, d -> d.removeScheduledTask(task));
             }
-        } else {
-            // If user doesn't have control permission, just show device info
-            JLabel infoLabel = new JLabel("You don't have permission to control this device");
-            infoLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            deviceControlPanel.add(infoLabel);
+        };
+        boolean canControl = system.getCurrentUser().hasPermission("CONTROL_DEVICES");
+        if (device instanceof Light) {
+            return new LightControlPanel(actions, canControl);
+        } else if (device instanceof Fan) {
+            return new FanControlPanel(actions, canControl);
+        } else if (device instanceof AirConditioner) {
+            return new AirConditionerControlPanel(actions, canControl);
+        } else if (device instanceof SecuritySystem) {
+            return new SecurityControlPanel(actions, canControl,
+                                            system.getCurrentUser().hasPermission("VIEW_LOGS"));
         }
-        
-        // Add the device control panel to the main control panel
-        JScrollPane controlScrollPane = new JScrollPane(deviceControlPanel);
-        controlPanel.add(controlScrollPane, BorderLayout.CENTER);
-        
-        controlPanel.revalidate();
-        controlPanel.repaint();
+        throw new IllegalArgumentException("No control panel for " + device.getClass().getSimpleName());
     }
     
     private void showAddDeviceDialog() {
@@ -703,7 +569,7 @@ public class SmartHomeGUI {
                 
                 if (newDevice != null) {
                     system.addDevice(newDevice);
-                    updateDeviceList();
+                    refresh.deviceListChanged();
                     dialog.dispose();
                 }
             } catch (Exception ex) {
@@ -817,14 +683,67 @@ public class SmartHomeGUI {
         logsDialog.setSize(700, 500);
         logsDialog.setLayout(new BorderLayout());
         
-        JTextArea logsArea = new JTextArea();
-        logsArea.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(logsArea);
+        // Rows are paged in from the system log as they scroll into view
+        LogListModel.Source systemLogSource = new LogListModel.Source() {
+            @Override
+            public int size() {
+                return system.getSystemLogCount();
+            }
+            
+            @Override
+            public long appended() {
+                // The system log only grows
+                return system.getSystemLogCount();
+            }
+            
+            @Override
+            public List<String> page(int from, int count) {
+                return system.getSystemLogs(from, count);
+            }
+        };
+        LogViewPanel logsView = new LogViewPanel(systemLogSource, 25);
+        
+        // Searches system and security logs through the log index
+        JTextField queryField = new JTextField(25);
+        JComboBox<String> rangeCombo = new JComboBox<>(new String[]{"All time", "Last hour", "Last 24 hours", "Last 7 days"});
+        JButton searchButton = new JButton("Search");
+        JButton showAllButton = new JButton("Show All");
+        JLabel matchLabel = new JLabel(" ");
+        
+        ActionListener search = e -> {
+            LocalDateTime from = null;
+            switch (rangeCombo.getSelectedIndex()) {
+                case 1:
+                    from = LocalDateTime.now().minusHours(1);
+                    break;
+                case 2:
+                    from = LocalDateTime.now().minusDays(1);
+                    break;
+                case 3:
+                    from = LocalDateTime.now().minusDays(7);
+                    break;
+                default:
+                    break;
+            }
+            List<String> matches = system.searchLogs(queryField.getText(), from, null, MAX_LOG_SEARCH_RESULTS);
+            logsView.setSource(LogListModel.of(matches), false);
+            matchLabel.setText(matches.size() >= MAX_LOG_SEARCH_RESULTS
+                    ? "Newest " + MAX_LOG_SEARCH_RESULTS + " matches" : matches.size() + " match(es), newest first");
+        };
+        queryField.addActionListener(search);
+        searchButton.addActionListener(search);
+        showAllButton.addActionListener(e -> {
+            logsView.setSource(systemLogSource, true);
+            matchLabel.setText(" ");
+        });
         
-        List<String> logs = system.getSystemLogs();
-        for (String log : logs) {
-            logsArea.append(log + "\n");
-        }
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPanel.add(new JLabel("Find:"));
+        searchPanel.add(queryField);
+        searchPanel.add(rangeCombo);
+        searchPanel.add(searchButton);
+        searchPanel.add(showAllButton);
+        searchPanel.add(matchLabel);
         
         JButton closeButton = new JButton("Close");
         closeButton.addActionListener(e -> logsDialog.dispose());
@@ -832,7 +751,8 @@ public class SmartHomeGUI {
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         buttonPanel.add(closeButton);
         
-        logsDialog.add(scrollPane, BorderLayout.CENTER);
+        logsDialog.add(searchPanel, BorderLayout.NORTH);
+        logsDialog.add(logsView, BorderLayout.CENTER);
         logsDialog.add(buttonPanel, BorderLayout.SOUTH);
         
         logsDialog.setLocationRelativeTo(mainFrame);
@@ -951,12 +871,10 @@ public class SmartHomeGUI {
                 days[i] = dayCheckboxes[i].isSelected();
             }
             
-            // Create and add the scheduled task
+            // Create the scheduled task and add it in the device's mailbox
             ScheduledTask task = new ScheduledTask(taskName, device, action, parameters, time, days);
-            device.addScheduledTask(task);
-            
             scheduleDialog.dispose();
-            showDeviceControl(device); // Refresh the control panel
+            updateSchedule(device, d -> d.addScheduledTask(task));
         });
         
         buttonPanel.add(cancelButton);
@@ -0,0 +1,213 @@
+package smarthome;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import smarthome.models.Device;
+import smarthome.replication.ReplicationPrimary;
+import smarthome.replication.ReplicationStandby;
+import smarthome.system.SmartHomeSystem;
+
+// Headless service mode for gateway boxes: starts only SmartHomeSystem,
+// its scheduler and the console, and never references AWT or Swing,
+// so none of those classes are loaded. Startup is measured against a
+// budget and reported together with the resident set size.
+//
+// Hot standby: a server started with --replicate PORT ships its state to
+// standbys on that local port; one started with --standby-of PORT follows
+// such a primary and only finishes starting up (log file, scheduler,
+// console) once it takes over. Stopping the primary normally does not
+// trigger a takeover, its process dying does.
+//
+// Usage: SmartHomeServer [--startup-budget MS] [--no-console] [--no-defaults] [--quiet]
+//                        [--replicate PORT] [--standby-of PORT]
+public class SmartHomeServer {
+
+    private static final long DEFAULT_STARTUP_BUDGET_MILLIS = 500;
+
+    private final SmartHomeSystem system;
+    private ReplicationPrimary replication;
+
+    public SmartHomeServer(SmartHomeSystem system) {
+        this.system = system;
+    }
+
+    public static void main(String[] args) {
+        long launched = System.nanoTime();
+        // Any accidental AWT use fails fast instead of looking for a display
+        System.setProperty("java.awt.headless", "true");
+
+        long startupBudget = DEFAULT_STARTUP_BUDGET_MILLIS;
+        boolean console = true;
+        boolean defaults = true;
+        boolean quiet = false;
+        int replicatePort = -1;
+        int standbyOf = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--startup-budget":
+                    if (i + 1 >= args.length) {
+                        usage("Missing value for --startup-budget");
+                    }
+                    try {
+                        startupBudget = Long.parseLong(args[++i]);
+                    } catch (NumberFormatException e) {
+                        usage("Invalid startup budget: " + args[i]);
+                    }
+                    break;
+                case "--no-console":
+                    console = false;
+                    break;
+                case "--no-defaults":
+                    defaults = false;
+                    break;
+                case "--quiet":
+                    quiet = true;
+                    break;
+                case "--replicate":
+                    replicatePort = port(args, ++i);
+                    break;
+                case "--standby-of":
+                    standbyOf = port(args, ++i);
+                    break;
+                default:
+                    usage("Unknown option: " + args[i]);
+            }
+        }
+
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        if (quiet) {
+            Device.setConsoleOutput(false);
+            system.setConsoleEcho(false);
+        }
+        if (standbyOf >= 0) {
+            // The devices come from the primary's snapshot instead
+            defaults = false;
+            if (!awaitTakeover(system, standbyOf)) {
+                return;
+            }
+        }
+        SmartHomeApp.enableLogFile(system);
+        long systemReady = System.nanoTime();
+
+        if (defaults) {
+            SmartHomeApp.initializeDefaultDevices(system);
+        }
+        SmartHomeServer server = new SmartHomeServer(system);
+        server.start();
+        if (replicatePort >= 0) {
+            try {
+                server.startReplication(replicatePort);
+            } catch (IOException e) {
+                System.err.println("Cannot replicate on port " + replicatePort + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        long ready = System.nanoTime();
+
+        if (standbyOf < 0) {
+            reportStartup(launched, systemReady, ready, startupBudget);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "server-shutdown"));
+
+        if (console) {
+            SmartHomeApp.runConsole(system);
+            System.exit(0);
+        } else {
+            // Runs until the process is stopped
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: SmartHomeServer [--startup-budget MS] [--no-console] [--no-defaults] [--quiet]");
+        System.err.println("                       [--replicate PORT] [--standby-of PORT]");
+        System.exit(2);
+    }
+
+    private static int port(String[] args, int i) {
+        if (i >= args.length) {
+            usage("Missing value for " + args[i - 1]);
+        }
+        try {
+            return Integer.parseInt(args[i]);
+        } catch (NumberFormatException e) {
+            usage("Invalid port: " + args[i]);
+            return -1;
+        }
+    }
+
+    // Follows the primary on the local port until it is lost; false if
+    // interrupted before that
+    private static boolean awaitTakeover(SmartHomeSystem system, int port) {
+        ReplicationStandby standby = new ReplicationStandby(system, port);
+        standby.start();
+        System.out.println("Standby of localhost:" + port + ", waiting to take over");
+        try {
+            return standby.awaitPromotion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            standby.stop();
+            return false;
+        }
+    }
+
+    public void start() {
+        system.startScheduler();
+    }
+
+    // Lets standby servers follow this one
+    public void startReplication(int port) throws IOException {
+        replication = new ReplicationPrimary(system, port);
+        replication.start();
+        System.out.println("Replicating to standbys on port " + replication.getPort());
+    }
+
+    public void stop() {
+        if (replication != null) {
+            replication.close();
+        }
+        system.shutdown();
+    }
+
+    private static void reportStartup(long launched, long systemReady, long ready, long budgetMillis) {
+        long mainMillis = TimeUnit.NANOSECONDS.toMillis(ready - launched);
+        // Includes JVM boot and class loading before main, when known
+        long totalMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> System.currentTimeMillis() - start.toEpochMilli())
+                .orElse(mainMillis);
+
+        System.out.println("Headless server ready in " + totalMillis + " ms (system " +
+                           TimeUnit.NANOSECONDS.toMillis(systemReady - launched) + " ms, main " +
+                           mainMillis + " ms, budget " + budgetMillis + " ms), RSS " + residentSetSize());
+        if (totalMillis > budgetMillis) {
+            System.err.println("Startup exceeded its budget by " + (totalMillis - budgetMillis) + " ms");
+        }
+    }
+
+    // Resident set size from /proc (Linux), or "n/a" elsewhere
+    private static String residentSetSize() {
+        Path status = Paths.get("/proc/self/status");
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    long kilobytes = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    return (kilobytes / 1024) + " MB";
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not available on this platform
+        }
+        return "n/a";
+    }
+}
@@ -0,0 +1,65 @@
+package smarthome.automation;
+
+import java.time.LocalDateTime;
+
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+
+// Something that happened in the home and may trigger automation rules
+public class AutomationEvent {
+
+    public enum Type {
+        MOTION,       // Sensor event, subject is the location
+        DEVICE_STATE  // Device attribute changed, subject is the device id
+    }
+
+    private final Type type;
+    private final String subject;
+    private final DeviceAttribute attribute;
+    private final Object value;
+    private final LocalDateTime time;
+
+    public AutomationEvent(Type type, String subject, DeviceAttribute attribute, Object value, LocalDateTime time) {
+        this.type = type;
+        this.subject = subject;
+        this.attribute = attribute;
+        this.value = value;
+        this.time = time;
+    }
+
+    public static AutomationEvent motion(String location) {
+        return new AutomationEvent(Type.MOTION, location, null, null, LocalDateTime.now());
+    }
+
+    public static AutomationEvent deviceState(Device device, DeviceAttribute attribute, Object value) {
+        return new AutomationEvent(Type.DEVICE_STATE, device.getId(), attribute, value, LocalDateTime.now());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public DeviceAttribute getAttribute() {
+        return attribute;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.MOTION) {
+            return "Motion in " + subject;
+        }
+        return subject + " " + attribute + " = " + value;
+    }
+}
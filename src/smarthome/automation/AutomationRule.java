@@ -0,0 +1,96 @@
+package smarthome.automation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import smarthome.models.DeviceCommand;
+
+public class AutomationRule {
+
+    // Command to run against a device when the rule fires
+    public static class Action {
+        private final String deviceId;
+        private final DeviceCommand command;
+
+        public Action(String deviceId, DeviceCommand command) {
+            this.deviceId = deviceId;
+            this.command = command;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public DeviceCommand getCommand() {
+            return command;
+        }
+    }
+
+    private final String id;
+    private String name;
+    private final EventPattern trigger;
+    private final List<RuleCondition> conditions;
+    private final List<Action> actions;
+    private boolean isEnabled;
+
+    public AutomationRule(String name, EventPattern trigger) {
+        this.id = UUID.randomUUID().toString();
+        this.name = name;
+        this.trigger = trigger;
+        this.conditions = new ArrayList<>();
+        this.actions = new ArrayList<>();
+        this.isEnabled = true;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public EventPattern getTrigger() {
+        return trigger;
+    }
+
+    // Conditions and actions should be set up before the rule is added to
+    // a RuleEngine, which compiles them when the rule is registered
+    public AutomationRule addCondition(RuleCondition condition) {
+        conditions.add(condition);
+        return this;
+    }
+
+    public AutomationRule addAction(String deviceId, DeviceCommand command) {
+        actions.add(new Action(deviceId, command));
+        return this;
+    }
+
+    public List<RuleCondition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    public List<Action> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.isEnabled = enabled;
+    }
+
+    @Override
+    public String toString() {
+        return name + " - on " + trigger + ", " + conditions.size() + " condition(s), " +
+               actions.size() + " action(s)";
+    }
+}
@@ -0,0 +1,55 @@
+package smarthome.automation;
+
+import smarthome.models.DeviceAttribute;
+
+// Trigger of a rule. Null fields are wildcards.
+public class EventPattern {
+    private final AutomationEvent.Type type;
+    private final String subject;
+    private final DeviceAttribute attribute;
+    private final Object value;
+
+    public EventPattern(AutomationEvent.Type type, String subject, DeviceAttribute attribute, Object value) {
+        this.type = type;
+        this.subject = subject;
+        this.attribute = attribute;
+        this.value = value;
+    }
+
+    // Motion in the given location, or anywhere if location is null
+    public static EventPattern motion(String location) {
+        return new EventPattern(AutomationEvent.Type.MOTION, location, null, null);
+    }
+
+    // Attribute change of a device (null device id matches any device)
+    public static EventPattern deviceState(String deviceId, DeviceAttribute attribute, Object value) {
+        return new EventPattern(AutomationEvent.Type.DEVICE_STATE, deviceId, attribute, value);
+    }
+
+    public static EventPattern securityModeChanged(String mode) {
+        return deviceState(null, DeviceAttribute.SECURITY_MODE, mode);
+    }
+
+    public AutomationEvent.Type getType() {
+        return type;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public DeviceAttribute getAttribute() {
+        return attribute;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + (subject != null ? subject : "*") +
+               (attribute != null ? ", " + attribute : "") +
+               (value != null ? " = " + value : "") + ")";
+    }
+}
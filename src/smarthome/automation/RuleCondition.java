@@ -0,0 +1,8 @@
+package smarthome.automation;
+
+public interface RuleCondition {
+    // Conditions with the same key are evaluated once per event and shared
+    // between all rules that use them
+    String getKey();
+    boolean test(AutomationEvent event, RuleContext context);
+}
@@ -0,0 +1,73 @@
+package smarthome.automation;
+
+import java.time.LocalTime;
+import java.util.Objects;
+
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+
+// Factory methods for the built-in rule conditions
+public final class RuleConditions {
+
+    private RuleConditions() {
+    }
+
+    public static RuleCondition deviceOn(String deviceId) {
+        return attributeEquals(deviceId, DeviceAttribute.POWER, true);
+    }
+
+    public static RuleCondition deviceOff(String deviceId) {
+        return attributeEquals(deviceId, DeviceAttribute.POWER, false);
+    }
+
+    public static RuleCondition attributeEquals(String deviceId, DeviceAttribute attribute, Object value) {
+        String key = "attr:" + deviceId + ":" + attribute + "=" + value;
+        return new RuleCondition() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public boolean test(AutomationEvent event, RuleContext context) {
+                Device device = context.getDevice(deviceId);
+                return device != null && Objects.equals(device.getAttribute(attribute), value);
+            }
+        };
+    }
+
+    // Inclusive start, exclusive end; windows may span midnight (22:00-06:00)
+    public static RuleCondition timeBetween(LocalTime start, LocalTime end) {
+        String key = "time:" + start + "-" + end;
+        return new RuleCondition() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public boolean test(AutomationEvent event, RuleContext context) {
+                LocalTime now = event.getTime().toLocalTime();
+                if (start.isBefore(end)) {
+                    return !now.isBefore(start) && now.isBefore(end);
+                }
+                return !now.isBefore(start) || now.isBefore(end);
+            }
+        };
+    }
+
+    public static RuleCondition securityModeIs(String mode) {
+        String key = "mode:" + mode;
+        return new RuleCondition() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public boolean test(AutomationEvent event, RuleContext context) {
+                return mode.equals(context.getSecurityMode());
+            }
+        };
+    }
+}
@@ -0,0 +1,9 @@
+package smarthome.automation;
+
+import smarthome.models.Device;
+
+// Facts available to rule conditions while an event is evaluated
+public interface RuleContext {
+    Device getDevice(String deviceId);
+    String getSecurityMode();
+}
@@ -0,0 +1,362 @@
+package smarthome.automation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import smarthome.interfaces.DeviceCommandDispatcher;
+import smarthome.interfaces.DeviceStateListener;
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+import smarthome.models.DeviceCommand;
+
+// Evaluates automation rules against motion and device state events.
+//
+// Rules are compiled into a small discrimination network: triggers are
+// indexed by event type, subject and attribute (alpha nodes), then by
+// value, so an event only reaches the rules whose trigger can match it.
+// Conditions with the same key are shared between rules and evaluated at
+// most once per event.
+public class RuleEngine implements DeviceStateListener, RuleContext {
+
+    // Upper bound on events triggered by rule actions for one input event,
+    // so two rules that keep toggling each other cannot loop forever
+    private static final int MAX_CASCADE_EVENTS = 64;
+
+    // Events caused by one input event share a budget. Actions may run later
+    // on a device worker, so the cascade travels with them.
+    private static class Cascade {
+        private final AtomicInteger remaining = new AtomicInteger(MAX_CASCADE_EVENTS);
+        private final AtomicBoolean reported = new AtomicBoolean(false);
+    }
+
+    // Cascade of the rule action running on the current thread, if any
+    private static final ThreadLocal<Cascade> CURRENT_CASCADE = new ThreadLocal<>();
+
+    private static class PendingEvent {
+        private final AutomationEvent event;
+        private final Cascade cascade;
+
+        private PendingEvent(AutomationEvent event, Cascade cascade) {
+            this.event = event;
+            this.cascade = cascade;
+        }
+    }
+
+    private static class ConditionNode {
+        private final RuleCondition condition;
+        private long evaluatedAt = -1;
+        private boolean result;
+
+        private ConditionNode(RuleCondition condition) {
+            this.condition = condition;
+        }
+    }
+
+    private static class RuleNode {
+        private final AutomationRule rule;
+        private final ConditionNode[] conditions;
+        private final AutomationRule.Action[] actions;
+
+        private RuleNode(AutomationRule rule, ConditionNode[] conditions) {
+            this.rule = rule;
+            this.conditions = conditions;
+            this.actions = rule.getActions().toArray(new AutomationRule.Action[0]);
+        }
+    }
+
+    private static class AlphaNode {
+        private final Map<Object, List<RuleNode>> byValue = new HashMap<>();
+        private final List<RuleNode> anyValue = new ArrayList<>();
+    }
+
+    private final Function<String, Device> deviceLookup;
+    private final Consumer<String> eventLog;
+    private DeviceCommandDispatcher dispatcher;
+    private final Map<String, AutomationRule> rules;
+
+    // type -> subject (null = any) -> attribute (null = any) -> alpha node
+    private Map<AutomationEvent.Type, Map<String, Map<DeviceAttribute, AlphaNode>>> network;
+    private int conditionNodeCount;
+    private boolean networkDirty;
+
+    private boolean enabled;
+    private String securityMode;
+    private long eventSequence;
+    // Both guarded by pendingEvents, not by the engine
+    private final ArrayDeque<PendingEvent> pendingEvents;
+    private boolean processing;
+    private long rulesFired;
+
+    public RuleEngine(Function<String, Device> deviceLookup, Consumer<String> eventLog) {
+        this.deviceLookup = deviceLookup;
+        this.eventLog = eventLog;
+        this.dispatcher = DeviceCommandDispatcher.DIRECT;
+        this.rules = new LinkedHashMap<>();
+        this.network = new EnumMap<>(AutomationEvent.Type.class);
+        this.networkDirty = false;
+        this.enabled = true;
+        this.securityMode = "DISARMED";
+        this.pendingEvents = new ArrayDeque<>();
+    }
+
+    // Decides where rule actions run, e.g. on the target device's queue
+    public synchronized void setDispatcher(DeviceCommandDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public synchronized void addRule(AutomationRule rule) {
+        rules.put(rule.getId(), rule);
+        networkDirty = true;
+    }
+
+    public synchronized void removeRule(String ruleId) {
+        if (rules.remove(ruleId) != null) {
+            networkDirty = true;
+        }
+    }
+
+    public synchronized List<AutomationRule> getRules() {
+        return Collections.unmodifiableList(new ArrayList<>(rules.values()));
+    }
+
+    // Call after enabling/disabling a rule that is already registered
+    public synchronized void recompile() {
+        networkDirty = true;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            synchronized (pendingEvents) {
+                pendingEvents.clear();
+            }
+        }
+    }
+
+    public synchronized long getRulesFired() {
+        return rulesFired;
+    }
+
+    public synchronized int getConditionNodeCount() {
+        if (networkDirty) {
+            compile();
+        }
+        return conditionNodeCount;
+    }
+
+    // Seeds the security mode fact, e.g. when a security system is added
+    public synchronized void observeSecurityMode(String mode) {
+        this.securityMode = mode;
+    }
+
+    @Override
+    public synchronized String getSecurityMode() {
+        return securityMode;
+    }
+
+    @Override
+    public Device getDevice(String deviceId) {
+        return deviceLookup.apply(deviceId);
+    }
+
+    @Override
+    public void onStateChange(Device device, DeviceAttribute attribute, Object value) {
+        onEvent(AutomationEvent.deviceState(device, attribute, value));
+    }
+
+    // Events are queued under the queue's own lock and evaluated by one
+    // thread at a time: a caller that finds nobody draining the queue
+    // drains it, any other caller returns at once. A device worker
+    // reporting a state change thus never waits for rules another device
+    // triggered.
+    public void onEvent(AutomationEvent event) {
+        Cascade cascade = CURRENT_CASCADE.get();
+        synchronized (pendingEvents) {
+            pendingEvents.add(new PendingEvent(event, cascade != null ? cascade : new Cascade()));
+            if (processing) {
+                // Handled by the thread draining the queue, which is this
+                // one if one of our own actions raised it
+                return;
+            }
+            processing = true;
+        }
+
+        boolean drained = false;
+        try {
+            while (!drained) {
+                PendingEvent next;
+                synchronized (pendingEvents) {
+                    next = pendingEvents.poll();
+                    if (next == null) {
+                        processing = false;
+                        drained = true;
+                        continue;
+                    }
+                }
+                handle(next);
+            }
+        } finally {
+            if (!drained) {
+                // A rule failed; whatever is still queued goes with the next event
+                synchronized (pendingEvents) {
+                    processing = false;
+                }
+            }
+        }
+    }
+
+    private synchronized void handle(PendingEvent next) {
+        AutomationEvent event = next.event;
+        if (event.getAttribute() == DeviceAttribute.SECURITY_MODE) {
+            securityMode = (String) event.getValue();
+        }
+        if (!enabled || rules.isEmpty()) {
+            return;
+        }
+        if (next.cascade.remaining.decrementAndGet() < 0) {
+            if (next.cascade.reported.compareAndSet(false, true)) {
+                eventLog.accept("Automation stopped after " + MAX_CASCADE_EVENTS +
+                                " cascaded events, possible rule loop");
+            }
+            return;
+        }
+        evaluate(next.event, next.cascade);
+    }
+
+    private void evaluate(AutomationEvent event, Cascade cascade) {
+        if (networkDirty) {
+            compile();
+        }
+        eventSequence++;
+
+        Map<String, Map<DeviceAttribute, AlphaNode>> bySubject = network.get(event.getType());
+        if (bySubject == null) {
+            return;
+        }
+        if (event.getSubject() != null) {
+            evaluateSubject(bySubject.get(event.getSubject()), event, cascade);
+        }
+        evaluateSubject(bySubject.get(null), event, cascade);
+    }
+
+    private void evaluateSubject(Map<DeviceAttribute, AlphaNode> byAttribute, AutomationEvent event, Cascade cascade) {
+        if (byAttribute == null) {
+            return;
+        }
+        if (event.getAttribute() != null) {
+            evaluateAlpha(byAttribute.get(event.getAttribute()), event, cascade);
+        }
+        evaluateAlpha(byAttribute.get(null), event, cascade);
+    }
+
+    private void evaluateAlpha(AlphaNode alpha, AutomationEvent event, Cascade cascade) {
+        if (alpha == null) {
+            return;
+        }
+        if (event.getValue() != null) {
+            List<RuleNode> matching = alpha.byValue.get(event.getValue());
+            if (matching != null) {
+                evaluateRules(matching, event, cascade);
+            }
+        }
+        evaluateRules(alpha.anyValue, event, cascade);
+    }
+
+    private void evaluateRules(List<RuleNode> candidates, AutomationEvent event, Cascade cascade) {
+        for (int i = 0; i < candidates.size(); i++) {
+            RuleNode node = candidates.get(i);
+            if (conditionsHold(node, event)) {
+                fire(node, cascade);
+            }
+        }
+    }
+
+    private boolean conditionsHold(RuleNode node, AutomationEvent event) {
+        for (ConditionNode condition : node.conditions) {
+            if (condition.evaluatedAt != eventSequence) {
+                condition.result = condition.condition.test(event, this);
+                condition.evaluatedAt = eventSequence;
+            }
+            if (!condition.result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void fire(RuleNode node, Cascade cascade) {
+        rulesFired++;
+        eventLog.accept("Automation rule fired: " + node.rule.getName());
+
+        for (AutomationRule.Action action : node.actions) {
+            Device device = deviceLookup.apply(action.getDeviceId());
+            if (device == null) {
+                eventLog.accept("Automation rule " + node.rule.getName() +
+                                " refers to unknown device " + action.getDeviceId());
+                continue;
+            }
+            DeviceCommand command = action.getCommand();
+            dispatcher.dispatch(device, () -> {
+                // State changes made by this action belong to the same cascade
+                Cascade previous = CURRENT_CASCADE.get();
+                CURRENT_CASCADE.set(cascade);
+                try {
+                    command.execute(device);
+                } finally {
+                    CURRENT_CASCADE.set(previous);
+                }
+            });
+        }
+    }
+
+    private void compile() {
+        Map<AutomationEvent.Type, Map<String, Map<DeviceAttribute, AlphaNode>>> compiled =
+                new EnumMap<>(AutomationEvent.Type.class);
+        Map<String, ConditionNode> sharedConditions = new HashMap<>();
+
+        for (AutomationRule rule : rules.values()) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+
+            List<RuleCondition> conditions = rule.getConditions();
+            ConditionNode[] conditionNodes = new ConditionNode[conditions.size()];
+            for (int i = 0; i < conditionNodes.length; i++) {
+                RuleCondition condition = conditions.get(i);
+                conditionNodes[i] = sharedConditions.computeIfAbsent(condition.getKey(),
+                        key -> new ConditionNode(condition));
+            }
+
+            EventPattern trigger = rule.getTrigger();
+            AlphaNode alpha = compiled
+                    .computeIfAbsent(trigger.getType(), type -> new HashMap<>())
+                    .computeIfAbsent(trigger.getSubject(), subject -> new HashMap<>())
+                    .computeIfAbsent(trigger.getAttribute(), attribute -> new AlphaNode());
+
+            RuleNode ruleNode = new RuleNode(rule, conditionNodes);
+            if (trigger.getValue() != null) {
+                alpha.byValue.computeIfAbsent(trigger.getValue(), value -> new ArrayList<>()).add(ruleNode);
+            } else {
+                alpha.anyValue.add(ruleNode);
+            }
+        }
+
+        network = compiled;
+        conditionNodeCount = sharedConditions.size();
+        networkDirty = false;
+    }
+}
@@ -0,0 +1,96 @@
+package smarthome.catalog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import smarthome.exceptions.CatalogFormatException;
+
+// Reads RFC 4180 records one at a time. Quoted fields may contain commas,
+// doubled quotes and line breaks. Blank lines and lines starting with '#'
+// are skipped.
+public class CsvReader {
+
+    private final Reader in;
+    private int pushedBack = -2;
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader in) {
+        this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+    }
+
+    // Line the last record started on
+    public long getLine() {
+        return recordLine;
+    }
+
+    // The next record, or null at the end of the input
+    public List<String> readRecord() throws IOException, CatalogFormatException {
+        int c = read();
+        while (c == '\n' || c == '\r' || c == '#') {
+            if (c == '#') {
+                while (c != '\n' && c != -1) {
+                    c = read();
+                }
+            }
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new CatalogFormatException("Unterminated quoted field", recordLine);
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        pushedBack = next;
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushedBack != -2) {
+            c = pushedBack;
+            pushedBack = -2;
+        } else {
+            c = in.read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+}
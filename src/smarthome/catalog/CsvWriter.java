@@ -0,0 +1,46 @@
+package smarthome.catalog;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+// Writes RFC 4180 records, quoting only the fields that need it
+public class CsvWriter {
+
+    private final Writer out;
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void comment(String text) throws IOException {
+        out.write("# ");
+        out.write(text);
+        out.write('\n');
+    }
+
+    public void writeRecord(List<String> fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeField(fields.get(i));
+        }
+        out.write('\n');
+    }
+
+    private void writeField(String value) throws IOException {
+        boolean quote = value.isEmpty() ? false : value.charAt(0) == '#';
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
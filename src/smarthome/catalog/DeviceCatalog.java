@@ -0,0 +1,455 @@
+package smarthome.catalog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import smarthome.exceptions.AuthenticationException;
+import smarthome.exceptions.CatalogFormatException;
+import smarthome.models.*;
+import smarthome.system.SmartHomeSystem;
+
+// Streams the device inventory, including every device's scheduled tasks,
+// to and from CSV or JSON. Export writes one device at a time straight to
+// the writer and import parses one record at a time, so neither side holds
+// the file or a document tree in memory. Imported devices are registered
+// with a single SmartHomeSystem.addDevices call, which rebuilds the device
+// list and name index once for the whole file.
+//
+// CSV, one record per line (RFC 4180 quoting, '#' starts a comment):
+//   device,<type>,<id>,<name>,<location>,<createdBy>,<key>=<value>,...
+//   task,<deviceId>,<taskId>,<name>,<HH:mm>,<days>,<action>,<enabled>,<parameter>,...
+// Task records directly follow their device. Days are seven 0/1 flags from
+// Sunday to Saturday, e.g. 0111110 for weekdays.
+//
+// JSON: an array with one device object per line holding the same fields
+// and a "tasks" array.
+public class DeviceCatalog {
+
+    public enum Format {
+        CSV, JSON;
+
+        public static Format forFile(Path file) {
+            return file.getFileName().toString().toLowerCase().endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    private final SmartHomeSystem system;
+
+    public DeviceCatalog(SmartHomeSystem system) {
+        this.system = system;
+    }
+
+    // The format is chosen by extension: .json, anything else is CSV
+    public int exportTo(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return export(out, Format.forFile(file));
+        }
+    }
+
+    public int importFrom(Path file) throws IOException, CatalogFormatException, AuthenticationException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importDevices(in, Format.forFile(file));
+        }
+    }
+
+    // Returns the number of devices written
+    public int export(Writer out, Format format) throws IOException {
+        return export(out, format, system.getAllDevices());
+    }
+
+    public int export(Writer out, Format format, List<Device> devices) throws IOException {
+        if (format == Format.JSON) {
+            exportJson(out, devices);
+        } else {
+            exportCsv(out, devices);
+        }
+        out.flush();
+        return devices.size();
+    }
+
+    // Returns the number of devices registered
+    public int importDevices(Reader in, Format format)
+            throws IOException, CatalogFormatException, AuthenticationException {
+        List<Device> imported = readDevices(in, format);
+        system.addDevices(imported);
+        return imported.size();
+    }
+
+    // Parses and configures the devices without registering them
+    public List<Device> readDevices(Reader in, Format format) throws IOException, CatalogFormatException {
+        return format == Format.JSON ? importJson(in) : importCsv(in);
+    }
+
+    // Applies one exported setting, e.g. brightness=40, to a device
+    public static void applySetting(Device device, String key, String value) throws CatalogFormatException {
+        apply(device, key, value, 0);
+    }
+
+    private void exportCsv(Writer out, List<Device> devices) throws IOException {
+        CsvWriter csv = new CsvWriter(out);
+        csv.comment("device,type,id,name,location,createdBy,key=value,...");
+        csv.comment("task,deviceId,taskId,name,time,days,action,enabled,parameter,...");
+        List<String> record = new ArrayList<>();
+        for (Device device : devices) {
+            record.clear();
+            record.addAll(Arrays.asList("device", typeOf(device), device.getId(), device.getName(),
+                                        device.getLocation(), device.getCreatedBy()));
+            for (Map.Entry<String, Object> entry : state(device).entrySet()) {
+                record.add(entry.getKey() + "=" + entry.getValue());
+            }
+            csv.writeRecord(record);
+
+            for (ScheduledTask task : device.getScheduledTasks()) {
+                record.clear();
+                record.addAll(Arrays.asList("task", device.getId(), task.getId(), task.getName(),
+                                            task.getTime().toString(), days(task.getDaysOfWeek()),
+                                            task.getAction(), String.valueOf(task.isEnabled())));
+                if (task.getParameters() != null) {
+                    record.addAll(Arrays.asList(task.getParameters()));
+                }
+                csv.writeRecord(record);
+            }
+        }
+    }
+
+    private void exportJson(Writer out, List<Device> devices) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        out.write("[\n");
+        boolean first = true;
+        for (Device device : devices) {
+            if (!first) {
+                out.write(",\n");
+            }
+            first = false;
+
+            Map<String, Object> object = new LinkedHashMap<>();
+            object.put("type", typeOf(device));
+            object.put("id", device.getId());
+            object.put("name", device.getName());
+            object.put("location", device.getLocation());
+            object.put("createdBy", device.getCreatedBy());
+            object.putAll(state(device));
+
+            List<Object> tasks = new ArrayList<>();
+            for (ScheduledTask task : device.getScheduledTasks()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("id", task.getId());
+                entry.put("name", task.getName());
+                entry.put("time", task.getTime().toString());
+                entry.put("days", days(task.getDaysOfWeek()));
+                entry.put("action", task.getAction());
+                entry.put("parameters", task.getParameters() != null
+                        ? Arrays.asList(task.getParameters()) : new ArrayList<>());
+                entry.put("enabled", task.isEnabled());
+                tasks.add(entry);
+            }
+            object.put("tasks", tasks);
+
+            out.write("  ");
+            json.writeValue(object);
+        }
+        out.write("\n]\n");
+    }
+
+    private List<Device> importCsv(Reader in) throws IOException, CatalogFormatException {
+        CsvReader csv = new CsvReader(in);
+        List<Device> imported = new ArrayList<>();
+        Device current = null;
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            long line = csv.getLine();
+            switch (record.get(0)) {
+                case "device":
+                    if (record.size() < 6) {
+                        throw new CatalogFormatException("Device record needs type, id, name, location and creator", line);
+                    }
+                    current = create(record.get(1), record.get(2), record.get(3), record.get(4),
+                                     record.get(5), line);
+                    Map<String, String> settings = new LinkedHashMap<>();
+                    for (String field : record.subList(6, record.size())) {
+                        int separator = field.indexOf('=');
+                        if (separator < 0) {
+                            throw new CatalogFormatException("Expected key=value: " + field, line);
+                        }
+                        settings.put(field.substring(0, separator), field.substring(separator + 1));
+                    }
+                    configure(current, settings, line);
+                    imported.add(current);
+                    break;
+                case "task":
+                    if (record.size() < 8) {
+                        throw new CatalogFormatException("Task record needs device, id, name, time, days, action and enabled", line);
+                    }
+                    if (current == null || !current.getId().equals(record.get(1))) {
+                        throw new CatalogFormatException("Task does not follow device " + record.get(1), line);
+                    }
+                    addTask(current, record.get(2), record.get(3), record.get(4), record.get(5),
+                            record.get(6), record.subList(8, record.size()), record.get(7), line);
+                    break;
+                default:
+                    throw new CatalogFormatException("Unknown record type: " + record.get(0), line);
+            }
+        }
+        return imported;
+    }
+
+    private List<Device> importJson(Reader in) throws IOException, CatalogFormatException {
+        JsonReader json = new JsonReader(in);
+        List<Device> imported = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            Object value = json.readValue();
+            long line = json.getLine();
+            if (!(value instanceof Map)) {
+                throw new CatalogFormatException("Expected a device object", line);
+            }
+            Map<?, ?> object = (Map<?, ?>) value;
+            Device device = create(text(object.remove("type")), text(object.remove("id")),
+                                   text(object.remove("name")), text(object.remove("location")),
+                                   text(object.remove("createdBy")), line);
+            Object tasks = object.remove("tasks");
+            Map<String, String> settings = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : object.entrySet()) {
+                settings.put(String.valueOf(entry.getKey()), text(entry.getValue()));
+            }
+            configure(device, settings, line);
+
+            if (tasks instanceof List) {
+                for (Object element : (List<?>) tasks) {
+                    if (!(element instanceof Map)) {
+                        throw new CatalogFormatException("Expected a task object", line);
+                    }
+                    Map<?, ?> task = (Map<?, ?>) element;
+                    List<String> parameters = new ArrayList<>();
+                    if (task.get("parameters") instanceof List) {
+                        for (Object parameter : (List<?>) task.get("parameters")) {
+                            parameters.add(text(parameter));
+                        }
+                    }
+                    addTask(device, text(task.get("id")), text(task.get("name")), text(task.get("time")),
+                            text(task.get("days")), text(task.get("action")), parameters,
+                            text(task.get("enabled")), line);
+                }
+            }
+            imported.add(device);
+        }
+        return imported;
+    }
+
+    private static String text(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static String typeOf(Device device) {
+        return device.getClass().getSimpleName();
+    }
+
+    // Type specific settings; energy saving and auto adjust precede the
+    // temperature so they cannot override it on import
+    private static Map<String, Object> state(Device device) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        if (device instanceof Light) {
+            Light light = (Light) device;
+            state.put("brightness", light.getBrightness());
+            state.put("color", light.getColor());
+            state.put("motionActivated", light.isMotionActivated());
+            state.put("motionBrightness", light.getMotionBrightness());
+        } else if (device instanceof Fan) {
+            state.put("speed", ((Fan) device).getSpeed());
+        } else if (device instanceof AirConditioner) {
+            AirConditioner ac = (AirConditioner) device;
+            state.put("mode", ac.getMode());
+            state.put("energySaving", ac.isEnergySavingMode());
+            state.put("autoTempAdjust", ac.isAutoTempAdjust());
+            state.put("temperature", ac.getTemperature());
+            state.put("quietStart", ac.getQuietHoursStart().toString());
+            state.put("quietEnd", ac.getQuietHoursEnd().toString());
+        } else if (device instanceof SecuritySystem) {
+            state.put("securityMode", ((SecuritySystem) device).getSecurityMode());
+        }
+        state.put("power", device.isOn());
+        if (device instanceof SecuritySystem) {
+            // Can only sound while the system is on
+            state.put("alarm", ((SecuritySystem) device).isAlarmActive());
+        }
+        return state;
+    }
+
+    private Device create(String type, String id, String name, String location, String createdBy, long line)
+            throws CatalogFormatException {
+        if (type == null || id == null || id.isEmpty() || name == null || location == null) {
+            throw new CatalogFormatException("Device needs type, id, name and location", line);
+        }
+        if (createdBy == null || createdBy.isEmpty()) {
+            User user = system.getCurrentUser();
+            createdBy = user != null ? user.getUsername() : "import";
+        }
+        switch (type) {
+            case "Light":
+                return new Light(id, name, location, createdBy);
+            case "Fan":
+                return new Fan(id, name, location, createdBy);
+            case "AirConditioner":
+                return new AirConditioner(id, name, location, createdBy);
+            case "SecuritySystem":
+                return new SecuritySystem(id, name, location, createdBy);
+            default:
+                throw new CatalogFormatException("Unknown device type: " + type, line);
+        }
+    }
+
+    // Runs before the device is registered, so no listener sees the
+    // intermediate states. Power goes last so switching on cannot adjust
+    // the restored settings, followed only by the alarm, which needs it.
+    private static void configure(Device device, Map<String, String> settings, long line)
+            throws CatalogFormatException {
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            if (!setting.getKey().equals("power") && !setting.getKey().equals("alarm")) {
+                apply(device, setting.getKey(), setting.getValue(), line);
+            }
+        }
+        if (Boolean.parseBoolean(settings.get("power"))) {
+            device.turnOn();
+        }
+        if (settings.containsKey("alarm")) {
+            apply(device, "alarm", settings.get("alarm"), line);
+        }
+    }
+
+    private static void apply(Device device, String key, String value, long line) throws CatalogFormatException {
+        // Only a JSON null gets here without a value; no version writes one
+        if (value == null) {
+            throw new CatalogFormatException("Missing value for " + key, line);
+        }
+        try {
+            switch (key) {
+                case "brightness":
+                    as(Light.class, device, key, line).setBrightness(Integer.parseInt(value));
+                    return;
+                case "color":
+                    as(Light.class, device, key, line).setColor(value);
+                    return;
+                case "motionActivated":
+                    as(Light.class, device, key, line).setMotionActivated(Boolean.parseBoolean(value));
+                    return;
+                case "motionBrightness":
+                    as(Light.class, device, key, line).setMotionBrightness(Integer.parseInt(value));
+                    return;
+                case "speed":
+                    as(Fan.class, device, key, line).setSpeed(Integer.parseInt(value));
+                    return;
+                case "mode":
+                    as(AirConditioner.class, device, key, line).setMode(value);
+                    return;
+                case "energySaving":
+                    as(AirConditioner.class, device, key, line).setEnergySavingMode(Boolean.parseBoolean(value));
+                    return;
+                case "autoTempAdjust":
+                    as(AirConditioner.class, device, key, line).setAutoTempAdjust(Boolean.parseBoolean(value));
+                    return;
+                case "temperature":
+                    as(AirConditioner.class, device, key, line).setTemperature(Integer.parseInt(value));
+                    return;
+                case "quietStart": {
+                    AirConditioner ac = as(AirConditioner.class, device, key, line);
+                    ac.setQuietHours(LocalTime.parse(value), ac.getQuietHoursEnd());
+                    return;
+                }
+                case "quietEnd": {
+                    AirConditioner ac = as(AirConditioner.class, device, key, line);
+                    ac.setQuietHours(ac.getQuietHoursStart(), LocalTime.parse(value));
+                    return;
+                }
+                case "power":
+                    if (Boolean.parseBoolean(value)) {
+                        device.turnOn();
+                    } else {
+                        device.turnOff();
+                    }
+                    return;
+                case "location":
+                    device.setLocation(value);
+                    return;
+                case "alarm": {
+                    SecuritySystem security = as(SecuritySystem.class, device, key, line);
+                    if (Boolean.parseBoolean(value)) {
+                        security.activateAlarm();
+                    } else {
+                        security.deactivateAlarm();
+                    }
+                    return;
+                }
+                case "securityMode": {
+                    SecuritySystem security = as(SecuritySystem.class, device, key, line);
+                    if (!value.equals(security.getSecurityMode())) {
+                        security.setSecurityMode(value);
+                    }
+                    return;
+                }
+                default:
+                    // Written by a newer version; skip it
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new CatalogFormatException("Invalid value for " + key + ": " + value, line);
+        }
+    }
+
+    // The device as the type a setting applies to
+    private static <T extends Device> T as(Class<T> type, Device device, String key, long line)
+            throws CatalogFormatException {
+        if (!type.isInstance(device)) {
+            throw new CatalogFormatException(key + " does not apply to a " + typeOf(device), line);
+        }
+        return type.cast(device);
+    }
+
+    private static void addTask(Device device, String id, String name, String time, String days, String action,
+                                List<String> parameters, String enabled, long line)
+            throws CatalogFormatException {
+        if (id == null || name == null || action == null) {
+            throw new CatalogFormatException("Task needs id, name and action", line);
+        }
+        if (time == null) {
+            throw new CatalogFormatException("Task needs a time", line);
+        }
+        ScheduledTask task;
+        try {
+            task = new ScheduledTask(id, name, device, action, parameters.toArray(new String[0]),
+                                     LocalTime.parse(time), days(days, line));
+        } catch (DateTimeParseException e) {
+            throw new CatalogFormatException("Invalid task time: " + time, line);
+        }
+        task.setEnabled(enabled == null || Boolean.parseBoolean(enabled));
+        device.addScheduledTask(task);
+    }
+
+    private static String days(boolean[] days) {
+        StringBuilder flags = new StringBuilder(7);
+        for (int i = 0; i < 7; i++) {
+            flags.append(i < days.length && days[i] ? '1' : '0');
+        }
+        return flags.toString();
+    }
+
+    private static boolean[] days(String flags, long line) throws CatalogFormatException {
+        if (flags == null || !flags.matches("[01]{7}")) {
+            throw new CatalogFormatException("Days must be seven 0/1 flags from Sunday: " + flags, line);
+        }
+        boolean[] days = new boolean[7];
+        for (int i = 0; i < 7; i++) {
+            days[i] = flags.charAt(i) == '1';
+        }
+        return days;
+    }
+}
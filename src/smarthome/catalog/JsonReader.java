@@ -0,0 +1,237 @@
+package smarthome.catalog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import smarthome.exceptions.CatalogFormatException;
+
+// Pull parser for a top-level JSON array. Elements are read one at a time
+// with hasNext/readValue, so only the current element is ever in memory.
+// Objects become LinkedHashMaps, arrays ArrayLists and numbers Long or
+// Double.
+class JsonReader {
+
+    private final Reader in;
+    private int peeked = -2;
+    private long line = 1;
+    private boolean firstElement = true;
+
+    JsonReader(Reader in) {
+        this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+    }
+
+    long getLine() {
+        return line;
+    }
+
+    void beginArray() throws IOException, CatalogFormatException {
+        expect('[');
+    }
+
+    // Consumes the separator before the next element, or the closing bracket
+    boolean hasNext() throws IOException, CatalogFormatException {
+        int c = peekToken();
+        if (c == ']') {
+            read();
+            return false;
+        }
+        if (!firstElement) {
+            expect(',');
+        }
+        firstElement = false;
+        return true;
+    }
+
+    Object readValue() throws IOException, CatalogFormatException {
+        int c = peekToken();
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                readLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                readLiteral("null");
+                return null;
+            case -1:
+                throw error("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException, CatalogFormatException {
+        expect('{');
+        Map<String, Object> object = new LinkedHashMap<>();
+        if (peekToken() == '}') {
+            read();
+            return object;
+        }
+        while (true) {
+            if (peekToken() != '"') {
+                throw error("Expected a field name");
+            }
+            String key = readString();
+            expect(':');
+            object.put(key, readValue());
+            int c = peekToken();
+            read();
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() throws IOException, CatalogFormatException {
+        expect('[');
+        List<Object> array = new ArrayList<>();
+        if (peekToken() == ']') {
+            read();
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            int c = peekToken();
+            read();
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws IOException, CatalogFormatException {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw error("Unterminated string");
+            }
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append((char) c);
+                continue;
+            }
+            c = read();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append((char) c);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    value.append((char) code);
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+            }
+        }
+    }
+
+    private Number readNumber() throws IOException, CatalogFormatException {
+        StringBuilder text = new StringBuilder();
+        boolean decimal = false;
+        int c = peek();
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            decimal |= c == '.' || c == 'e' || c == 'E';
+            text.append((char) read());
+            c = peek();
+        }
+        try {
+            return decimal ? (Number) Double.valueOf(text.toString()) : (Number) Long.valueOf(text.toString());
+        } catch (NumberFormatException e) {
+            throw error("Invalid number: " + text);
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException, CatalogFormatException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException, CatalogFormatException {
+        if (peekToken() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        read();
+    }
+
+    // Skips whitespace and returns the next character without consuming it
+    private int peekToken() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            read();
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = in.read();
+        }
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private CatalogFormatException error(String message) {
+        return new CatalogFormatException(message, line);
+    }
+}
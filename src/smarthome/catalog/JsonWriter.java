@@ -0,0 +1,83 @@
+package smarthome.catalog;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+// Minimal JSON output for maps, lists, strings, numbers and booleans
+class JsonWriter {
+
+    private final Writer out;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    void writeValue(Object value) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else if (value instanceof Map) {
+            out.write('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()));
+                out.write(':');
+                writeValue(entry.getValue());
+            }
+            out.write('}');
+        } else if (value instanceof List) {
+            out.write('[');
+            boolean first = true;
+            for (Object element : (List<?>) value) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeValue(element);
+            }
+            out.write(']');
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,15 @@
+package smarthome.exceptions;
+
+public class CatalogFormatException extends Exception {
+    
+    private final long line;
+    
+    public CatalogFormatException(String message, long line) {
+        super("Line " + line + ": " + message);
+        this.line = line;
+    }
+    
+    public long getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,8 @@
+package smarthome.exceptions;
+
+public class DeviceCommunicationException extends Exception {
+    
+    public DeviceCommunicationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package smarthome.exceptions;
+
+public class SceneNotFoundException extends Exception {
+    
+    public SceneNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package smarthome.exceptions;
+
+public class StaleDeviceStateException extends Exception {
+    private final long expectedVersion;
+    private final long currentVersion;
+    
+    public StaleDeviceStateException(String message, long expectedVersion, long currentVersion) {
+        super(message);
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+    
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+    
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
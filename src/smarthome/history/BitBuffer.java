@@ -0,0 +1,57 @@
+package smarthome.history;
+
+import java.util.Arrays;
+
+// Growable bit stream used by the compressed chunks
+class BitBuffer {
+    private long[] words;
+    private int bitLength;
+
+    BitBuffer(int initialWords) {
+        this.words = new long[Math.max(1, initialWords)];
+        this.bitLength = 0;
+    }
+
+    void write(long value, int bits) {
+        // Most significant of the requested bits first
+        for (int i = bits - 1; i >= 0; i--) {
+            writeBit(((value >>> i) & 1L) != 0);
+        }
+    }
+
+    void writeBit(boolean bit) {
+        int word = bitLength >>> 6;
+        if (word == words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        if (bit) {
+            words[word] |= 1L << (63 - (bitLength & 63));
+        }
+        bitLength++;
+    }
+
+    boolean readBit(int position) {
+        return (words[position >>> 6] & (1L << (63 - (position & 63)))) != 0;
+    }
+
+    long read(int position, int bits) {
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | (readBit(position + i) ? 1L : 0L);
+        }
+        return value;
+    }
+
+    int bitLength() {
+        return bitLength;
+    }
+
+    // Release the unused tail once the chunk is sealed
+    void trim() {
+        words = Arrays.copyOf(words, Math.max(1, (bitLength + 63) >>> 6));
+    }
+
+    int sizeInBytes() {
+        return words.length * 8;
+    }
+}
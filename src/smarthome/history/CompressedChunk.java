@@ -0,0 +1,183 @@
+package smarthome.history;
+
+// Fixed-size block of (timestamp, value) points compressed the way Gorilla
+// does it: timestamps as delta-of-delta with variable-length prefixes,
+// values as the XOR against the previous value storing only the
+// meaningful bits.
+class CompressedChunk {
+    static final int MAX_POINTS = 256;
+
+    private final BitBuffer bits;
+    private final long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeadingZeros;
+    private int lastTrailingZeros;
+    private int size;
+
+    CompressedChunk(long timestamp, double value) {
+        this.bits = new BitBuffer(8);
+        this.firstTimestamp = timestamp;
+        this.lastTimestamp = timestamp;
+        this.lastDelta = 0;
+        this.lastValueBits = Double.doubleToRawLongBits(value);
+        this.lastLeadingZeros = Integer.MAX_VALUE;
+        this.lastTrailingZeros = 0;
+
+        bits.write(timestamp, 64);
+        bits.write(lastValueBits, 64);
+        this.size = 1;
+    }
+
+    boolean isFull() {
+        return size >= MAX_POINTS;
+    }
+
+    long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int sizeInBytes() {
+        return bits.sizeInBytes();
+    }
+
+    void seal() {
+        bits.trim();
+    }
+
+    void append(long timestamp, double value) {
+        long delta = timestamp - lastTimestamp;
+        long deltaOfDelta = delta - lastDelta;
+        if (deltaOfDelta == 0) {
+            bits.writeBit(false);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            bits.write(0b10, 2);
+            bits.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            bits.write(0b110, 3);
+            bits.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            bits.write(0b1110, 4);
+            bits.write(deltaOfDelta, 12);
+        } else {
+            bits.write(0b1111, 4);
+            bits.write(deltaOfDelta, 64);
+        }
+        lastDelta = delta;
+        lastTimestamp = timestamp;
+
+        long valueBits = Double.doubleToRawLongBits(value);
+        long xor = valueBits ^ lastValueBits;
+        if (xor == 0) {
+            bits.writeBit(false);
+        } else {
+            bits.writeBit(true);
+            int leading = Long.numberOfLeadingZeros(xor);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= lastLeadingZeros && trailing >= lastTrailingZeros) {
+                // Fits in the previous window of meaningful bits
+                bits.writeBit(false);
+                bits.write(xor >>> lastTrailingZeros, 64 - lastLeadingZeros - lastTrailingZeros);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                bits.writeBit(true);
+                bits.write(leading, 6);
+                bits.write(meaningful - 1, 6);
+                bits.write(xor >>> trailing, meaningful);
+                lastLeadingZeros = leading;
+                lastTrailingZeros = trailing;
+            }
+        }
+        lastValueBits = valueBits;
+        size++;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Sequential decoder over the points of this chunk
+    class Cursor {
+        private int position;
+        private int index;
+        private long timestamp;
+        private long delta;
+        private long valueBits;
+        private int leadingZeros;
+        private int trailingZeros;
+
+        boolean next() {
+            if (index >= size) {
+                return false;
+            }
+            if (index == 0) {
+                timestamp = bits.read(0, 64);
+                valueBits = bits.read(64, 64);
+                position = 128;
+            } else {
+                readTimestamp();
+                readValue();
+            }
+            index++;
+            return true;
+        }
+
+        private void readTimestamp() {
+            long deltaOfDelta;
+            if (!bits.readBit(position++)) {
+                deltaOfDelta = 0;
+            } else if (!bits.readBit(position++)) {
+                deltaOfDelta = readSigned(7);
+            } else if (!bits.readBit(position++)) {
+                deltaOfDelta = readSigned(9);
+            } else if (!bits.readBit(position++)) {
+                deltaOfDelta = readSigned(12);
+            } else {
+                deltaOfDelta = bits.read(position, 64);
+                position += 64;
+            }
+            delta += deltaOfDelta;
+            timestamp += delta;
+        }
+
+        private long readSigned(int width) {
+            long raw = bits.read(position, width);
+            position += width;
+            // Sign-extend the two's complement value
+            return (raw << (64 - width)) >> (64 - width);
+        }
+
+        private void readValue() {
+            if (!bits.readBit(position++)) {
+                return;
+            }
+            if (bits.readBit(position++)) {
+                leadingZeros = (int) bits.read(position, 6);
+                int meaningful = (int) bits.read(position + 6, 6) + 1;
+                position += 12;
+                trailingZeros = 64 - leadingZeros - meaningful;
+            }
+            int meaningful = 64 - leadingZeros - trailingZeros;
+            long xor = bits.read(position, meaningful) << trailingZeros;
+            position += meaningful;
+            valueBits ^= xor;
+        }
+
+        long timestamp() {
+            return timestamp;
+        }
+
+        double value() {
+            return Double.longBitsToDouble(valueBits);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package smarthome.history;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import smarthome.interfaces.DeviceStateListener;
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+
+// Per-device history of state transitions. Every recorded attribute is a
+// compressed time series with incrementally maintained minute/hour/day
+// rollups, so questions like "AC runtime this week per room" are answered
+// from the rollups instead of by replaying events.
+//
+// Every device reports here from its own mailbox, so locking is per
+// device: a device's history is locked only while it is recorded or
+// read, and only the mode label dictionary is shared.
+public class DeviceHistoryStore implements DeviceStateListener {
+
+    public interface PointVisitor {
+        void visit(long timestamp, double value);
+    }
+
+    private static final Set<DeviceAttribute> RECORDED_ATTRIBUTES = EnumSet.of(
+            DeviceAttribute.POWER,
+            DeviceAttribute.BRIGHTNESS,
+            DeviceAttribute.SPEED,
+            DeviceAttribute.TEMPERATURE,
+            DeviceAttribute.MODE,
+            DeviceAttribute.SECURITY_MODE,
+            DeviceAttribute.ALARM);
+
+    private static class DeviceHistory {
+        // Latest device object with this id; a replacing device takes over
+        // the history of the one it replaced
+        private Device device;
+        private final Map<DeviceAttribute, TimeSeries> series;
+
+        private DeviceHistory(Device device) {
+            this.device = device;
+            this.series = new EnumMap<>(DeviceAttribute.class);
+        }
+    }
+
+    private final Map<String, DeviceHistory> histories;
+    // Day rollups are calendar days here
+    private final ZoneId zone;
+
+    // Modes are strings; they are stored as small integer codes. Guarded
+    // by labels.
+    private final List<String> labels;
+    private final Map<String, Integer> labelCodes;
+
+    public DeviceHistoryStore() {
+        this.histories = new ConcurrentHashMap<>();
+        this.zone = ZoneId.systemDefault();
+        this.labels = new ArrayList<>();
+        this.labelCodes = new HashMap<>();
+    }
+
+    public static boolean isRecorded(DeviceAttribute attribute) {
+        return RECORDED_ATTRIBUTES.contains(attribute);
+    }
+
+    // Records the current value of every attribute so later queries know
+    // the state the device started in
+    public void track(Device device) {
+        DeviceHistory history = histories.get(device.getId());
+        if (history != null) {
+            synchronized (history) {
+                history.device = device;
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (DeviceAttribute attribute : RECORDED_ATTRIBUTES) {
+            Object value = device.getAttribute(attribute);
+            if (value != null) {
+                record(device, attribute, value, now);
+            }
+        }
+    }
+
+    // Drops the history of a device that was removed from the home
+    public void forget(String deviceId) {
+        histories.remove(deviceId);
+    }
+
+    @Override
+    public void onStateChange(Device device, DeviceAttribute attribute, Object value) {
+        if (isRecorded(attribute)) {
+            record(device, attribute, value, System.currentTimeMillis());
+        }
+    }
+
+    public void record(Device device, DeviceAttribute attribute, Object value, long timestamp) {
+        double encoded = encode(value);
+        DeviceHistory history = histories.computeIfAbsent(device.getId(), id -> new DeviceHistory(device));
+        synchronized (history) {
+            history.series.computeIfAbsent(attribute, a -> new TimeSeries(zone)).append(timestamp, encoded);
+        }
+    }
+
+    private double encode(Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1 : 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        String label = String.valueOf(value);
+        synchronized (labels) {
+            Integer code = labelCodes.get(label);
+            if (code == null) {
+                code = labels.size();
+                labels.add(label);
+                labelCodes.put(label, code);
+            }
+            return code;
+        }
+    }
+
+    // Turns a stored MODE / SECURITY_MODE value back into its name
+    public String decodeLabel(double value) {
+        int code = (int) value;
+        synchronized (labels) {
+            return code >= 0 && code < labels.size() ? labels.get(code) : null;
+        }
+    }
+
+    public HistoryAggregate aggregate(String deviceId, DeviceAttribute attribute, long from, long to) {
+        DeviceHistory history = histories.get(deviceId);
+        if (history == null) {
+            return new HistoryAggregate();
+        }
+        synchronized (history) {
+            TimeSeries series = history.series.get(attribute);
+            return series != null ? series.aggregate(from, to, System.currentTimeMillis()) : new HistoryAggregate();
+        }
+    }
+
+    // Time the device was switched on within [from, to)
+    public Duration getRuntime(String deviceId, long from, long to) {
+        return aggregate(deviceId, DeviceAttribute.POWER, from, to).getNonZeroDuration();
+    }
+
+    // Total on-time of all devices of the given type, grouped by location
+    // Sums device by device, each as of when it is visited
+    public Map<String, Duration> getRuntimeByLocation(Class<? extends Device> type, long from, long to) {
+        long now = System.currentTimeMillis();
+        Map<String, Duration> runtimes = new TreeMap<>();
+        for (DeviceHistory history : histories.values()) {
+            synchronized (history) {
+                if (!type.isInstance(history.device)) {
+                    continue;
+                }
+                TimeSeries power = history.series.get(DeviceAttribute.POWER);
+                if (power == null) {
+                    continue;
+                }
+                Duration runtime = power.aggregate(from, to, now).getNonZeroDuration();
+                runtimes.merge(history.device.getLocation(), runtime, Duration::plus);
+            }
+        }
+        return runtimes;
+    }
+
+    // The visitor runs with the device's history locked
+    public void forEachPoint(String deviceId, DeviceAttribute attribute, long from, long to,
+                             PointVisitor visitor) {
+        DeviceHistory history = histories.get(deviceId);
+        if (history == null) {
+            return;
+        }
+        synchronized (history) {
+            TimeSeries series = history.series.get(attribute);
+            if (series != null) {
+                series.forEachPoint(from, to, visitor::visit);
+            }
+        }
+    }
+
+    public int getPointCount() {
+        int count = 0;
+        for (DeviceHistory history : histories.values()) {
+            synchronized (history) {
+                for (TimeSeries series : history.series.values()) {
+                    count += series.getPointCount();
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getStoredBytes() {
+        long bytes = 0;
+        for (DeviceHistory history : histories.values()) {
+            synchronized (history) {
+                for (TimeSeries series : history.series.values()) {
+                    bytes += series.sizeInBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+}
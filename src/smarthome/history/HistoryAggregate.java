@@ -0,0 +1,59 @@
+package smarthome.history;
+
+import java.time.Duration;
+
+// Time-weighted summary of one series over a time range
+public class HistoryAggregate {
+    private double weightedSum;   // value x milliseconds
+    private long nonZeroMillis;   // time the value was non-zero (e.g. device ON)
+    private long coveredMillis;   // time covered by recorded data
+    private long transitions;
+
+    void addHold(long millis, double value) {
+        if (millis <= 0) {
+            return;
+        }
+        weightedSum += value * millis;
+        if (value != 0) {
+            nonZeroMillis += millis;
+        }
+        coveredMillis += millis;
+    }
+
+    void add(double weightedSum, long nonZeroMillis, long coveredMillis, long transitions) {
+        this.weightedSum += weightedSum;
+        this.nonZeroMillis += nonZeroMillis;
+        this.coveredMillis += coveredMillis;
+        this.transitions += transitions;
+    }
+
+    void addTransition() {
+        transitions++;
+    }
+
+    public void merge(HistoryAggregate other) {
+        add(other.weightedSum, other.nonZeroMillis, other.coveredMillis, other.transitions);
+    }
+
+    public double getAverage() {
+        return coveredMillis == 0 ? 0 : weightedSum / coveredMillis;
+    }
+
+    public Duration getNonZeroDuration() {
+        return Duration.ofMillis(nonZeroMillis);
+    }
+
+    public Duration getCoveredDuration() {
+        return Duration.ofMillis(coveredMillis);
+    }
+
+    public long getTransitions() {
+        return transitions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("avg=%.2f, active=%s, covered=%s, transitions=%d",
+                getAverage(), getNonZeroDuration(), getCoveredDuration(), transitions);
+    }
+}
@@ -0,0 +1,194 @@
+package smarthome.history;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+// Ring of fixed-width buckets (minute, hour or day) that is updated as
+// values are appended, so range queries never have to replay raw points.
+// Only the most recent `maxSlots` buckets are retained; the ring starts
+// small and grows up to that size as history accumulates.
+//
+// Minute and hour buckets have a fixed width from the epoch. Day buckets
+// are calendar days in the home's zone, so a local day (23 or 25 hours
+// long around DST changes) is always one bucket.
+class RollupLevel {
+    private static final int INITIAL_SLOTS = 8;
+
+    private final long bucketMillis;
+    // Null for fixed-width buckets
+    private final ZoneId zone;
+    private final int maxSlots;
+    private long[] bucketIds;
+    private double[] weightedSums;
+    private int[] nonZeroMillis;
+    private int[] coveredMillis;
+    private int[] transitions;
+    private long oldestBucket;
+    private long newestBucket;
+    // Last calendar day looked up, as most lookups hit the same one
+    private long cachedDay = -1;
+    private long cachedDayStart;
+    private long cachedDayEnd;
+
+    RollupLevel(long bucketMillis, int maxSlots) {
+        this(bucketMillis, null, maxSlots);
+    }
+
+    // Calendar days in the given zone
+    RollupLevel(ZoneId zone, int maxSlots) {
+        this(TimeSeries.DAY, zone, maxSlots);
+    }
+
+    private RollupLevel(long bucketMillis, ZoneId zone, int maxSlots) {
+        this.bucketMillis = bucketMillis;
+        this.zone = zone;
+        this.maxSlots = maxSlots;
+        this.oldestBucket = -1;
+        this.newestBucket = -1;
+        allocate(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    private void allocate(int slots) {
+        bucketIds = new long[slots];
+        weightedSums = new double[slots];
+        nonZeroMillis = new int[slots];
+        coveredMillis = new int[slots];
+        transitions = new int[slots];
+        Arrays.fill(bucketIds, -1);
+    }
+
+    private void grow(int slots) {
+        long[] oldIds = bucketIds;
+        double[] oldSums = weightedSums;
+        int[] oldNonZero = nonZeroMillis;
+        int[] oldCovered = coveredMillis;
+        int[] oldTransitions = transitions;
+        allocate(slots);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] >= 0) {
+                int slot = (int) (oldIds[i] % slots);
+                bucketIds[slot] = oldIds[i];
+                weightedSums[slot] = oldSums[i];
+                nonZeroMillis[slot] = oldNonZero[i];
+                coveredMillis[slot] = oldCovered[i];
+                transitions[slot] = oldTransitions[i];
+            }
+        }
+    }
+
+    long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    long bucketOf(long timestamp) {
+        if (zone == null) {
+            return timestamp / bucketMillis;
+        }
+        if (cachedDay >= 0 && timestamp >= cachedDayStart && timestamp < cachedDayEnd) {
+            return cachedDay;
+        }
+        long day = LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), zone).toEpochDay();
+        cachedDay = day;
+        cachedDayStart = bucketStart(day);
+        cachedDayEnd = bucketStart(day + 1);
+        return day;
+    }
+
+    long bucketStart(long bucket) {
+        if (zone == null) {
+            return bucket * bucketMillis;
+        }
+        return LocalDate.ofEpochDay(bucket).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    boolean isBucketStart(long timestamp) {
+        return bucketStart(bucketOf(timestamp)) == timestamp;
+    }
+
+    // Start of the bucket after the one holding the timestamp
+    long nextBoundary(long timestamp) {
+        return bucketStart(bucketOf(timestamp) + 1);
+    }
+
+    // Adds a constant value held over [from, to) to every bucket it touches
+    void addHold(long from, long to, double value) {
+        if (to <= from) {
+            return;
+        }
+        // Buckets older than the retained window would be overwritten anyway
+        long oldestRetained = bucketStart(bucketOf(to - 1) - maxSlots + 1);
+        long t = Math.max(from, oldestRetained);
+        while (t < to) {
+            long bucket = bucketOf(t);
+            long bucketEnd = Math.min(to, bucketStart(bucket + 1));
+            int slot = slotFor(bucket);
+            if (slot >= 0) {
+                int millis = (int) (bucketEnd - t);
+                weightedSums[slot] += value * millis;
+                if (value != 0) {
+                    nonZeroMillis[slot] += millis;
+                }
+                coveredMillis[slot] += millis;
+            }
+            t = bucketEnd;
+        }
+    }
+
+    void addTransition(long timestamp) {
+        int slot = slotFor(bucketOf(timestamp));
+        if (slot >= 0) {
+            transitions[slot]++;
+        }
+    }
+
+    // Slot of the bucket, reclaiming the slot if it held an older bucket.
+    // Returns -1 for buckets that already fell out of the window.
+    private int slotFor(long bucket) {
+        if (newestBucket >= 0 && bucket <= newestBucket - maxSlots) {
+            return -1;
+        }
+        if (oldestBucket < 0) {
+            oldestBucket = bucket;
+        }
+        long span = Math.max(bucket, newestBucket) - oldestBucket + 1;
+        if (span > bucketIds.length && bucketIds.length < maxSlots) {
+            grow((int) Math.min(maxSlots, Math.max(span, bucketIds.length * 2L)));
+        }
+        int slot = (int) (bucket % bucketIds.length);
+        if (bucketIds[slot] != bucket) {
+            bucketIds[slot] = bucket;
+            weightedSums[slot] = 0;
+            nonZeroMillis[slot] = 0;
+            coveredMillis[slot] = 0;
+            transitions[slot] = 0;
+        }
+        newestBucket = Math.max(newestBucket, bucket);
+        return slot;
+    }
+
+    boolean isRetained(long timestamp) {
+        long bucket = bucketOf(timestamp);
+        return bucket > newestBucket - bucketIds.length && bucket >= oldestBucket;
+    }
+
+    // Adds the bucket starting at bucketStart to the aggregate. Returns false
+    // if that bucket is no longer retained.
+    boolean accumulate(long bucketStart, HistoryAggregate into) {
+        long bucket = bucketOf(bucketStart);
+        if (!isRetained(bucketStart)) {
+            return false;
+        }
+        int slot = (int) (bucket % bucketIds.length);
+        if (bucketIds[slot] == bucket) {
+            into.add(weightedSums[slot], nonZeroMillis[slot], coveredMillis[slot], transitions[slot]);
+        }
+        // A retained slot that was never touched simply had no data
+        return true;
+    }
+
+    int sizeInBytes() {
+        return bucketIds.length * (8 + 8 + 4 + 4 + 4);
+    }
+}
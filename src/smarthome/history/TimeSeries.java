@@ -0,0 +1,232 @@
+package smarthome.history;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+// History of a single device attribute: compressed raw points plus
+// minute/hour/day rollups maintained on every append. Day rollups are
+// calendar days in the home's zone. Raw points are kept as long as the
+// hour rollups; older chunks are dropped, and ranges reaching further back
+// are answered from the day rollups alone. Those line up with any query
+// bounded by local midnights; a bound within an older day cannot be
+// resolved, and that part of the day is left out of the aggregate's
+// covered time.
+class TimeSeries {
+    static final long MINUTE = 60_000L;
+    static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+
+    // Retention of each rollup level
+    private static final int MINUTE_SLOTS = 180;  // 3 hours
+    private static final int HOUR_SLOTS = 24 * 9; // 9 days, enough for "this week"
+    private static final int DAY_SLOTS = 400;     // Over a year
+    private static final long RAW_RETENTION = HOUR_SLOTS * HOUR;
+
+    interface PointVisitor {
+        void visit(long timestamp, double value);
+    }
+
+    private final List<CompressedChunk> chunks;
+    private final RollupLevel minutes;
+    private final RollupLevel hours;
+    private final RollupLevel days;
+    private boolean hasData;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private double lastValue;
+
+    TimeSeries(ZoneId zone) {
+        this.chunks = new ArrayList<>();
+        this.minutes = new RollupLevel(MINUTE, MINUTE_SLOTS);
+        this.hours = new RollupLevel(HOUR, HOUR_SLOTS);
+        this.days = new RollupLevel(zone, DAY_SLOTS);
+        this.hasData = false;
+    }
+
+    void append(long timestamp, double value) {
+        if (hasData) {
+            // Late events from other threads are treated as happening now
+            timestamp = Math.max(timestamp, lastTimestamp);
+            if (value == lastValue) {
+                return;
+            }
+            // The previous value was held until now
+            minutes.addHold(lastTimestamp, timestamp, lastValue);
+            hours.addHold(lastTimestamp, timestamp, lastValue);
+            days.addHold(lastTimestamp, timestamp, lastValue);
+        }
+        minutes.addTransition(timestamp);
+        hours.addTransition(timestamp);
+        days.addTransition(timestamp);
+
+        CompressedChunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.isFull()) {
+            if (chunk != null) {
+                chunk.seal();
+            }
+            chunks.add(new CompressedChunk(timestamp, value));
+            evictChunks(timestamp);
+        } else {
+            chunk.append(timestamp, value);
+        }
+
+        if (!hasData) {
+            firstTimestamp = timestamp;
+        }
+        lastTimestamp = timestamp;
+        lastValue = value;
+        hasData = true;
+    }
+
+    // Drops chunks whose points are all past the raw retention, i.e. whose
+    // successor starts before it; the newest chunk always stays
+    private void evictChunks(long now) {
+        long horizon = now - RAW_RETENTION;
+        int drop = 0;
+        while (drop + 1 < chunks.size() && chunks.get(drop + 1).getFirstTimestamp() <= horizon) {
+            drop++;
+        }
+        if (drop > 0) {
+            chunks.subList(0, drop).clear();
+        }
+    }
+
+    boolean hasData() {
+        return hasData;
+    }
+
+    double getLastValue() {
+        return lastValue;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    // Aggregates [from, to), using the coarsest rollups that fit and raw
+    // points only for the unaligned edges
+    HistoryAggregate aggregate(long from, long to, long now) {
+        HistoryAggregate result = new HistoryAggregate();
+        if (!hasData) {
+            return result;
+        }
+
+        long start = Math.max(from, firstTimestamp);
+        long rawStart = chunks.get(0).getFirstTimestamp();
+        long closedEnd = Math.min(to, lastTimestamp);
+        long t = start;
+        while (t < closedEnd) {
+            if (days.isBucketStart(t) && days.nextBoundary(t) <= closedEnd && days.accumulate(t, result)) {
+                t = days.nextBoundary(t);
+            } else if (t % HOUR == 0 && t + HOUR <= closedEnd && hours.accumulate(t, result)) {
+                t += HOUR;
+            } else if (t % MINUTE == 0 && t + MINUTE <= closedEnd && minutes.accumulate(t, result)) {
+                t += MINUTE;
+            } else {
+                // Replay raw points up to the next boundary we can use a rollup
+                // for; where they were dropped, that stretch is left out
+                RollupLevel level = minutes.isRetained(t) ? minutes : hours.isRetained(t) ? hours : days;
+                long next = Math.min(closedEnd, level.nextBoundary(t));
+                if (next > rawStart) {
+                    aggregateRaw(Math.max(t, rawStart), next, result);
+                }
+                t = next;
+            }
+        }
+
+        // The current value has been held since the last point
+        long openStart = Math.max(start, lastTimestamp);
+        long openEnd = Math.min(to, now);
+        if (openEnd > openStart) {
+            result.addHold(openEnd - openStart, lastValue);
+        }
+        if (lastTimestamp >= from && lastTimestamp < to) {
+            result.addTransition();
+        }
+        return result;
+    }
+
+    private void aggregateRaw(long from, long to, HistoryAggregate into) {
+        int chunkIndex = findChunk(from);
+        boolean known = false;
+        long heldSince = from;
+        double heldValue = 0;
+
+        for (int i = chunkIndex; i < chunks.size(); i++) {
+            CompressedChunk.Cursor cursor = chunks.get(i).cursor();
+            while (cursor.next()) {
+                long timestamp = cursor.timestamp();
+                if (timestamp >= to) {
+                    if (known) {
+                        into.addHold(to - heldSince, heldValue);
+                    }
+                    return;
+                }
+                if (timestamp > from && known) {
+                    into.addHold(timestamp - heldSince, heldValue);
+                }
+                if (timestamp >= from) {
+                    into.addTransition();
+                }
+                heldSince = Math.max(from, timestamp);
+                heldValue = cursor.value();
+                known = true;
+            }
+        }
+        if (known) {
+            into.addHold(to - heldSince, heldValue);
+        }
+    }
+
+    // Index of the last chunk starting at or before the timestamp
+    private int findChunk(long timestamp) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.get(mid).getFirstTimestamp() <= timestamp) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // Raw points still retained within [from, to)
+    void forEachPoint(long from, long to, PointVisitor visitor) {
+        if (!hasData) {
+            return;
+        }
+        for (int i = findChunk(from); i < chunks.size(); i++) {
+            CompressedChunk.Cursor cursor = chunks.get(i).cursor();
+            while (cursor.next()) {
+                if (cursor.timestamp() >= to) {
+                    return;
+                }
+                if (cursor.timestamp() >= from) {
+                    visitor.visit(cursor.timestamp(), cursor.value());
+                }
+            }
+        }
+    }
+
+    int getPointCount() {
+        int count = 0;
+        for (CompressedChunk chunk : chunks) {
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    long sizeInBytes() {
+        long bytes = minutes.sizeInBytes() + hours.sizeInBytes() + days.sizeInBytes();
+        for (CompressedChunk chunk : chunks) {
+            bytes += chunk.sizeInBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,11 @@
+package smarthome.interfaces;
+
+import smarthome.models.Device;
+
+public interface DeviceCommandDispatcher {
+    // Runs a command against the given device, either right away or later
+    // through the device's command queue
+    void dispatch(Device device, Runnable command);
+
+    DeviceCommandDispatcher DIRECT = (device, command) -> command.run();
+}
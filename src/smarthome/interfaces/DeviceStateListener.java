@@ -0,0 +1,21 @@
+package smarthome.interfaces;
+
+import java.util.List;
+
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+import smarthome.models.StateChange;
+
+public interface DeviceStateListener {
+    // value is a Boolean, Integer or String depending on the attribute
+    void onStateChange(Device device, DeviceAttribute attribute, Object value);
+
+    // Called once for changes applied together, e.g. all changes of a scene,
+    // with each attribute's final value; by default each change is handled
+    // on its own
+    default void onStateChanges(List<StateChange> changes) {
+        for (StateChange change : changes) {
+            onStateChange(change.getDevice(), change.getAttribute(), change.getValue());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package smarthome.interfaces;
+
+import java.util.concurrent.CompletableFuture;
+
+import smarthome.models.Device;
+
+// Link between the system and the physical devices. A command is delivered
+// to the device and the returned future completes once the device has
+// acknowledged it, or exceptionally with a DeviceCommunicationException.
+// Acknowledgements for the same device complete in the order sent.
+public interface DeviceTransport {
+    CompletableFuture<Void> deliver(Device device);
+
+    void shutdown();
+}
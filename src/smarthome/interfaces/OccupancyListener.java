@@ -0,0 +1,14 @@
+package smarthome.interfaces;
+
+import java.time.LocalDateTime;
+
+public interface OccupancyListener {
+    // Called on the caller's thread when motion is seen in a location that
+    // was idle (or never seen before)
+    default void onOccupied(String location, LocalDateTime since) {
+    }
+
+    // Called on a background thread once a location has seen no motion for
+    // the idle timeout; since is the last motion plus that timeout
+    void onIdle(String location, LocalDateTime since);
+}
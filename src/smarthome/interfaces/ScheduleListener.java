@@ -0,0 +1,12 @@
+package smarthome.interfaces;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import smarthome.models.ScheduledTask;
+
+public interface ScheduleListener {
+    // Called on a background thread once the tasks due in the given minute
+    // have been applied to their devices; executed may be empty
+    void onTasksExecuted(LocalDateTime minute, List<ScheduledTask> executed);
+}
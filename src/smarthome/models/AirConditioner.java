@@ -1,7 +1,6 @@
 package smarthome.models;
 
 import smarthome.interfaces.Switchable;
-import java.util.Random;
 import java.time.LocalTime;
 
 public class AirConditioner extends Device implements Switchable {
@@ -12,13 +11,16 @@ public class AirConditioner extends Device implements Switchable {
     private static final int MAX_TEMPERATURE = 30;
     private static final int MIN_TEMPERATURE = 16;
     private static final String DEFAULT_MODE = "COOL";
+    private static final double STANDBY_WATTS = 1.0;
+    private static final double ENERGY_SAVING_FACTOR = 0.85;
+    private static final double WATTS_PER_DEGREE = 0.06; // Extra load per degree of effort
     private boolean energySavingMode;
     private boolean autoTempAdjust; // Added auto temp adjust
     private LocalTime quietHoursStart;
     private LocalTime quietHoursEnd;
     
     public AirConditioner(String name, String location, String createdBy) {
-        super(name, location, createdBy);
+        super("AC", null, name, location, createdBy);
         this.isOn = false;
         this.temperature = DEFAULT_TEMPERATURE;
         this.mode = DEFAULT_MODE;
@@ -28,10 +30,16 @@ public class AirConditioner extends Device implements Switchable {
         this.quietHoursEnd = LocalTime.of(7, 0);    // 7 AM
     }
     
-    @Override
-    protected String generateDeviceId() {
-        Random r = new Random();
-        return "AC-" + (10000 + r.nextInt(90000));
+    // Keeps the given id, e.g. when restoring an exported catalog
+    public AirConditioner(String id, String name, String location, String createdBy) {
+        super("AC", id, name, location, createdBy);
+        this.isOn = false;
+        this.temperature = DEFAULT_TEMPERATURE;
+        this.mode = DEFAULT_MODE;
+        this.energySavingMode = false;
+        this.autoTempAdjust = false;
+        this.quietHoursStart = LocalTime.of(22, 0);
+        this.quietHoursEnd = LocalTime.of(7, 0);
     }
     
     @Override
@@ -39,7 +47,8 @@ public class AirConditioner extends Device implements Switchable {
         if (!isOn) {
             isOn = true;
             updateLastStateChange();
-            System.out.println(getName() + " turned ON");
+            report(getName() + " turned ON");
+            fireStateChange(DeviceAttribute.POWER, true);
         }
     }
     
@@ -48,7 +57,8 @@ public class AirConditioner extends Device implements Switchable {
         if (isOn) {
             isOn = false;
             updateLastStateChange();
-            System.out.println(getName() + " turned OFF");
+            report(getName() + " turned OFF");
+            fireStateChange(DeviceAttribute.POWER, false);
         }
     }
     
@@ -58,6 +68,7 @@ public class AirConditioner extends Device implements Switchable {
     }
     
     public void setTemperature(int temperature) {
+        int previous = this.temperature;
         // Enforce temperature limits
         if (temperature < MIN_TEMPERATURE) {
             this.temperature = MIN_TEMPERATURE;
@@ -66,7 +77,10 @@ public class AirConditioner extends Device implements Switchable {
         } else {
             this.temperature = temperature;
         }
-        System.out.println(getName() + " temperature set to " + this.temperature + "°C");
+        report(getName() + " temperature set to " + this.temperature + "°C");
+        if (this.temperature != previous) {
+            fireStateChange(DeviceAttribute.TEMPERATURE, this.temperature);
+        }
     }
     
     public int getTemperature() {
@@ -74,6 +88,7 @@ public class AirConditioner extends Device implements Switchable {
     }
     
     public void setMode(String mode) {
+        String previous = this.mode;
         // Validate mode
         if (mode.equals("COOL") || mode.equals("HEAT") || mode.equals("FAN") || 
             mode.equals("DRY") || mode.equals("AUTO")) {
@@ -82,7 +97,10 @@ public class AirConditioner extends Device implements Switchable {
             // Invalid mode, use default
             this.mode = DEFAULT_MODE;
         }
-        System.out.println(getName() + " mode set to " + this.mode);
+        report(getName() + " mode set to " + this.mode);
+        if (!this.mode.equals(previous)) {
+            fireStateChange(DeviceAttribute.MODE, this.mode);
+        }
     }
     
     public String getMode() {
@@ -94,7 +112,11 @@ public class AirConditioner extends Device implements Switchable {
     }
     
     public void setEnergySavingMode(boolean energySavingMode) {
+        boolean changed = this.energySavingMode != energySavingMode;
         this.energySavingMode = energySavingMode;
+        if (changed) {
+            fireStateChange(DeviceAttribute.ENERGY_SAVING, energySavingMode);
+        }
         
         // If energy saving mode is enabled, adjust settings
         if (energySavingMode && isOn) {
@@ -107,7 +129,7 @@ public class AirConditioner extends Device implements Switchable {
                 setTemperature(20);
             }
         }
-        System.out.println(getName() + " energy saving mode " + (energySavingMode ? "enabled" : "disabled"));
+        report(getName() + " energy saving mode " + (energySavingMode ? "enabled" : "disabled"));
     }
     
     public boolean isAutoTempAdjust() {
@@ -115,8 +137,12 @@ public class AirConditioner extends Device implements Switchable {
     }
     
     public void setAutoTempAdjust(boolean autoTempAdjust) {
+        boolean changed = this.autoTempAdjust != autoTempAdjust;
         this.autoTempAdjust = autoTempAdjust;
-        System.out.println(getName() + " auto temperature adjustment " + (autoTempAdjust ? "enabled" : "disabled"));
+        report(getName() + " auto temperature adjustment " + (autoTempAdjust ? "enabled" : "disabled"));
+        if (changed) {
+            fireStateChange(DeviceAttribute.AUTO_TEMP_ADJUST, autoTempAdjust);
+        }
         
         // If auto temp adjust is enabled, adjust temperature based on time of day
         if (autoTempAdjust && isOn) {
@@ -126,68 +152,62 @@ public class AirConditioner extends Device implements Switchable {
     
     // Auto adjust temperature based on time of day
     public void adjustTemperatureAuto() {
+        applyTimeBand(TimeBand.at(LocalTime.now()));
+    }
+    
+    // Apply the target temperature of a time band, used directly by the
+    // climate controller when a band boundary is crossed
+    public void applyTimeBand(TimeBand band) {
         if (!autoTempAdjust || !isOn) {
             return;
         }
         
-        LocalTime now = LocalTime.now();
-        
-        // Early morning (5-8 AM): Comfortable waking temperature
-        if (now.isAfter(LocalTime.of(5, 0)) && now.isBefore(LocalTime.of(8, 0))) {
-            if (mode.equals("COOL")) {
-                setTemperature(23); // Slightly cooler in the morning
-            } else if (mode.equals("HEAT")) {
-                setTemperature(22); // Warmer in the morning
-            }
-        }
-        // Daytime (8 AM-5 PM): Energy efficient
-        else if (now.isAfter(LocalTime.of(8, 0)) && now.isBefore(LocalTime.of(17, 0))) {
-            if (mode.equals("COOL")) {
-                setTemperature(25); // Higher during day when people may be out
-            } else if (mode.equals("HEAT")) {
-                setTemperature(20); // Lower during day
-            }
-        }
-        // Evening (5-10 PM): Comfortable evening temperature
-        else if (now.isAfter(LocalTime.of(17, 0)) && now.isBefore(LocalTime.of(22, 0))) {
-            if (mode.equals("COOL")) {
-                setTemperature(24); // Comfortable evening temperature
-            } else if (mode.equals("HEAT")) {
-                setTemperature(22); // Comfortable evening temperature
-            }
-        }
-        // Night (10 PM-5 AM): Sleep temperature
-        else {
-            if (mode.equals("COOL")) {
-                setTemperature(26); // Higher at night for sleep
-            } else if (mode.equals("HEAT")) {
-                setTemperature(19); // Lower at night for sleep
-            }
+        if (mode.equals("COOL")) {
+            setTemperature(band.getCoolTemperature());
+        } else if (mode.equals("HEAT")) {
+            setTemperature(band.getHeatTemperature());
         }
     }
     
     public void setQuietHours(LocalTime start, LocalTime end) {
         this.quietHoursStart = start;
         this.quietHoursEnd = end;
+        fireStateChange(DeviceAttribute.QUIET_HOURS, start + "-" + end);
+    }
+    
+    public LocalTime getQuietHoursStart() {
+        return quietHoursStart;
+    }
+    
+    public LocalTime getQuietHoursEnd() {
+        return quietHoursEnd;
     }
     
     // Check if current time is during quiet hours
     public boolean isQuietHours() {
-        LocalTime now = LocalTime.now();
-        
+        return isQuietHours(LocalTime.now());
+    }
+    
+    public boolean isQuietHours(LocalTime time) {
         if (quietHoursStart.isBefore(quietHoursEnd)) {
-            // Simple case: start time is before end time (e.g., 22:00 to 07:00)
-            return now.isAfter(quietHoursStart) && now.isBefore(quietHoursEnd);
+            // Simple case: start time is before end time (e.g., 13:00 to 15:00)
+            return time.isAfter(quietHoursStart) && time.isBefore(quietHoursEnd);
         } else {
-            // Complex case: start time is after end time (spans midnight)
-            return now.isAfter(quietHoursStart) || now.isBefore(quietHoursEnd);
+            // Complex case: start time is after end time (spans midnight, e.g., 22:00 to 07:00)
+            return time.isAfter(quietHoursStart) || time.isBefore(quietHoursEnd);
         }
     }
     
     // Adjust settings for quiet hours
     public void adjustForQuietHours() {
-        if (isOn && isQuietHours()) {
-            // During quiet hours, use more moderate settings
+        if (isQuietHours()) {
+            applyQuietHours();
+        }
+    }
+    
+    // During quiet hours, use more moderate settings
+    public void applyQuietHours() {
+        if (isOn) {
             if (mode.equals("COOL") && temperature < 24) {
                 setTemperature(24);
             } else if (mode.equals("HEAT") && temperature > 22) {
@@ -196,12 +216,66 @@ public class AirConditioner extends Device implements Switchable {
         }
     }
     
+    @Override
+    public double getPowerDraw() {
+        if (!isOn) {
+            return STANDBY_WATTS;
+        }
+        
+        double watts;
+        switch (mode) {
+            case "COOL":
+                // Every degree below 26°C makes the compressor work harder
+                watts = 1500 * (1 + WATTS_PER_DEGREE * Math.max(0, 26 - temperature));
+                break;
+            case "HEAT":
+                // Every degree above 18°C makes the heat pump work harder
+                watts = 2000 * (1 + WATTS_PER_DEGREE * Math.max(0, temperature - 18));
+                break;
+            case "DRY":
+                watts = 800;
+                break;
+            case "FAN":
+                watts = 80;
+                break;
+            default: // AUTO
+                watts = 1200;
+        }
+        return energySavingMode ? watts * ENERGY_SAVING_FACTOR : watts;
+    }
+    
+    @Override
+    public Object getAttribute(DeviceAttribute attribute) {
+        switch (attribute) {
+            case TEMPERATURE:
+                return temperature;
+            case MODE:
+                return mode;
+            case ENERGY_SAVING:
+                return energySavingMode;
+            case AUTO_TEMP_ADJUST:
+                return autoTempAdjust;
+            case QUIET_HOURS:
+                return quietHoursStart + "-" + quietHoursEnd;
+            default:
+                return super.getAttribute(attribute);
+        }
+    }
+    
     @Override
     public void setToDefaultSettings() {
+        int previousTemperature = this.temperature;
+        String previousMode = this.mode;
         this.temperature = DEFAULT_TEMPERATURE;
         this.mode = DEFAULT_MODE;
-        System.out.println(getName() + " set to default temperature: " + DEFAULT_TEMPERATURE + 
+        report(getName() + " set to default temperature: " + DEFAULT_TEMPERATURE + 
                           "°C, mode: " + DEFAULT_MODE);
+        if (previousTemperature != DEFAULT_TEMPERATURE) {
+            fireStateChange(DeviceAttribute.TEMPERATURE, DEFAULT_TEMPERATURE);
+        }
+        if (!DEFAULT_MODE.equals(previousMode)) {
+            fireStateChange(DeviceAttribute.MODE, DEFAULT_MODE);
+        }
     }
     
     @Override
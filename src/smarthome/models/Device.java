@@ -1,44 +1,95 @@
 package smarthome.models;
 
+import smarthome.interfaces.DeviceStateListener;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public abstract class Device {
     private String id;
     private String name;
     private String location;
     private LocalDateTime lastStateChange;
+    // Copy-on-write: tasks change rarely, but are iterated every minute
     private List<ScheduledTask> scheduledTasks;
+    private List<ScheduledTask> scheduledTasksView;
     private String createdBy; // Track who created this device
+    private List<DeviceStateListener> stateListeners;
+    private int batchDepth;
+    private List<DeviceAttribute> deferredChanges;
+    private final AtomicLong version = new AtomicLong();
+    // Console feedback for this device; set by the home it belongs to
+    private volatile boolean reporting = true;
     
-    // Constructor with random ID generation
+    // Console feedback for every device, switched off for load tests and
+    // servers where it would flood the output
+    private static volatile boolean consoleOutput = true;
+    
+    // Next number for generated ids, per id prefix. Numbers are never
+    // reused, so the id space cannot run out and nothing is kept per device;
+    // a home's registry holds only the ids of its current devices.
+    private static final Map<String, AtomicLong> ID_SEQUENCES = new ConcurrentHashMap<>();
+    private static final long FIRST_ID_NUMBER = 10000;
+    private static final String DEFAULT_ID_PREFIX = "DEV";
+    
+    // Constructor with a generated ID
     public Device(String name, String location, String createdBy) {
-        // Generate a somewhat random ID with a prefix based on device type
-        this.id = generateDeviceId();
-        this.name = name;
-        this.location = location;
-        this.lastStateChange = LocalDateTime.now();
-        this.scheduledTasks = new ArrayList<>();
-        this.createdBy = createdBy;
+        this(DEFAULT_ID_PREFIX, null, name, location, createdBy);
     }
     
     // Constructor with specific ID
     public Device(String id, String name, String location, String createdBy) {
-        this.id = id;
+        this(DEFAULT_ID_PREFIX, id, name, location, createdBy);
+    }
+    
+    // For subclasses with an id prefix of their own, e.g. LIGHT; a null id
+    // is generated from the prefix
+    protected Device(String idPrefix, String id, String name, String location, String createdBy) {
+        if (id == null) {
+            this.id = generateDeviceId(idPrefix);
+        } else {
+            this.id = id;
+            reserveId(idPrefix, id);
+        }
         this.name = name;
         this.location = location;
         this.lastStateChange = LocalDateTime.now();
-        this.scheduledTasks = new ArrayList<>();
+        this.scheduledTasks = new CopyOnWriteArrayList<>();
+        this.scheduledTasksView = Collections.unmodifiableList(scheduledTasks);
         this.createdBy = createdBy;
+        this.stateListeners = new CopyOnWriteArrayList<>();
+    }
+    
+    // Generate a device ID such as LIGHT-10042
+    private static String generateDeviceId(String prefix) {
+        return prefix + "-" + sequence(prefix).getAndIncrement();
+    }
+    
+    // Moves the sequence past an explicit id of this type, e.g. one loaded
+    // from a catalog, so no generated id can clash with it later
+    private static void reserveId(String type, String id) {
+        String prefix = type + "-";
+        // Longer numbers could overflow a long, and are not ours anyway
+        if (!id.startsWith(prefix) || id.length() == prefix.length() || id.length() - prefix.length() > 18) {
+            return;
+        }
+        for (int i = prefix.length(); i < id.length(); i++) {
+            if (!Character.isDigit(id.charAt(i))) {
+                return;
+            }
+        }
+        long number = Long.parseLong(id.substring(prefix.length()));
+        sequence(type).accumulateAndGet(number + 1, Math::max);
     }
     
-    // Generate a random device ID
-    protected String generateDeviceId() {
-        // Each implementation can override this to create type-specific IDs
-        Random rand = new Random();
-        return "DEV-" + rand.nextInt(10000);
+    private static AtomicLong sequence(String prefix) {
+        return ID_SEQUENCES.computeIfAbsent(prefix, p -> new AtomicLong(FIRST_ID_NUMBER));
     }
     
     public String getId() {
@@ -58,7 +109,10 @@ public abstract class Device {
     }
     
     public void setLocation(String location) {
-        this.location = location;
+        if (!location.equals(this.location)) {
+            this.location = location;
+            fireStateChange(DeviceAttribute.LOCATION, location);
+        }
     }
     
     public LocalDateTime getLastStateChange() {
@@ -73,16 +127,120 @@ public abstract class Device {
         return createdBy;
     }
     
+    public void addStateListener(DeviceStateListener listener) {
+        if (!stateListeners.contains(listener)) {
+            stateListeners.add(listener);
+        }
+    }
+    
+    public void removeStateListener(DeviceStateListener listener) {
+        stateListeners.remove(listener);
+    }
+    
+    // Subclasses call this whenever an observable attribute actually changes
+    protected void fireStateChange(DeviceAttribute attribute, Object value) {
+        version.incrementAndGet();
+        if (batchDepth > 0) {
+            // Reported once the batch ends, with the final value
+            if (!deferredChanges.contains(attribute)) {
+                deferredChanges.add(attribute);
+            }
+            return;
+        }
+        notifyListeners(attribute, value);
+    }
+    
+    private void notifyListeners(DeviceAttribute attribute, Object value) {
+        for (DeviceStateListener listener : stateListeners) {
+            listener.onStateChange(this, attribute, value);
+        }
+    }
+    
+    // Increases with every state change, never goes back
+    public long getVersion() {
+        return version.get();
+    }
+    
+    // Applies the update only if nobody changed the device since the caller
+    // read expectedVersion; the changes it makes count towards the version
+    // as usual. Must run in the device's mailbox (SmartHomeSystem.submit),
+    // which is what makes the check and the update one step: of several
+    // updates based on the same version exactly one goes through.
+    public boolean updateIfVersion(long expectedVersion, Consumer<? super Device> update) {
+        if (version.get() != expectedVersion) {
+            return false;
+        }
+        update.accept(this);
+        return true;
+    }
+    
+    public static boolean isConsoleOutput() {
+        return consoleOutput;
+    }
+    
+    public static void setConsoleOutput(boolean enabled) {
+        consoleOutput = enabled;
+    }
+    
+    // Whether this device prints console feedback: only if both its home
+    // and the process-wide switch allow it
+    public boolean isReporting() {
+        return reporting && consoleOutput;
+    }
+    
+    public void setReporting(boolean reporting) {
+        this.reporting = reporting;
+    }
+    
+    // Console feedback for state changes, silenced while a batch is applied
+    protected void report(String message) {
+        if (batchDepth == 0 && isReporting()) {
+            System.out.println(message);
+        }
+    }
+    
+    // Between beginBatch and endBatch, console output is suppressed and state
+    // changes are collected instead of delivered. The batch state is not
+    // synchronized: both calls, and the commands in between, must run in
+    // the device's own mailbox turn, like SmartHomeSystem.applyScene does.
+    public void beginBatch() {
+        if (deferredChanges == null) {
+            deferredChanges = new ArrayList<>();
+        }
+        batchDepth++;
+    }
+    
+    // Ends the batch and returns its changes, one per attribute with its
+    // final value, for the caller to deliver; empty while still nested
+    public List<StateChange> endBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return Collections.emptyList();
+        }
+        List<StateChange> changes = new ArrayList<>(deferredChanges.size());
+        for (DeviceAttribute attribute : deferredChanges) {
+            changes.add(new StateChange(this, attribute, getAttribute(attribute)));
+        }
+        deferredChanges.clear();
+        return changes;
+    }
+    
+    // Task changes are state changes (SCHEDULE): once the device is
+    // registered, make them in its mailbox, e.g. via SmartHomeSystem.submit
     public void addScheduledTask(ScheduledTask task) {
         scheduledTasks.add(task);
+        fireStateChange(DeviceAttribute.SCHEDULE, scheduledTasks.size());
     }
     
     public void removeScheduledTask(ScheduledTask task) {
-        scheduledTasks.remove(task);
+        if (scheduledTasks.remove(task)) {
+            fireStateChange(DeviceAttribute.SCHEDULE, scheduledTasks.size());
+        }
     }
     
+    // Read-only live view; iterating it walks a snapshot, so tasks can be
+    // added or removed meanwhile
     public List<ScheduledTask> getScheduledTasks() {
-        return new ArrayList<>(scheduledTasks);
+        return scheduledTasksView;
     }
     
     public abstract void turnOn();
@@ -93,6 +251,27 @@ public abstract class Device {
     
     public abstract void setToDefaultSettings();
     
+    // Estimated electrical power draw in watts for the current state.
+    // Device types override this with their own power model.
+    public double getPowerDraw() {
+        return 0;
+    }
+    
+    // Current value of an observable attribute, or null if this device type
+    // does not have it. Subclasses extend this for their own attributes.
+    public Object getAttribute(DeviceAttribute attribute) {
+        switch (attribute) {
+            case POWER:
+                return isOn();
+            case LOCATION:
+                return location;
+            case SCHEDULE:
+                return scheduledTasks.size();
+            default:
+                return null;
+        }
+    }
+    
     @Override
     public String toString() {
         return name + " (" + location + ")";
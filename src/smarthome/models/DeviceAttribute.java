@@ -0,0 +1,19 @@
+package smarthome.models;
+
+// Observable pieces of device state, reported to DeviceStateListeners
+public enum DeviceAttribute {
+    POWER,
+    LOCATION,
+    BRIGHTNESS,
+    COLOR,
+    MOTION_ACTIVATED,
+    SPEED,
+    TEMPERATURE,
+    MODE,
+    ENERGY_SAVING,
+    AUTO_TEMP_ADJUST,
+    SECURITY_MODE,
+    ALARM,
+    QUIET_HOURS,
+    SCHEDULE // Scheduled tasks added or removed; the value is the task count
+}
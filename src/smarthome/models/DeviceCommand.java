@@ -0,0 +1,83 @@
+package smarthome.models;
+
+import java.util.Arrays;
+
+import smarthome.interfaces.Switchable;
+
+// A single action against a device (ON, OFF, SET_TEMPERATURE, ...). Used by
+// scheduled tasks and automation rules so the action vocabulary lives in
+// one place.
+public class DeviceCommand {
+    private final String action;
+    private final String[] parameters;
+    
+    public DeviceCommand(String action, String... parameters) {
+        this.action = action;
+        this.parameters = parameters != null ? parameters : new String[0];
+    }
+    
+    public String getAction() {
+        return action;
+    }
+    
+    public String[] getParameters() {
+        return parameters;
+    }
+    
+    public void execute(Device device) {
+        switch (action) {
+            case "ON":
+                if (device instanceof Switchable) {
+                    ((Switchable) device).turnOn();
+                }
+                break;
+            case "OFF":
+                if (device instanceof Switchable) {
+                    ((Switchable) device).turnOff();
+                }
+                break;
+            case "SET_TEMPERATURE":
+                if (device instanceof AirConditioner && parameters.length > 0) {
+                    try {
+                        int temp = Integer.parseInt(parameters[0]);
+                        ((AirConditioner) device).setTemperature(temp);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid temperature parameter: " + parameters[0]);
+                    }
+                }
+                break;
+            case "SET_BRIGHTNESS":
+                if (device instanceof Light && parameters.length > 0) {
+                    try {
+                        int brightness = Integer.parseInt(parameters[0]);
+                        ((Light) device).setBrightness(brightness);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid brightness parameter: " + parameters[0]);
+                    }
+                }
+                break;
+            case "SET_SPEED":
+                if (device instanceof Fan && parameters.length > 0) {
+                    try {
+                        int speed = Integer.parseInt(parameters[0]);
+                        ((Fan) device).setSpeed(speed);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid speed parameter: " + parameters[0]);
+                    }
+                }
+                break;
+            case "SET_SECURITY_MODE":
+                if (device instanceof SecuritySystem && parameters.length > 0) {
+                    ((SecuritySystem) device).setSecurityMode(parameters[0]);
+                }
+                break;
+            default:
+                System.out.println("Unknown action: " + action);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return parameters.length == 0 ? action : action + " " + Arrays.toString(parameters);
+    }
+}
@@ -1,7 +1,6 @@
 package smarthome.models;
 
 import smarthome.interfaces.Switchable;
-import java.util.Random;
 
 public class Fan extends Device implements Switchable {
     private boolean isOn;
@@ -9,17 +8,19 @@ public class Fan extends Device implements Switchable {
     private static final int DEFAULT_SPEED = 2;
     private static final int MAX_SPEED = 5;
     private static final int MIN_SPEED = 1;
+    private static final double[] SPEED_WATTS = {15, 25, 35, 50, 70}; // Speed 1 to 5
     
     public Fan(String name, String location, String createdBy) {
-        super(name, location, createdBy);
+        super("FAN", null, name, location, createdBy);
         this.isOn = false;
         this.speed = DEFAULT_SPEED;
     }
     
-    @Override
-    protected String generateDeviceId() {
-        Random r = new Random();
-        return "FAN-" + (10000 + r.nextInt(90000));
+    // Keeps the given id, e.g. when restoring an exported catalog
+    public Fan(String id, String name, String location, String createdBy) {
+        super("FAN", id, name, location, createdBy);
+        this.isOn = false;
+        this.speed = DEFAULT_SPEED;
     }
     
     @Override
@@ -27,7 +28,8 @@ public class Fan extends Device implements Switchable {
         if (!isOn) {
             isOn = true;
             updateLastStateChange();
-            System.out.println(getName() + " turned ON");
+            report(getName() + " turned ON");
+            fireStateChange(DeviceAttribute.POWER, true);
         }
     }
     
@@ -36,7 +38,8 @@ public class Fan extends Device implements Switchable {
         if (isOn) {
             isOn = false;
             updateLastStateChange();
-            System.out.println(getName() + " turned OFF");
+            report(getName() + " turned OFF");
+            fireStateChange(DeviceAttribute.POWER, false);
         }
     }
     
@@ -46,6 +49,7 @@ public class Fan extends Device implements Switchable {
     }
     
     public void setSpeed(int speed) {
+        int previous = this.speed;
         // Validate speed is within range
         if (speed < MIN_SPEED) {
             this.speed = MIN_SPEED;
@@ -54,17 +58,37 @@ public class Fan extends Device implements Switchable {
         } else {
             this.speed = speed;
         }
-        System.out.println(getName() + " speed set to " + this.speed);
+        report(getName() + " speed set to " + this.speed);
+        if (this.speed != previous) {
+            fireStateChange(DeviceAttribute.SPEED, this.speed);
+        }
     }
     
     public int getSpeed() {
         return speed;
     }
     
+    @Override
+    public double getPowerDraw() {
+        return isOn ? SPEED_WATTS[speed - MIN_SPEED] : 0;
+    }
+    
+    @Override
+    public Object getAttribute(DeviceAttribute attribute) {
+        if (attribute == DeviceAttribute.SPEED) {
+            return speed;
+        }
+        return super.getAttribute(attribute);
+    }
+    
     @Override
     public void setToDefaultSettings() {
+        int previous = this.speed;
         this.speed = DEFAULT_SPEED;
-        System.out.println(getName() + " set to default speed: " + DEFAULT_SPEED);
+        report(getName() + " set to default speed: " + DEFAULT_SPEED);
+        if (previous != DEFAULT_SPEED) {
+            fireStateChange(DeviceAttribute.SPEED, DEFAULT_SPEED);
+        }
     }
     
     @Override
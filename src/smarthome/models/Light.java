@@ -2,17 +2,19 @@ package smarthome.models;
 
 import smarthome.interfaces.Switchable;
 import smarthome.interfaces.Dimmable;
-import java.util.Random;
 
 public class Light extends Device implements Switchable, Dimmable {
     private boolean isOn;
     private int brightness;
     private boolean motionActivated;
+    private boolean activatedByMotion; // Switched on by motion rather than by a user
     private int motionBrightness;
     private String color; // Added color property
     private static final int DEFAULT_BRIGHTNESS = 50;
     private static final int MAX_BRIGHTNESS = 100;
     private static final int MIN_BRIGHTNESS = 0;
+    private static final double RATED_WATTS = 10.0;   // LED bulb at full brightness
+    private static final double STANDBY_WATTS = 0.3;  // Smart bulb radio while off
     
     // Available colors
     public static final String COLOR_WHITE = "White";
@@ -21,7 +23,7 @@ public class Light extends Device implements Switchable, Dimmable {
     public static final String COLOR_RED = "Red";
     
     public Light(String name, String location, String createdBy) {
-        super(name, location, createdBy);
+        super("LIGHT", null, name, location, createdBy);
         this.isOn = false;
         this.brightness = DEFAULT_BRIGHTNESS;
         this.motionActivated = true;
@@ -29,10 +31,14 @@ public class Light extends Device implements Switchable, Dimmable {
         this.color = COLOR_WHITE; // Default color
     }
     
-    @Override
-    protected String generateDeviceId() {
-        Random r = new Random();
-        return "LIGHT-" + (10000 + r.nextInt(90000));
+    // Keeps the given id, e.g. when restoring an exported catalog
+    public Light(String id, String name, String location, String createdBy) {
+        super("LIGHT", id, name, location, createdBy);
+        this.isOn = false;
+        this.brightness = DEFAULT_BRIGHTNESS;
+        this.motionActivated = true;
+        this.motionBrightness = 70;
+        this.color = COLOR_WHITE;
     }
     
     @Override
@@ -40,7 +46,8 @@ public class Light extends Device implements Switchable, Dimmable {
         if (!isOn) {
             isOn = true;
             updateLastStateChange();
-            System.out.println(getName() + " turned ON");
+            report(getName() + " turned ON");
+            fireStateChange(DeviceAttribute.POWER, true);
         }
     }
     
@@ -48,8 +55,10 @@ public class Light extends Device implements Switchable, Dimmable {
     public void turnOff() {
         if (isOn) {
             isOn = false;
+            activatedByMotion = false;
             updateLastStateChange();
-            System.out.println(getName() + " turned OFF");
+            report(getName() + " turned OFF");
+            fireStateChange(DeviceAttribute.POWER, false);
         }
     }
     
@@ -60,6 +69,7 @@ public class Light extends Device implements Switchable, Dimmable {
     
     @Override
     public void setBrightness(int level) {
+        int previous = this.brightness;
         if (level < MIN_BRIGHTNESS) {
             this.brightness = MIN_BRIGHTNESS;
         } else if (level > MAX_BRIGHTNESS) {
@@ -67,7 +77,10 @@ public class Light extends Device implements Switchable, Dimmable {
         } else {
             this.brightness = level;
         }
-        System.out.println(getName() + " brightness set to " + this.brightness + "%");
+        report(getName() + " brightness set to " + this.brightness + "%");
+        if (this.brightness != previous) {
+            fireStateChange(DeviceAttribute.BRIGHTNESS, this.brightness);
+        }
     }
     
     @Override
@@ -80,8 +93,12 @@ public class Light extends Device implements Switchable, Dimmable {
     }
     
     public void setMotionActivated(boolean motionActivated) {
+        boolean changed = this.motionActivated != motionActivated;
         this.motionActivated = motionActivated;
-        System.out.println(getName() + " motion activation " + (motionActivated ? "enabled" : "disabled"));
+        report(getName() + " motion activation " + (motionActivated ? "enabled" : "disabled"));
+        if (changed) {
+            fireStateChange(DeviceAttribute.MOTION_ACTIVATED, motionActivated);
+        }
     }
     
     public int getMotionBrightness() {
@@ -96,7 +113,7 @@ public class Light extends Device implements Switchable, Dimmable {
         } else {
             this.motionBrightness = motionBrightness;
         }
-        System.out.println(getName() + " motion brightness set to " + this.motionBrightness + "%");
+        report(getName() + " motion brightness set to " + this.motionBrightness + "%");
     }
     
     public String getColor() {
@@ -104,24 +121,69 @@ public class Light extends Device implements Switchable, Dimmable {
     }
     
     public void setColor(String color) {
+        boolean changed = !color.equals(this.color);
         this.color = color;
-        System.out.println(getName() + " color set to " + this.color);
+        report(getName() + " color set to " + this.color);
+        if (changed) {
+            fireStateChange(DeviceAttribute.COLOR, color);
+        }
     }
     
     public void activateByMotion() {
         if (motionActivated) {
+            boolean wasOn = isOn;
             turnOn();
             int prevBrightness = brightness;
             setBrightness(motionBrightness);
-            System.out.println(getName() + " activated by motion detection");
+            if (!wasOn) {
+                activatedByMotion = true;
+            }
+            report(getName() + " activated by motion detection");
+        }
+    }
+    
+    // Whether the light is on only because motion switched it on, so it
+    // may be switched off again once the room is idle
+    public boolean isActivatedByMotion() {
+        return activatedByMotion;
+    }
+    
+    @Override
+    public double getPowerDraw() {
+        if (!isOn) {
+            return STANDBY_WATTS;
+        }
+        // LED draw scales roughly linearly with brightness
+        return STANDBY_WATTS + RATED_WATTS * brightness / MAX_BRIGHTNESS;
+    }
+    
+    @Override
+    public Object getAttribute(DeviceAttribute attribute) {
+        switch (attribute) {
+            case BRIGHTNESS:
+                return brightness;
+            case COLOR:
+                return color;
+            case MOTION_ACTIVATED:
+                return motionActivated;
+            default:
+                return super.getAttribute(attribute);
         }
     }
     
     @Override
     public void setToDefaultSettings() {
+        int previousBrightness = this.brightness;
+        String previousColor = this.color;
         this.brightness = DEFAULT_BRIGHTNESS;
         this.color = COLOR_WHITE;
-        System.out.println(getName() + " set to default brightness: " + DEFAULT_BRIGHTNESS + "%, color: " + COLOR_WHITE);
+        report(getName() + " set to default brightness: " + DEFAULT_BRIGHTNESS + "%, color: " + COLOR_WHITE);
+        if (previousBrightness != DEFAULT_BRIGHTNESS) {
+            fireStateChange(DeviceAttribute.BRIGHTNESS, DEFAULT_BRIGHTNESS);
+        }
+        if (!COLOR_WHITE.equals(previousColor)) {
+            fireStateChange(DeviceAttribute.COLOR, COLOR_WHITE);
+        }
     }
     
     @Override
@@ -0,0 +1,64 @@
+package smarthome.models;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Named set of device commands applied together, e.g. "Movie night".
+// Commands are resolved to their devices when added, so applying a scene
+// does no lookups.
+public class Scene {
+    private String name;
+    private final List<Device> targets;
+    private final List<DeviceCommand> commands;
+    private Device[] compiledDevices;
+    
+    public Scene(String name) {
+        this.name = name;
+        this.targets = new ArrayList<>();
+        this.commands = new ArrayList<>();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public synchronized Scene addCommand(Device device, DeviceCommand command) {
+        targets.add(device);
+        commands.add(command);
+        compiledDevices = null;
+        return this;
+    }
+    
+    public synchronized int getCommandCount() {
+        return commands.size();
+    }
+    
+    // Distinct devices touched by this scene, in first-use order
+    public synchronized Device[] getDevices() {
+        if (compiledDevices == null) {
+            Set<Device> distinct = new LinkedHashSet<>(targets);
+            compiledDevices = distinct.toArray(new Device[0]);
+        }
+        return compiledDevices;
+    }
+    
+    // Runs every command in order. Callers bracket this with
+    // Device.beginBatch/endBatch on getDevices(), in the devices' mailbox
+    // turn, and deliver the changes endBatch returns together.
+    public synchronized void executeCommands() {
+        for (int i = 0; i < commands.size(); i++) {
+            commands.get(i).execute(targets.get(i));
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return name + " - " + getCommandCount() + " command(s) on " + getDevices().length + " device(s)";
+    }
+}
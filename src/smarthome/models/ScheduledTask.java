@@ -4,8 +4,6 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
-import smarthome.interfaces.Switchable;
-
 public class ScheduledTask {
     private String id;
     private String name;
@@ -15,6 +13,7 @@ public class ScheduledTask {
     private LocalTime time; // Time to execute the task
     private boolean[] daysOfWeek; // Sunday to Saturday
     private boolean isEnabled;
+    private DeviceCommand command;
     
     public ScheduledTask(String name, Device device, String action, String[] parameters, 
                          LocalTime time, boolean[] daysOfWeek) {
@@ -26,6 +25,14 @@ public class ScheduledTask {
         this.time = time;
         this.daysOfWeek = daysOfWeek;
         this.isEnabled = true;
+        this.command = new DeviceCommand(action, parameters);
+    }
+    
+    // Keeps the given id, e.g. when restoring an exported catalog
+    public ScheduledTask(String id, String name, Device device, String action, String[] parameters,
+                         LocalTime time, boolean[] daysOfWeek) {
+        this(name, device, action, parameters, time, daysOfWeek);
+        this.id = id;
     }
     
     public String getId() {
@@ -79,57 +86,11 @@ public class ScheduledTask {
     public void execute() {
         if (!isEnabled) return;
         
-        System.out.println("Executing scheduled task: " + name);
-        
-        switch (action) {
-            case "ON":
-                if (device instanceof Switchable) {
-                    ((Switchable) device).turnOn();
-                }
-                break;
-            case "OFF":
-                if (device instanceof Switchable) {
-                    ((Switchable) device).turnOff();
-                }
-                break;
-            case "SET_TEMPERATURE":
-                if (device instanceof AirConditioner && parameters.length > 0) {
-                    try {
-                        int temp = Integer.parseInt(parameters[0]);
-                        ((AirConditioner) device).setTemperature(temp);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Invalid temperature parameter: " + parameters[0]);
-                    }
-                }
-                break;
-            case "SET_BRIGHTNESS":
-                if (device instanceof Light && parameters.length > 0) {
-                    try {
-                        int brightness = Integer.parseInt(parameters[0]);
-                        ((Light) device).setBrightness(brightness);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Invalid brightness parameter: " + parameters[0]);
-                    }
-                }
-                break;
-            case "SET_SPEED":
-                if (device instanceof Fan && parameters.length > 0) {
-                    try {
-                        int speed = Integer.parseInt(parameters[0]);
-                        ((Fan) device).setSpeed(speed);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Invalid speed parameter: " + parameters[0]);
-                    }
-                }
-                break;
-            case "SET_SECURITY_MODE":
-                if (device instanceof SecuritySystem && parameters.length > 0) {
-                    ((SecuritySystem) device).setSecurityMode(parameters[0]);
-                }
-                break;
-            default:
-                System.out.println("Unknown action: " + action);
+        if (device.isReporting()) {
+            System.out.println("Executing scheduled task: " + name);
         }
+        
+        command.execute(device);
     }
     
     @Override
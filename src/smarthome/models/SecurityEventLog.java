@@ -0,0 +1,285 @@
+package smarthome.models;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Fixed-capacity ring buffer of security events. Each entry is stored as
+// three primitives (epoch millis, event code, argument id) and only turned
+// into a String when somebody asks for it, so memory stays flat no matter
+// how long the panel runs.
+public class SecurityEventLog {
+
+    public enum EventType {
+        SYSTEM_ARMED("System armed"),
+        SYSTEM_DISARMED("System disarmed"),
+        MODE_CHANGED("Security mode changed to "),
+        ALARM_ACTIVATED("ALARM ACTIVATED!"),
+        ALARM_DEACTIVATED("Alarm deactivated"),
+        MOTION_DETECTED("Motion detected in ");
+
+        private final String message;
+
+        EventType(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    public interface EventVisitor {
+        // argument is null for events without one
+        void visit(long epochMillis, EventType type, String argument);
+    }
+
+    public interface EventListener {
+        // sequence counts every event ever recorded, from 0
+        void recorded(long sequence, long epochMillis, EventType type, String argument);
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final int NO_ARGUMENT = -1;
+
+    private final long[] timestamps;
+    private final byte[] eventCodes;
+    private final int[] argumentIds;
+    private int head; // Index of the oldest entry
+    private int size;
+    private long totalRecorded;
+
+    // Locations and modes are interned so each entry only keeps an int
+    private final List<String> symbols;
+    private final Map<String, Integer> symbolIds;
+
+    private BufferedWriter spillWriter;
+    private Path spillFile;
+    private volatile EventListener listener;
+
+    public SecurityEventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SecurityEventLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.timestamps = new long[capacity];
+        this.eventCodes = new byte[capacity];
+        this.argumentIds = new int[capacity];
+        this.head = 0;
+        this.size = 0;
+        this.totalRecorded = 0;
+        this.symbols = new ArrayList<>();
+        this.symbolIds = new HashMap<>();
+    }
+
+    public void record(EventType type) {
+        record(type, null, System.currentTimeMillis());
+    }
+
+    public void record(EventType type, String argument) {
+        record(type, argument, System.currentTimeMillis());
+    }
+
+    public void record(EventType type, String argument, long epochMillis) {
+        long sequence;
+        synchronized (this) {
+            sequence = store(type, argument, epochMillis);
+        }
+        EventListener current = listener;
+        if (current != null) {
+            current.recorded(sequence, epochMillis, type, argument);
+        }
+    }
+
+    // Returns the entry's sequence number
+    private long store(EventType type, String argument, long epochMillis) {
+        int capacity = timestamps.length;
+        int slot;
+        if (size == capacity) {
+            // Buffer is full: the oldest entry is overwritten, spill it first
+            slot = head;
+            spill(slot);
+            head = (head + 1) % capacity;
+        } else {
+            slot = (head + size) % capacity;
+            size++;
+        }
+
+        timestamps[slot] = epochMillis;
+        eventCodes[slot] = (byte) type.ordinal();
+        argumentIds[slot] = argument != null ? intern(argument) : NO_ARGUMENT;
+        return totalRecorded++;
+    }
+
+    // Told about every event once it is recorded, e.g. to index it; null
+    // removes it. Called after the log is unlocked, on the recording
+    // thread, so events from different threads may arrive out of order.
+    public void setListener(EventListener listener) {
+        this.listener = listener;
+    }
+
+    private int intern(String symbol) {
+        Integer id = symbolIds.get(symbol);
+        if (id == null) {
+            id = symbols.size();
+            symbols.add(symbol);
+            symbolIds.put(symbol, id);
+        }
+        return id;
+    }
+
+    private int slotOf(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + size);
+        }
+        return (head + index) % timestamps.length;
+    }
+
+    // Index 0 is the oldest entry still held in memory
+    public synchronized long getTimestamp(int index) {
+        return timestamps[slotOf(index)];
+    }
+
+    public synchronized EventType getEventType(int index) {
+        return EVENT_TYPES[eventCodes[slotOf(index)]];
+    }
+
+    public synchronized String getArgument(int index) {
+        int argumentId = argumentIds[slotOf(index)];
+        return argumentId == NO_ARGUMENT ? null : symbols.get(argumentId);
+    }
+
+    public synchronized String render(int index) {
+        return renderSlot(slotOf(index));
+    }
+
+    // Renders entries [from, from + count) that are still held, oldest first
+    public synchronized List<String> render(int from, int count) {
+        int end = Math.min(size, from + count);
+        List<String> lines = new ArrayList<>(Math.max(0, end - from));
+        for (int i = Math.max(0, from); i < end; i++) {
+            lines.add(renderSlot((head + i) % timestamps.length));
+        }
+        return lines;
+    }
+
+    // Sequence number of the oldest entry still held in memory
+    public synchronized long getFirstRetained() {
+        return totalRecorded - size;
+    }
+
+    // Entry by sequence number, counting every event ever recorded from 0,
+    // or null once it has been evicted
+    public synchronized String renderRecorded(long sequence) {
+        long index = sequence - (totalRecorded - size);
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        return renderSlot((head + (int) index) % timestamps.length);
+    }
+
+    private String renderSlot(int slot) {
+        int argumentId = argumentIds[slot];
+        return format(timestamps[slot], EVENT_TYPES[eventCodes[slot]],
+                      argumentId == NO_ARGUMENT ? null : symbols.get(argumentId));
+    }
+
+    public static String format(long epochMillis, EventType type, String argument) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+        return time + ": " + (argument == null ? type.getMessage() : type.getMessage() + argument);
+    }
+
+    // Visits entries oldest first straight from the buffer, without copying
+    // or rendering them
+    public synchronized void forEach(EventVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % timestamps.length;
+            int argumentId = argumentIds[slot];
+            visitor.visit(timestamps[slot], EVENT_TYPES[eventCodes[slot]],
+                          argumentId == NO_ARGUMENT ? null : symbols.get(argumentId));
+        }
+    }
+
+    public synchronized List<String> toStrings() {
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(renderSlot((head + i) % timestamps.length));
+        }
+        return lines;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    // Total number of events ever recorded, including ones that were evicted
+    public synchronized long getTotalRecorded() {
+        return totalRecorded;
+    }
+
+    // Evicted entries are appended to the given file instead of being dropped
+    public synchronized void enableSpill(Path file) throws IOException {
+        disableSpill();
+        this.spillWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.spillFile = file;
+    }
+
+    public synchronized void disableSpill() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                System.err.println("Error closing security log spill file: " + e.getMessage());
+            }
+            spillWriter = null;
+            spillFile = null;
+        }
+    }
+
+    public synchronized Path getSpillFile() {
+        return spillFile;
+    }
+
+    public synchronized void flush() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.flush();
+            } catch (IOException e) {
+                System.err.println("Error flushing security log spill file: " + e.getMessage());
+            }
+        }
+    }
+
+    private void spill(int slot) {
+        if (spillWriter == null) {
+            return;
+        }
+        try {
+            spillWriter.write(renderSlot(slot));
+            spillWriter.newLine();
+        } catch (IOException e) {
+            // Never let a disk problem break the security panel, just stop spilling
+            System.err.println("Error writing security log spill file, spilling disabled: " + e.getMessage());
+            disableSpill();
+        }
+    }
+}
@@ -1,21 +1,37 @@
 package smarthome.models;
 
 import smarthome.interfaces.Switchable;
-import java.util.ArrayList;
+import smarthome.models.SecurityEventLog.EventType;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 public class SecuritySystem extends Device implements Switchable {
     private boolean isOn;
     private boolean alarmActive;
-    private List<String> securityLogs;
-    private String securityMode; // AWAY, HOME, DISARMED
+    private SecurityEventLog securityLogs;
+    private String securityMode; // AWAY, HOME, DISARMED or a custom mode
+    private SecurityZoneMap zoneMap;
     private static final String DEFAULT_MODE = "DISARMED";
+    private static final double PANEL_WATTS = 5.0;
+    private static final double SIREN_WATTS = 25.0;
     
     public SecuritySystem(String id, String name, String location) {
         super(id, name, location);
         this.isOn = false;
         this.alarmActive = false;
-        this.securityLogs = new ArrayList<>();
+        this.securityLogs = new SecurityEventLog();
+        this.zoneMap = SecurityZoneMap.createDefault();
+        this.securityMode = DEFAULT_MODE;
+    }
+    
+    // Keeps the given id, e.g. when restoring an exported catalog
+    public SecuritySystem(String id, String name, String location, String createdBy) {
+        super(id, name, location, createdBy);
+        this.isOn = false;
+        this.alarmActive = false;
+        this.securityLogs = new SecurityEventLog();
+        this.zoneMap = SecurityZoneMap.createDefault();
         this.securityMode = DEFAULT_MODE;
     }
     
@@ -24,8 +40,9 @@ public class SecuritySystem extends Device implements Switchable {
         if (!isOn) {
             isOn = true;
             updateLastStateChange();
-            System.out.println(getName() + " turned ON");
-            addSecurityLog("System armed");
+            report(getName() + " turned ON");
+            fireStateChange(DeviceAttribute.POWER, true);
+            addSecurityLog(EventType.SYSTEM_ARMED);
         }
     }
     
@@ -34,8 +51,9 @@ public class SecuritySystem extends Device implements Switchable {
         if (isOn) {
             isOn = false;
             updateLastStateChange();
-            System.out.println(getName() + " turned OFF");
-            addSecurityLog("System disarmed");
+            report(getName() + " turned OFF");
+            fireStateChange(DeviceAttribute.POWER, false);
+            addSecurityLog(EventType.SYSTEM_DISARMED);
             deactivateAlarm(); // Ensure alarm is off when system is off
         }
     }
@@ -46,33 +64,53 @@ public class SecuritySystem extends Device implements Switchable {
     }
     
     public void setSecurityMode(String mode) {
-        if (mode.equals("AWAY") || mode.equals("HOME") || mode.equals("DISARMED")) {
+        String previous = this.securityMode;
+        if (zoneMap.hasMode(mode)) {
             this.securityMode = mode;
-            addSecurityLog("Security mode changed to " + mode);
-            System.out.println(getName() + " security mode set to " + mode);
+            addSecurityLog(EventType.MODE_CHANGED, mode);
+            report(getName() + " security mode set to " + mode);
         } else {
-            System.out.println("Invalid security mode. Using default: " + DEFAULT_MODE);
+            report("Invalid security mode. Using default: " + DEFAULT_MODE);
             this.securityMode = DEFAULT_MODE;
         }
+        if (!this.securityMode.equals(previous)) {
+            fireStateChange(DeviceAttribute.SECURITY_MODE, this.securityMode);
+        }
     }
     
     public String getSecurityMode() {
         return securityMode;
     }
     
+    public SecurityZoneMap getZoneMap() {
+        return zoneMap;
+    }
+    
+    public void setZoneMap(SecurityZoneMap zoneMap) {
+        this.zoneMap = zoneMap;
+        
+        // Fall back to the default if the new map lacks the current mode,
+        // logged and reported like any other mode change
+        if (!zoneMap.hasMode(securityMode)) {
+            setSecurityMode(DEFAULT_MODE);
+        }
+    }
+    
     public void activateAlarm() {
         if (isOn && !alarmActive) {
             alarmActive = true;
-            addSecurityLog("ALARM ACTIVATED!");
-            System.out.println("ALARM ACTIVATED on " + getName() + "!");
+            addSecurityLog(EventType.ALARM_ACTIVATED);
+            report("ALARM ACTIVATED on " + getName() + "!");
+            fireStateChange(DeviceAttribute.ALARM, true);
         }
     }
     
     public void deactivateAlarm() {
         if (alarmActive) {
             alarmActive = false;
-            addSecurityLog("Alarm deactivated");
-            System.out.println("Alarm deactivated on " + getName());
+            addSecurityLog(EventType.ALARM_DEACTIVATED);
+            report("Alarm deactivated on " + getName());
+            fireStateChange(DeviceAttribute.ALARM, false);
         }
     }
     
@@ -82,35 +120,76 @@ public class SecuritySystem extends Device implements Switchable {
     
     public void detectMotion(String location) {
         if (isOn) {
-            addSecurityLog("Motion detected in " + location);
+            addSecurityLog(EventType.MOTION_DETECTED, location);
             
-            if (securityMode.equals("AWAY")) {
-                // In AWAY mode, any motion triggers the alarm
+            // The active mode's bitmap decides whether this zone is armed
+            // (AWAY arms every zone, HOME the perimeter, DISARMED none).
+            // Resolved each time, so a redefined mode applies at once and a
+            // removed one arms nothing.
+            SecurityZoneMap.ModeProfile mode = zoneMap.getMode(securityMode);
+            if (mode != null && mode.isZoneArmed(zoneMap.getZoneId(location))) {
                 activateAlarm();
-            } else if (securityMode.equals("HOME")) {
-                // In HOME mode, only motion in certain areas triggers the alarm
-                if (location.equals("Entrance") || location.equals("Window")) {
-                    activateAlarm();
-                }
             }
-            // In DISARMED mode, just log the motion but don't trigger alarm
         }
     }
     
-    private void addSecurityLog(String event) {
-        String logEntry = java.time.LocalDateTime.now() + ": " + event;
-        securityLogs.add(logEntry);
+    private void addSecurityLog(EventType event) {
+        securityLogs.record(event);
     }
     
+    private void addSecurityLog(EventType event, String argument) {
+        securityLogs.record(event, argument);
+    }
+    
+    // Renders every entry; use forEachSecurityEvent to avoid the copy
     public List<String> getSecurityLogs() {
-        return new ArrayList<>(securityLogs);
+        return securityLogs.toStrings();
+    }
+    
+    public void forEachSecurityEvent(SecurityEventLog.EventVisitor visitor) {
+        securityLogs.forEach(visitor);
+    }
+    
+    public SecurityEventLog getSecurityEventLog() {
+        return securityLogs;
+    }
+    
+    // Keep evicted log entries on disk instead of dropping them
+    public void enableLogSpill(Path file) throws IOException {
+        securityLogs.enableSpill(file);
+    }
+    
+    @Override
+    public double getPowerDraw() {
+        // The panel is always powered; the siren only while the alarm sounds
+        return PANEL_WATTS + (alarmActive ? SIREN_WATTS : 0);
+    }
+    
+    @Override
+    public Object getAttribute(DeviceAttribute attribute) {
+        switch (attribute) {
+            case SECURITY_MODE:
+                return securityMode;
+            case ALARM:
+                return alarmActive;
+            default:
+                return super.getAttribute(attribute);
+        }
     }
     
     @Override
     public void setToDefaultSettings() {
+        String previousMode = this.securityMode;
+        boolean previousAlarm = this.alarmActive;
         this.securityMode = DEFAULT_MODE;
         this.alarmActive = false;
-        System.out.println(getName() + " set to default mode: " + DEFAULT_MODE);
+        report(getName() + " set to default mode: " + DEFAULT_MODE);
+        if (!DEFAULT_MODE.equals(previousMode)) {
+            fireStateChange(DeviceAttribute.SECURITY_MODE, DEFAULT_MODE);
+        }
+        if (previousAlarm) {
+            fireStateChange(DeviceAttribute.ALARM, false);
+        }
     }
     
     @Override
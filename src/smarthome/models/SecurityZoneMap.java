@@ -0,0 +1,182 @@
+package smarthome.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps locations to integer zone ids and keeps, for every security mode, a
+// precomputed bitmap of the zones that trigger the alarm. Deciding whether
+// motion should raise the alarm is then a single bit test. Only locations
+// named when configuring modes become zones; motion elsewhere is looked up
+// without being registered, so the map stays as small as the setup.
+public class SecurityZoneMap {
+
+    public static final int UNKNOWN_ZONE = -1;
+
+    // Armed-zone bitmap of one security mode. The bitmap array is replaced
+    // rather than modified so readers never need a lock.
+    public static class ModeProfile {
+        private final String name;
+        private final boolean armAllZones;
+        private volatile long[] armedZones;
+
+        private ModeProfile(String name, boolean armAllZones, long[] armedZones) {
+            this.name = name;
+            this.armAllZones = armAllZones;
+            this.armedZones = armedZones;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isArmAllZones() {
+            return armAllZones;
+        }
+
+        // An unknown zone is armed only by modes that arm every zone
+        public boolean isZoneArmed(int zoneId) {
+            if (zoneId < 0) {
+                return armAllZones;
+            }
+            long[] bits = armedZones;
+            int word = zoneId >>> 6;
+            return word < bits.length && (bits[word] & (1L << zoneId)) != 0;
+        }
+    }
+
+    private final Map<String, Integer> zoneIds;
+    private final List<String> zoneNames;
+    // Replaced (under the map's lock) whenever a mode is defined or removed,
+    // so modes can be looked up on every motion event without a lock
+    private volatile Map<String, ModeProfile> modes;
+
+    public SecurityZoneMap() {
+        this.zoneIds = new ConcurrentHashMap<>();
+        this.zoneNames = new ArrayList<>();
+        this.modes = Collections.emptyMap();
+    }
+
+    // Default setup matching the original behaviour: AWAY arms every zone,
+    // HOME only the perimeter (Entrance and Window), DISARMED nothing
+    public static SecurityZoneMap createDefault() {
+        SecurityZoneMap zoneMap = new SecurityZoneMap();
+        zoneMap.defineMode("DISARMED", false);
+        zoneMap.defineMode("HOME", false, "Entrance", "Window");
+        zoneMap.defineMode("AWAY", true);
+        return zoneMap;
+    }
+
+    public synchronized int registerZone(String location) {
+        Integer existing = zoneIds.get(location);
+        if (existing != null) {
+            return existing;
+        }
+
+        int zoneId = zoneNames.size();
+        zoneNames.add(location);
+        zoneIds.put(location, zoneId);
+
+        // Modes that arm everything also cover zones added later
+        for (ModeProfile profile : modes.values()) {
+            if (profile.armAllZones) {
+                profile.armedZones = withBit(profile.armedZones, zoneId, true);
+            }
+        }
+        return zoneId;
+    }
+
+    public int getZoneId(String location) {
+        Integer zoneId = zoneIds.get(location);
+        return zoneId != null ? zoneId : UNKNOWN_ZONE;
+    }
+
+    public synchronized String getZoneName(int zoneId) {
+        return zoneNames.get(zoneId);
+    }
+
+    public synchronized int getZoneCount() {
+        return zoneNames.size();
+    }
+
+    public synchronized ModeProfile defineMode(String mode, boolean armAllZones, String... armedLocations) {
+        int[] armedIds = new int[armedLocations.length];
+        for (int i = 0; i < armedLocations.length; i++) {
+            armedIds[i] = registerZone(armedLocations[i]);
+        }
+        // Sized once for every zone, so the bits are set in place
+        long[] bits = new long[(zoneNames.size() + 63) >>> 6];
+        if (armAllZones) {
+            for (int zoneId = 0; zoneId < zoneNames.size(); zoneId++) {
+                bits[zoneId >>> 6] |= 1L << zoneId;
+            }
+        }
+        for (int zoneId : armedIds) {
+            bits[zoneId >>> 6] |= 1L << zoneId;
+        }
+
+        ModeProfile profile = new ModeProfile(mode, armAllZones, bits);
+        Map<String, ModeProfile> next = new LinkedHashMap<>(modes);
+        next.put(mode, profile);
+        modes = Collections.unmodifiableMap(next);
+        return profile;
+    }
+
+    public synchronized void removeMode(String mode) {
+        if (modes.containsKey(mode)) {
+            Map<String, ModeProfile> next = new LinkedHashMap<>(modes);
+            next.remove(mode);
+            modes = Collections.unmodifiableMap(next);
+        }
+    }
+
+    public synchronized void armZone(String mode, String location) {
+        setZoneArmed(mode, location, true);
+    }
+
+    public synchronized void disarmZone(String mode, String location) {
+        setZoneArmed(mode, location, false);
+    }
+
+    private void setZoneArmed(String mode, String location, boolean armed) {
+        ModeProfile profile = modes.get(mode);
+        if (profile == null) {
+            throw new IllegalArgumentException("Unknown security mode: " + mode);
+        }
+        profile.armedZones = withBit(profile.armedZones, registerZone(location), armed);
+    }
+
+    public boolean hasMode(String mode) {
+        return modes.containsKey(mode);
+    }
+
+    // The mode's current definition; look it up again rather than keeping
+    // it, since defining the mode anew replaces it
+    public ModeProfile getMode(String mode) {
+        return modes.get(mode);
+    }
+
+    public List<String> getModeNames() {
+        return Collections.unmodifiableList(new ArrayList<>(modes.keySet()));
+    }
+
+    public boolean isArmed(String mode, String location) {
+        ModeProfile profile = getMode(mode);
+        return profile != null && profile.isZoneArmed(getZoneId(location));
+    }
+
+    private static long[] withBit(long[] bits, int zoneId, boolean value) {
+        int word = zoneId >>> 6;
+        long[] copy = Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+        if (value) {
+            copy[word] |= 1L << zoneId;
+        } else {
+            copy[word] &= ~(1L << zoneId);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,31 @@
+package smarthome.models;
+
+// One attribute change of a device, as delivered in a batch
+public class StateChange {
+    private final Device device;
+    private final DeviceAttribute attribute;
+    private final Object value;
+    
+    public StateChange(Device device, DeviceAttribute attribute, Object value) {
+        this.device = device;
+        this.attribute = attribute;
+        this.value = value;
+    }
+    
+    public Device getDevice() {
+        return device;
+    }
+    
+    public DeviceAttribute getAttribute() {
+        return attribute;
+    }
+    
+    public Object getValue() {
+        return value;
+    }
+    
+    @Override
+    public String toString() {
+        return device.getName() + " " + attribute + "=" + value;
+    }
+}
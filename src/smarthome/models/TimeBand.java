@@ -0,0 +1,45 @@
+package smarthome.models;
+
+import java.time.LocalTime;
+
+// Parts of the day used by AirConditioner auto temperature adjustment,
+// with the target temperature for cooling and heating in each band
+public enum TimeBand {
+    MORNING(LocalTime.of(5, 0), 23, 22),  // Comfortable waking temperature
+    DAY(LocalTime.of(8, 0), 25, 20),      // Energy efficient while people may be out
+    EVENING(LocalTime.of(17, 0), 24, 22), // Comfortable evening temperature
+    NIGHT(LocalTime.of(22, 0), 26, 19);   // Sleep temperature
+
+    private final LocalTime start;
+    private final int coolTemperature;
+    private final int heatTemperature;
+
+    TimeBand(LocalTime start, int coolTemperature, int heatTemperature) {
+        this.start = start;
+        this.coolTemperature = coolTemperature;
+        this.heatTemperature = heatTemperature;
+    }
+
+    public LocalTime getStart() {
+        return start;
+    }
+
+    public int getCoolTemperature() {
+        return coolTemperature;
+    }
+
+    public int getHeatTemperature() {
+        return heatTemperature;
+    }
+
+    public static TimeBand at(LocalTime time) {
+        if (!time.isBefore(NIGHT.start) || time.isBefore(MORNING.start)) {
+            return NIGHT;
+        } else if (!time.isBefore(EVENING.start)) {
+            return EVENING;
+        } else if (!time.isBefore(DAY.start)) {
+            return DAY;
+        }
+        return MORNING;
+    }
+}
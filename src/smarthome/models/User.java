@@ -1,7 +1,8 @@
 package smarthome.models;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class User {
     private String username;
@@ -9,13 +10,15 @@ public class User {
     private String name;
     private String role;
     private List<String> permissions;
+    private List<String> permissionsView;
     
     public User(String username, String password) {
         this.username = username;
         this.password = password;
         this.name = username;
         this.role = "USER";
-        this.permissions = new ArrayList<>();
+        this.permissions = new CopyOnWriteArrayList<>();
+        this.permissionsView = Collections.unmodifiableList(permissions);
         setupDefaultPermissions();
     }
     
@@ -24,7 +27,8 @@ public class User {
         this.password = password;
         this.name = name;
         this.role = "USER";
-        this.permissions = new ArrayList<>();
+        this.permissions = new CopyOnWriteArrayList<>();
+        this.permissionsView = Collections.unmodifiableList(permissions);
         setupDefaultPermissions();
     }
     
@@ -64,8 +68,9 @@ public class User {
         permissions.remove(permission);
     }
     
+    // Read-only live view
     public List<String> getPermissions() {
-        return new ArrayList<>(permissions);
+        return permissionsView;
     }
     
     public boolean authenticate(String password) {
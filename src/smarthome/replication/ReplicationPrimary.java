@@ -0,0 +1,350 @@
+package smarthome.replication;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import smarthome.catalog.CsvWriter;
+import smarthome.catalog.DeviceCatalog;
+import smarthome.interfaces.DeviceStateListener;
+import smarthome.models.AirConditioner;
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+import smarthome.system.SmartHomeSystem;
+
+// Primary side of hot-standby replication. Standby processes connect over
+// TCP; each one is sent a snapshot of every device (the catalog CSV, alarm
+// state included) and then every device state change as it happens, as
+// one CSV record per line:
+//
+//   snapshot,<systemOn>,<catalog csv>    full device set, replaces the standby's
+//   devices,<catalog csv>                devices added or replaced, or whose tasks changed
+//   remove,<deviceId>                    device removed
+//   state,<deviceId>,<key>,<value>       one setting, keys as in the catalog
+//   heartbeat,<systemOn>                 every HEARTBEAT_INTERVAL_MILLIS
+//   resync                               standby fell behind; reconnect for a new snapshot
+//   bye                                  primary is shutting down on purpose
+//
+// The standby is registered for changes before its snapshot is taken, so
+// a change can arrive twice but is never missed; settings are absolute
+// values, so applying one again is harmless. A devices record is queued
+// from within the devices' own mailbox turn (like any command), so every
+// change made after its export is queued behind it; the standby never
+// gets a change for a device it does not have yet. Changes are queued per
+// standby and written by its own thread; device workers never block on
+// the socket.
+public class ReplicationPrimary {
+
+    public static final long HEARTBEAT_INTERVAL_MILLIS = 500;
+
+    // Records waiting for a standby; past that it gets a resync instead
+    private static final int QUEUE_CAPACITY = 65536;
+
+    static final String SNAPSHOT = "snapshot";
+    static final String DEVICES = "devices";
+    static final String REMOVE = "remove";
+    static final String STATE = "state";
+    static final String HEARTBEAT = "heartbeat";
+    static final String RESYNC = "resync";
+    static final String BYE = "bye";
+
+    private class Connection implements Runnable {
+        private final Socket socket;
+        private final BlockingQueue<List<String>> queue;
+        private volatile boolean overflowed;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+            this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        }
+
+        private void send(List<String> record) {
+            if (!overflowed && !queue.offer(record)) {
+                overflowed = true;
+            }
+        }
+
+        @Override
+        public void run() {
+            String standby = String.valueOf(socket.getRemoteSocketAddress());
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                                                         StandardCharsets.UTF_8))) {
+                CsvWriter csv = new CsvWriter(out);
+                csv.writeRecord(Arrays.asList(SNAPSHOT, String.valueOf(system.isSystemOn()),
+                                              catalogOf(system.getAllDevices())));
+                out.flush();
+                System.out.println("Replication: standby " + standby + " synced");
+
+                while (true) {
+                    List<String> record = queue.poll(HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (overflowed) {
+                        System.err.println("Replication: standby " + standby + " fell behind, resyncing");
+                        csv.writeRecord(Collections.singletonList(RESYNC));
+                        break;
+                    }
+                    if (record == null) {
+                        continue;
+                    }
+                    csv.writeRecord(record);
+                    if (record.get(0).equals(BYE)) {
+                        break;
+                    }
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Replication: lost standby " + standby + ": " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                connections.remove(this);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private final SmartHomeSystem system;
+    private final DeviceCatalog catalog;
+    private final ServerSocket serverSocket;
+    private final List<Connection> connections;
+    private final DeviceStateListener listener;
+    private final ScheduledExecutorService heartbeat;
+    private final AtomicInteger senderCount;
+    // Device list as of the last heartbeat; only touched by the heartbeat thread
+    private List<Device> shippedDevices;
+    private volatile boolean closed;
+
+    // Listens on the loopback interface only
+    public ReplicationPrimary(SmartHomeSystem system, int port) throws IOException {
+        this(system, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public ReplicationPrimary(SmartHomeSystem system, InetSocketAddress address) throws IOException {
+        this.system = system;
+        this.catalog = new DeviceCatalog(system);
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(address);
+        this.connections = new CopyOnWriteArrayList<>();
+        this.listener = this::onStateChange;
+        this.senderCount = new AtomicInteger();
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replication-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        shippedDevices = system.getAllDevices();
+        system.addDeviceStateListener(listener);
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL_MILLIS,
+                                         HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Tells the standbys the shutdown is intended, so they do not take over
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        heartbeat.shutdownNow();
+        system.removeDeviceStateListener(listener);
+        closeQuietly(serverSocket);
+        for (Connection connection : connections) {
+            connection.send(Collections.singletonList(BYE));
+        }
+        // Give the senders a moment to deliver it
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!connections.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Connection connection : connections) {
+            closeQuietly(connection.socket);
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getStandbyCount() {
+        return connections.size();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                // Registered before the sender takes the snapshot
+                connections.add(connection);
+                Thread sender = new Thread(connection, "replication-sender-" + senderCount.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (SocketException e) {
+                // Closed
+            } catch (IOException e) {
+                System.err.println("Replication: accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Device workers call this; it only queues
+    private void onStateChange(Device device, DeviceAttribute attribute, Object value) {
+        if (connections.isEmpty()) {
+            return;
+        }
+        if (attribute == DeviceAttribute.SCHEDULE) {
+            // Tasks have no setting of their own; the device is shipped again
+            shipDevices(Collections.singletonList(device));
+            return;
+        }
+        for (List<String> record : records(device, attribute, value)) {
+            for (Connection connection : connections) {
+                connection.send(record);
+            }
+        }
+    }
+
+    private static List<List<String>> records(Device device, DeviceAttribute attribute, Object value) {
+        List<List<String>> records = new ArrayList<>(2);
+        String id = device.getId();
+        switch (attribute) {
+            case QUIET_HOURS: {
+                AirConditioner ac = (AirConditioner) device;
+                records.add(Arrays.asList(STATE, id, "quietStart", ac.getQuietHoursStart().toString()));
+                records.add(Arrays.asList(STATE, id, "quietEnd", ac.getQuietHoursEnd().toString()));
+                break;
+            }
+            default:
+                String key = settingKey(attribute);
+                if (key != null && value != null) {
+                    records.add(Arrays.asList(STATE, id, key, value.toString()));
+                }
+        }
+        return records;
+    }
+
+    // Catalog setting a state change attribute is restored with
+    private static String settingKey(DeviceAttribute attribute) {
+        switch (attribute) {
+            case POWER: return "power";
+            case LOCATION: return "location";
+            case BRIGHTNESS: return "brightness";
+            case COLOR: return "color";
+            case MOTION_ACTIVATED: return "motionActivated";
+            case SPEED: return "speed";
+            case TEMPERATURE: return "temperature";
+            case MODE: return "mode";
+            case ENERGY_SAVING: return "energySaving";
+            case AUTO_TEMP_ADJUST: return "autoTempAdjust";
+            case SECURITY_MODE: return "securityMode";
+            case ALARM: return "alarm";
+            default: return null;
+        }
+    }
+
+    // Ships device additions and removals along with the heartbeat. The
+    // device list is an immutable snapshot, so an unchanged list is the
+    // same object and costs nothing to check.
+    private void heartbeat() {
+        try {
+            List<Device> current = system.getAllDevices();
+            if (current != shippedDevices) {
+                Set<Device> previous = Collections.newSetFromMap(new IdentityHashMap<>());
+                previous.addAll(shippedDevices);
+                Set<String> currentIds = new HashSet<>();
+                List<Device> added = new ArrayList<>();
+                for (Device device : current) {
+                    currentIds.add(device.getId());
+                    if (!previous.contains(device)) {
+                        added.add(device);
+                    }
+                }
+                for (Device device : shippedDevices) {
+                    if (!currentIds.contains(device.getId())) {
+                        sendAll(Arrays.asList(REMOVE, device.getId()));
+                    }
+                }
+                if (!added.isEmpty()) {
+                    // Waits, so the record goes out before this heartbeat
+                    shipDevices(added).join();
+                }
+                shippedDevices = current;
+            }
+            sendAll(Arrays.asList(HEARTBEAT, String.valueOf(system.isSystemOn())));
+        } catch (RuntimeException e) {
+            System.err.println("Replication: heartbeat failed: " + e.getMessage());
+        }
+    }
+    
+    // Queues a devices record in the devices' mailbox turn: changes made
+    // before are in the export, changes made after are queued behind it
+    private CompletableFuture<Void> shipDevices(List<Device> devices) {
+        return system.getDeviceExecutor().executeTogether(devices, () -> {
+            try {
+                sendAll(Arrays.asList(DEVICES, catalogOf(devices)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    private void sendAll(List<String> record) {
+        for (Connection connection : connections) {
+            connection.send(record);
+        }
+    }
+    
+    private String catalogOf(List<Device> devices) throws IOException {
+        StringWriter out = new StringWriter();
+        catalog.export(out, DeviceCatalog.Format.CSV, devices);
+        return out.toString();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package smarthome.replication;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import smarthome.catalog.CsvReader;
+import smarthome.catalog.DeviceCatalog;
+import smarthome.exceptions.CatalogFormatException;
+import smarthome.exceptions.DeviceNotFoundException;
+import smarthome.models.Device;
+import smarthome.system.SmartHomeSystem;
+
+// Standby side of hot-standby replication: keeps a passive copy of the
+// primary's devices, alarm state included, by loading its snapshot and
+// applying its stream of changes (see ReplicationPrimary for the records).
+// Changes go through each device's command queue like any other command.
+// The standby's system stays off while following, so its rules and
+// schedule do not act on the replicated changes.
+//
+// Once synced, losing the primary without its "bye" (connection closed,
+// or no record within the failover timeout, during which reconnecting
+// is retried) promotes the standby: its system is resumed in the state the
+// primary had, without resetting any device, and its scheduler started.
+// After a "bye" the standby only waits for the primary to come back.
+public class ReplicationStandby {
+
+    public static final long DEFAULT_FAILOVER_MILLIS = 2000;
+
+    private static final long RETRY_MILLIS = 200;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private enum Outcome { BYE, RESYNC, LOST }
+
+    private final SmartHomeSystem system;
+    private final InetSocketAddress primary;
+    private final long failoverMillis;
+    private final DeviceCatalog catalog;
+    private final CountDownLatch finished;
+    private Thread follower;
+    private volatile boolean stopped;
+    private volatile boolean promoted;
+    private volatile boolean synced;
+    private volatile boolean primarySystemOn;
+    private volatile long appliedChanges;
+    private volatile Socket connection;
+    // When the primary was lost, or -1; only used by the follower thread
+    private long lostAt = -1;
+
+    // Follows a primary on the loopback interface
+    public ReplicationStandby(SmartHomeSystem system, int port) {
+        this(system, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_FAILOVER_MILLIS);
+    }
+
+    public ReplicationStandby(SmartHomeSystem system, InetSocketAddress primary, long failoverMillis) {
+        if (failoverMillis <= ReplicationPrimary.HEARTBEAT_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("Failover timeout must exceed the heartbeat interval");
+        }
+        this.system = system;
+        this.primary = primary;
+        this.failoverMillis = failoverMillis;
+        this.catalog = new DeviceCatalog(system);
+        this.finished = new CountDownLatch(1);
+    }
+
+    public synchronized void start() {
+        if (follower != null) {
+            return;
+        }
+        follower = new Thread(this::follow, "replication-standby");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    // Stops following without taking over
+    public void stop() {
+        stopped = true;
+        Thread thread;
+        synchronized (this) {
+            thread = follower;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        Socket socket = connection;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        finished.countDown();
+    }
+
+    // Blocks until the standby was promoted (true) or stopped (false)
+    public boolean awaitPromotion() throws InterruptedException {
+        finished.await();
+        return promoted;
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    // Whether a snapshot was loaded and the primary has not said goodbye since
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public long getAppliedChanges() {
+        return appliedChanges;
+    }
+
+    private void follow() {
+        while (!stopped) {
+            Outcome outcome;
+            try (Socket socket = new Socket()) {
+                connection = socket;
+                socket.connect(primary, CONNECT_TIMEOUT_MILLIS);
+                // Until the snapshot arrives, only what is left of the failover timeout
+                socket.setSoTimeout((int) Math.max(1, remainingFailover()));
+                outcome = receive(socket);
+            } catch (IOException e) {
+                outcome = Outcome.LOST;
+            }
+            if (stopped) {
+                break;
+            }
+
+            if (outcome == Outcome.BYE) {
+                System.out.println("Replication: primary stopped, waiting for it to come back");
+                synced = false;
+                lostAt = -1;
+                pause();
+            } else if (!synced) {
+                // Never had a primary to take over from
+                pause();
+            } else {
+                if (lostAt < 0) {
+                    lostAt = System.currentTimeMillis();
+                    if (outcome == Outcome.LOST) {
+                        System.err.println("Replication: lost the primary, failing over in " + failoverMillis + " ms");
+                    }
+                }
+                if (outcome == Outcome.LOST) {
+                    if (remainingFailover() <= 0) {
+                        promote();
+                        return;
+                    }
+                    pause();
+                }
+            }
+        }
+    }
+
+    private long remainingFailover() {
+        return lostAt < 0 ? failoverMillis : lostAt + failoverMillis - System.currentTimeMillis();
+    }
+
+    // Applies records until the connection ends; a read timeout or a
+    // closed connection is an IOException
+    private Outcome receive(Socket socket) throws IOException {
+        CsvReader csv = new CsvReader(new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                                StandardCharsets.UTF_8)));
+        boolean loaded = false;
+        try {
+            List<String> record;
+            while ((record = csv.readRecord()) != null) {
+                switch (record.get(0)) {
+                    case ReplicationPrimary.SNAPSHOT:
+                        primarySystemOn = Boolean.parseBoolean(field(record, 1));
+                        loadSnapshot(field(record, 2));
+                        loaded = true;
+                        synced = true;
+                        lostAt = -1;
+                        // From now on a silent primary is a lost one
+                        socket.setSoTimeout((int) failoverMillis);
+                        break;
+                    case ReplicationPrimary.DEVICES:
+                        system.restoreDevices(catalog.readDevices(new StringReader(field(record, 1)),
+                                                                  DeviceCatalog.Format.CSV),
+                                              Collections.emptyList());
+                        break;
+                    case ReplicationPrimary.REMOVE:
+                        system.restoreDevices(Collections.emptyList(), Collections.singletonList(field(record, 1)));
+                        break;
+                    case ReplicationPrimary.STATE:
+                        applyState(field(record, 1), field(record, 2), field(record, 3));
+                        break;
+                    case ReplicationPrimary.HEARTBEAT:
+                        primarySystemOn = Boolean.parseBoolean(field(record, 1));
+                        break;
+                    case ReplicationPrimary.RESYNC:
+                        return Outcome.RESYNC;
+                    case ReplicationPrimary.BYE:
+                        return Outcome.BYE;
+                    default:
+                        // Written by a newer version; skip it
+                }
+            }
+        } catch (CatalogFormatException e) {
+            System.err.println("Replication: invalid record from the primary: " + e.getMessage());
+            return loaded ? Outcome.RESYNC : Outcome.LOST;
+        }
+        return Outcome.LOST;
+    }
+
+    private void loadSnapshot(String devices) throws IOException, CatalogFormatException {
+        List<Device> restored = catalog.readDevices(new StringReader(devices), DeviceCatalog.Format.CSV);
+        Set<String> restoredIds = new HashSet<>();
+        for (Device device : restored) {
+            restoredIds.add(device.getId());
+        }
+        List<String> removed = new ArrayList<>();
+        for (Device device : system.getAllDevices()) {
+            if (!restoredIds.contains(device.getId())) {
+                removed.add(device.getId());
+            }
+        }
+        system.restoreDevices(restored, removed);
+    }
+
+    private void applyState(String deviceId, String key, String value) {
+        Device device;
+        try {
+            device = system.getDevice(deviceId);
+        } catch (DeviceNotFoundException e) {
+            // Removed since; a device's record always comes before its changes
+            return;
+        }
+        appliedChanges++;
+        system.getDeviceExecutor().execute(device, d -> {
+            try {
+                DeviceCatalog.applySetting(d, key, value);
+            } catch (CatalogFormatException e) {
+                System.err.println("Replication: cannot apply " + key + "=" + value + " to " + d.getName());
+            }
+        });
+    }
+
+    private void promote() {
+        promoted = true;
+        System.out.println("Replication: taking over as primary with " + system.getDeviceCount() + " devices");
+        if (primarySystemOn) {
+            system.resumeSystem();
+        }
+        system.startScheduler();
+        finished.countDown();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+    }
+
+    private static String field(List<String> record, int index) {
+        return index < record.size() ? record.get(index) : null;
+    }
+}
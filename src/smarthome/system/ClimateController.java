@@ -0,0 +1,201 @@
+package smarthome.system;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import smarthome.interfaces.DeviceCommandDispatcher;
+import smarthome.interfaces.DeviceStateListener;
+import smarthome.models.AirConditioner;
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+import smarthome.models.TimeBand;
+
+// Drives time-of-day adjustments for every air conditioner in the home.
+// Band starts and per-unit quiet-hours start/end times are precomputed into
+// a sorted table of transitions, so a tick is a single comparison unless a
+// boundary was crossed, in which case all affected units are adjusted in
+// one pass.
+public class ClimateController implements DeviceStateListener {
+
+    private static class Transition {
+        private final int minuteOfDay;
+        private TimeBand bandStart;
+        private final List<AirConditioner> quietStarts = new ArrayList<>();
+        private final List<AirConditioner> quietEnds = new ArrayList<>();
+
+        private Transition(int minuteOfDay) {
+            this.minuteOfDay = minuteOfDay;
+        }
+    }
+
+    private final Consumer<String> eventLog;
+    private DeviceCommandDispatcher dispatcher;
+    private final List<AirConditioner> units;
+    private List<AirConditioner> autoAdjustUnits;
+    private Transition[] transitions;
+    // Set without the lock by state changes from any device's mailbox
+    private volatile boolean dirty;
+    private int nextIndex;
+    private int lastMinute;
+
+    public ClimateController(Consumer<String> eventLog) {
+        this.eventLog = eventLog;
+        this.dispatcher = DeviceCommandDispatcher.DIRECT;
+        this.units = new ArrayList<>();
+        this.autoAdjustUnits = new ArrayList<>();
+        this.transitions = new Transition[0];
+        this.dirty = true;
+        this.lastMinute = -1;
+    }
+
+    // Decides where adjustments run, e.g. on each unit's command queue
+    public synchronized void setDispatcher(DeviceCommandDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public synchronized void register(AirConditioner unit) {
+        if (!units.contains(unit)) {
+            units.add(unit);
+            dirty = true;
+        }
+    }
+
+    public synchronized void unregister(AirConditioner unit) {
+        if (units.remove(unit)) {
+            dirty = true;
+        }
+    }
+
+    public synchronized int getUnitCount() {
+        return units.size();
+    }
+
+    @Override
+    public void onStateChange(Device device, DeviceAttribute attribute, Object value) {
+        // Opt-in changes and new quiet hours change the precomputed table
+        if (device instanceof AirConditioner &&
+            (attribute == DeviceAttribute.AUTO_TEMP_ADJUST || attribute == DeviceAttribute.QUIET_HOURS)) {
+            dirty = true;
+        }
+    }
+
+    public synchronized LocalTime getNextTransition() {
+        rebuildIfDirty();
+        if (transitions.length == 0) {
+            return null;
+        }
+        return LocalTime.of(transitions[nextIndex].minuteOfDay / 60, transitions[nextIndex].minuteOfDay % 60);
+    }
+
+    // Called periodically (at least once a minute) with the current time
+    public synchronized void tick(LocalTime now) {
+        int minute = now.getHour() * 60 + now.getMinute();
+        if (lastMinute < 0) {
+            lastMinute = minute;
+            dirty = true;
+        }
+        rebuildIfDirty();
+        if (minute == lastMinute || transitions.length == 0) {
+            return;
+        }
+
+        // Normally zero or one boundary lies between two ticks, but catch up
+        // on everything we crossed if ticks were delayed
+        for (int i = 0; i < transitions.length; i++) {
+            Transition transition = transitions[nextIndex];
+            if (!crossed(transition.minuteOfDay, lastMinute, minute)) {
+                break;
+            }
+            apply(transition, now);
+            nextIndex = (nextIndex + 1) % transitions.length;
+        }
+        lastMinute = minute;
+    }
+
+    private static boolean crossed(int boundary, int from, int to) {
+        if (from <= to) {
+            return boundary > from && boundary <= to;
+        }
+        // The interval wrapped past midnight
+        return boundary > from || boundary <= to;
+    }
+
+    private void apply(Transition transition, LocalTime now) {
+        int adjusted = 0;
+
+        if (transition.bandStart != null) {
+            TimeBand band = transition.bandStart;
+            for (AirConditioner unit : autoAdjustUnits) {
+                dispatcher.dispatch(unit, () -> {
+                    unit.applyTimeBand(band);
+                    // Quiet hours still win over the band target
+                    if (unit.isQuietHours(now)) {
+                        unit.applyQuietHours();
+                    }
+                });
+            }
+            adjusted += autoAdjustUnits.size();
+        }
+
+        for (AirConditioner unit : transition.quietStarts) {
+            dispatcher.dispatch(unit, unit::applyQuietHours);
+        }
+        adjusted += transition.quietStarts.size();
+
+        // Leaving quiet hours: go back to the band target for opted-in units
+        TimeBand currentBand = TimeBand.at(now);
+        for (AirConditioner unit : transition.quietEnds) {
+            dispatcher.dispatch(unit, () -> unit.applyTimeBand(currentBand));
+        }
+        adjusted += transition.quietEnds.size();
+
+        if (adjusted > 0) {
+            eventLog.accept("Climate transition at " + String.format("%02d:%02d",
+                    transition.minuteOfDay / 60, transition.minuteOfDay % 60) +
+                    (transition.bandStart != null ? " (" + transition.bandStart + ")" : "") +
+                    " made " + adjusted + " adjustment(s)");
+        }
+    }
+
+    private void rebuildIfDirty() {
+        if (!dirty) {
+            return;
+        }
+
+        Map<Integer, Transition> table = new TreeMap<>();
+        for (TimeBand band : TimeBand.values()) {
+            transitionAt(table, band.getStart()).bandStart = band;
+        }
+
+        List<AirConditioner> optedIn = new ArrayList<>();
+        for (AirConditioner unit : units) {
+            transitionAt(table, unit.getQuietHoursStart()).quietStarts.add(unit);
+            if (unit.isAutoTempAdjust()) {
+                optedIn.add(unit);
+                transitionAt(table, unit.getQuietHoursEnd()).quietEnds.add(unit);
+            }
+        }
+
+        autoAdjustUnits = optedIn;
+        transitions = table.values().toArray(new Transition[0]);
+
+        // Resume with the first boundary after the last processed minute
+        nextIndex = 0;
+        for (int i = 0; i < transitions.length; i++) {
+            if (transitions[i].minuteOfDay > lastMinute) {
+                nextIndex = i;
+                break;
+            }
+        }
+        dirty = false;
+    }
+
+    private static Transition transitionAt(Map<Integer, Transition> table, LocalTime time) {
+        int minute = time.getHour() * 60 + time.getMinute();
+        return table.computeIfAbsent(minute, Transition::new);
+    }
+}
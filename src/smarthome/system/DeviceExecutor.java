@@ -0,0 +1,286 @@
+package smarthome.system;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import smarthome.models.Device;
+
+// Runs device commands through one mailbox per device on shared worker
+// threads (virtual threads by default). Commands for the same device run
+// one at a time in submission order (and each sees the effects of the
+// previous one), while different devices are processed in parallel.
+// Nothing here is locked across devices, and the home-wide listeners the
+// commands report to keep it that way: history and energy lock per device
+// (plus brief updates of shared totals), and the rule engine queues events
+// for a single thread to evaluate rather than making workers wait.
+//
+// A command can also span several devices (see executeTogether); it runs
+// at the same point of each device's order, like a single-device command.
+//
+// Hosted homes each have their own executor (and so their own mailboxes)
+// on top of their shard's worker pool; shutting such an executor down
+// leaves the shared pool running.
+public class DeviceExecutor {
+
+    // Commands a mailbox runs before yielding its worker to other devices
+    private static final int MAX_COMMANDS_PER_TURN = 32;
+
+    // Queued in each mailbox a joint command spans. A mailbox reaching it
+    // parks without holding a worker; the last one to arrive runs the
+    // command and then releases them all.
+    private class Rendezvous implements Runnable {
+        private final List<Mailbox> members;
+        private final AtomicInteger waiting;
+        private final Runnable command;
+        private final CompletableFuture<Void> result;
+
+        // Members are added as the rendezvous is queued in their mailboxes
+        private Rendezvous(int count, Runnable command) {
+            this.members = new ArrayList<>(count);
+            this.waiting = new AtomicInteger(count);
+            this.command = command;
+            this.result = new CompletableFuture<>();
+        }
+
+        // Never called: mailboxes hand a rendezvous to arrive() instead
+        @Override
+        public void run() {
+            arrive();
+        }
+
+        private void arrive() {
+            if (waiting.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                command.run();
+                result.complete(null);
+            } catch (Throwable t) {
+                System.err.println("Joint command failed: " + t);
+                result.completeExceptionally(t);
+            } finally {
+                for (Mailbox mailbox : members) {
+                    mailbox.resume();
+                }
+            }
+        }
+    }
+
+    // A removed device's mailbox is retired rather than dropped: it runs
+    // what is queued, then closes once it is empty and idle. A closed
+    // mailbox takes no more commands, so its device's next command starts a
+    // new one, which cannot run alongside the old.
+    private class Mailbox implements Runnable {
+        private final String deviceId;
+        private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean retired;
+        private boolean closed;
+
+        private Mailbox(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        // Returns false if the mailbox is closed. Adding under the lock keeps
+        // a command from slipping in while the mailbox closes.
+        private boolean offer(Runnable command) {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                commands.add(command);
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+            return true;
+        }
+
+        private void retire() {
+            retired = true;
+            tryClose();
+        }
+
+        private void tryClose() {
+            synchronized (this) {
+                if (closed || !commands.isEmpty() || scheduled.get()) {
+                    return;
+                }
+                closed = true;
+            }
+            mailboxes.remove(deviceId, this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < MAX_COMMANDS_PER_TURN; i++) {
+                    Runnable command = commands.poll();
+                    if (command == null) {
+                        break;
+                    }
+                    if (command instanceof Rendezvous) {
+                        // Stays scheduled, so nothing else runs until resume()
+                        ((Rendezvous) command).arrive();
+                        return;
+                    }
+                    command.run();
+                }
+            } catch (Throwable t) {
+                // Commands report their own failures; this is only reached
+                // if one could not, and must not stop the mailbox for good
+                release();
+                throw t;
+            }
+            release();
+        }
+
+        // Ends this turn, scheduling another if commands are waiting
+        private void release() {
+            scheduled.set(false);
+            // Something may have arrived after the last poll
+            if (!commands.isEmpty()) {
+                if (scheduled.compareAndSet(false, true)) {
+                    workers.execute(this);
+                }
+            } else if (retired) {
+                tryClose();
+            }
+        }
+
+        // Carries on after a joint command
+        private void resume() {
+            workers.execute(this);
+        }
+    }
+
+    private final ExecutorService workers;
+    private final boolean ownsWorkers;
+    private final Map<String, Mailbox> mailboxes;
+    // Joint commands are queued one at a time, so any two of them are in the
+    // same order in every mailbox they share and cannot wait on each other
+    private final Object jointLock = new Object();
+
+    // Each mailbox turn runs on a virtual thread of its own, so a command
+    // that blocks (on a lock, or a slow device) does not hold up the
+    // mailboxes of other devices
+    public DeviceExecutor() {
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("device-worker-", 1).factory());
+        this.ownsWorkers = true;
+        this.mailboxes = new ConcurrentHashMap<>();
+    }
+
+    // A fixed pool of platform threads, e.g. to bound the parallelism of a
+    // load test
+    public DeviceExecutor(int threads) {
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "device-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.ownsWorkers = true;
+        this.mailboxes = new ConcurrentHashMap<>();
+    }
+
+    // Runs on a pool shared with other executors
+    public DeviceExecutor(ExecutorService sharedWorkers) {
+        this.workers = sharedWorkers;
+        this.ownsWorkers = false;
+        this.mailboxes = new ConcurrentHashMap<>();
+    }
+
+    public <T> CompletableFuture<T> submit(Device device, Function<Device, T> command) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(device, () -> {
+            try {
+                result.complete(command.apply(device));
+            } catch (Throwable t) {
+                // Errors too: the caller is waiting, and the device's next
+                // command should still run
+                System.err.println("Command failed on " + device.getName() + ": " + t);
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    public CompletableFuture<Void> execute(Device device, Consumer<Device> command) {
+        return submit(device, d -> {
+            command.accept(d);
+            return null;
+        });
+    }
+
+    // Runs command once on one thread when it is the turn of every given
+    // device: commands queued for them earlier run first, later ones wait
+    // until it is done, and none of the devices runs anything else meanwhile
+    public CompletableFuture<Void> executeTogether(Collection<? extends Device> devices, Runnable command) {
+        if (devices.isEmpty()) {
+            command.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        Rendezvous rendezvous = new Rendezvous(devices.size(), command);
+        synchronized (jointLock) {
+            for (Device device : devices) {
+                enqueue(device, rendezvous);
+            }
+        }
+        return rendezvous.result;
+    }
+
+    // Retires the mailbox of a removed device; queued commands still run
+    // before any command for a device with the same id
+    public void remove(Device device) {
+        Mailbox mailbox = mailboxes.get(device.getId());
+        if (mailbox != null) {
+            mailbox.retire();
+        }
+    }
+
+    public int getMailboxCount() {
+        return mailboxes.size();
+    }
+
+    public void shutdown() {
+        if (ownsWorkers) {
+            workers.shutdown();
+        }
+    }
+
+    private void enqueue(Device device, Runnable command) {
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(device.getId(), Mailbox::new);
+            if (command instanceof Rendezvous) {
+                // Listed before it can arrive, so the last arrival sees it
+                ((Rendezvous) command).members.add(mailbox);
+            }
+            if (mailbox.offer(command)) {
+                return;
+            }
+            if (command instanceof Rendezvous) {
+                List<Mailbox> members = ((Rendezvous) command).members;
+                members.remove(members.size() - 1);
+            }
+            // Closed meanwhile; make way for a new one
+            mailboxes.remove(device.getId(), mailbox);
+        }
+    }
+}
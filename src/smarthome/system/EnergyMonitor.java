@@ -0,0 +1,189 @@
+package smarthome.system;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import smarthome.interfaces.DeviceStateListener;
+import smarthome.models.Device;
+import smarthome.models.DeviceAttribute;
+
+// Integrates the power draw of every device over time. Each state change
+// updates the device's meter plus the running totals of its location, its
+// device type and the whole home in O(1), so energy queries never have to
+// walk the device list.
+//
+// Every device reports here from its own mailbox, so there is no monitor
+// around the whole update: a device's meter is locked while its delta is
+// worked out, and each total only for its own few additions.
+public class EnergyMonitor implements DeviceStateListener {
+
+    private static final double WATT_MILLIS_PER_KWH = 3_600_000_000.0;
+
+    // Energy integrated up to lastUpdate plus the power drawn since then;
+    // guarded by itself
+    private static class Accumulator {
+        double wattMillis;
+        double watts;
+        long lastUpdate;
+
+        Accumulator(long now) {
+            this.lastUpdate = now;
+        }
+
+        private void settle(long now) {
+            if (now > lastUpdate) {
+                wattMillis += watts * (now - lastUpdate);
+                lastUpdate = now;
+            }
+        }
+
+        synchronized void addWatts(double delta, long now) {
+            settle(now);
+            watts += delta;
+        }
+
+        synchronized double getWatts() {
+            return watts;
+        }
+
+        synchronized double kilowattHours(long now) {
+            return (wattMillis + watts * Math.max(0, now - lastUpdate)) / WATT_MILLIS_PER_KWH;
+        }
+    }
+
+    private static class Meter extends Accumulator {
+        // Guarded by the meter, like its watts
+        private String location;
+        private final String type;
+
+        private Meter(Device device, long now) {
+            super(now);
+            this.location = device.getLocation();
+            this.type = device.getClass().getSimpleName();
+        }
+    }
+
+    private final Map<String, Meter> meters;
+    private final Map<String, Accumulator> byLocation;
+    private final Map<String, Accumulator> byType;
+    private final Accumulator home;
+
+    public EnergyMonitor() {
+        long now = System.currentTimeMillis();
+        this.meters = new ConcurrentHashMap<>();
+        this.byLocation = new ConcurrentHashMap<>();
+        this.byType = new ConcurrentHashMap<>();
+        this.home = new Accumulator(now);
+    }
+
+    public void track(Device device) {
+        long now = System.currentTimeMillis();
+        Meter meter = new Meter(device, now);
+        // Locked before it is published, so no state change is applied
+        // to it before its initial draw
+        synchronized (meter) {
+            if (meters.putIfAbsent(device.getId(), meter) != null) {
+                return;
+            }
+            applyDelta(meter, device.getPowerDraw(), now);
+        }
+    }
+
+    // Stops metering; energy already consumed stays in the totals
+    public void untrack(Device device) {
+        Meter meter = meters.remove(device.getId());
+        if (meter != null) {
+            synchronized (meter) {
+                applyDelta(meter, -meter.watts, System.currentTimeMillis());
+            }
+        }
+    }
+
+    @Override
+    public void onStateChange(Device device, DeviceAttribute attribute, Object value) {
+        Meter meter = meters.get(device.getId());
+        if (meter == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        synchronized (meter) {
+            if (attribute == DeviceAttribute.LOCATION) {
+                // Move the device's current draw to its new room
+                location(meter.location, now).addWatts(-meter.watts, now);
+                meter.location = (String) value;
+                location(meter.location, now).addWatts(meter.watts, now);
+                return;
+            }
+
+            double delta = device.getPowerDraw() - meter.watts;
+            if (delta != 0) {
+                applyDelta(meter, delta, now);
+            }
+        }
+    }
+
+    // Called with the meter locked; each total is locked on its own
+    private void applyDelta(Meter meter, double delta, long now) {
+        meter.addWatts(delta, now);
+        location(meter.location, now).addWatts(delta, now);
+        byType.computeIfAbsent(meter.type, type -> new Accumulator(now)).addWatts(delta, now);
+        home.addWatts(delta, now);
+    }
+
+    private Accumulator location(String location, long now) {
+        return byLocation.computeIfAbsent(location, l -> new Accumulator(now));
+    }
+
+    public double getHomeEnergyKWh() {
+        return home.kilowattHours(System.currentTimeMillis());
+    }
+
+    public double getHomePowerWatts() {
+        return home.getWatts();
+    }
+
+    public double getLocationEnergyKWh(String location) {
+        Accumulator accumulator = byLocation.get(location);
+        return accumulator != null ? accumulator.kilowattHours(System.currentTimeMillis()) : 0;
+    }
+
+    public double getLocationPowerWatts(String location) {
+        Accumulator accumulator = byLocation.get(location);
+        return accumulator != null ? accumulator.getWatts() : 0;
+    }
+
+    // Type is the simple class name, e.g. "AirConditioner"
+    public double getTypeEnergyKWh(String type) {
+        Accumulator accumulator = byType.get(type);
+        return accumulator != null ? accumulator.kilowattHours(System.currentTimeMillis()) : 0;
+    }
+
+    public double getDeviceEnergyKWh(String deviceId) {
+        Meter meter = meters.get(deviceId);
+        return meter != null ? meter.kilowattHours(System.currentTimeMillis()) : 0;
+    }
+
+    public double getDevicePowerWatts(String deviceId) {
+        Meter meter = meters.get(deviceId);
+        return meter != null ? meter.getWatts() : 0;
+    }
+
+    public Map<String, Double> getEnergyByLocation() {
+        return snapshot(byLocation);
+    }
+
+    public Map<String, Double> getEnergyByType() {
+        return snapshot(byType);
+    }
+
+    private Map<String, Double> snapshot(Map<String, Accumulator> accumulators) {
+        long now = System.currentTimeMillis();
+        Map<String, Double> result = new TreeMap<>();
+        for (Map.Entry<String, Accumulator> entry : accumulators.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().kilowattHours(now));
+        }
+        return result;
+    }
+}
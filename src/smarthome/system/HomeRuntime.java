@@ -0,0 +1,171 @@
+package smarthome.system;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hosts many independent homes in one process. Every home is a complete
+// SmartHomeSystem of its own (devices, users, rules, schedule and logs)
+// on the threads of its shard. Beyond those threads, homes share only
+// process-wide settings: the per-type counters generated device ids are
+// drawn from (so ids are unique across homes and never run out) and
+// Device.setConsoleOutput. Hosted homes keep their log and their devices'
+// feedback off the console unless setConsoleEcho(true) is called.
+//
+// A home is pinned to one of a fixed number of shards by its id. Each
+// shard has a small worker pool that runs the device commands of all its
+// homes, with one mailbox per device as before, and one timer thread that
+// runs their per-minute schedule ticks. The thread count thus depends on
+// the shard count, not on the number of homes, and homes on different
+// shards never contend with each other.
+public class HomeRuntime {
+
+    private static class Shard {
+        private final ExecutorService workers;
+        private final ScheduledThreadPoolExecutor timer;
+        private final AtomicInteger homes = new AtomicInteger();
+
+        private Shard(int index, int workerThreads) {
+            this.workers = Executors.newFixedThreadPool(workerThreads, threads("home-shard-" + index + "-worker-"));
+            this.timer = new ScheduledThreadPoolExecutor(1, threads("home-shard-" + index + "-scheduler-"));
+            // A removed home cancels its pending ticks and idle checks; drop
+            // them right away so they do not keep the home in memory
+            this.timer.setRemoveOnCancelPolicy(true);
+        }
+
+        private void shutdown() {
+            timer.shutdownNow();
+            workers.shutdown();
+        }
+    }
+
+    private final Shard[] shards;
+    private final Map<String, SmartHomeSystem> homes;
+    private volatile boolean shutdown;
+
+    // One shard per processor with two workers each
+    public HomeRuntime() {
+        this(Runtime.getRuntime().availableProcessors(), 2);
+    }
+
+    public HomeRuntime(int shardCount, int workersPerShard) {
+        if (shardCount <= 0 || workersPerShard <= 0) {
+            throw new IllegalArgumentException("Shard and worker counts must be positive");
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, workersPerShard);
+        }
+        this.homes = new ConcurrentHashMap<>();
+    }
+
+    // Creates a home on its shard and starts its scheduler
+    public SmartHomeSystem createHome(String homeId) {
+        if (shutdown) {
+            throw new IllegalStateException("Home runtime has been shut down");
+        }
+        Shard shard = shards[shardIndex(homeId)];
+        SmartHomeSystem home = new SmartHomeSystem(homeId, new DeviceExecutor(shard.workers), shard.timer);
+        if (homes.putIfAbsent(homeId, home) != null) {
+            home.shutdown();
+            throw new IllegalArgumentException("Home already exists: " + homeId);
+        }
+        shard.homes.incrementAndGet();
+        home.startScheduler();
+        return home;
+    }
+
+    // The home with the given id, or null
+    public SmartHomeSystem getHome(String homeId) {
+        return homes.get(homeId);
+    }
+
+    public SmartHomeSystem getOrCreateHome(String homeId) {
+        SmartHomeSystem home = homes.get(homeId);
+        if (home != null) {
+            return home;
+        }
+        try {
+            return createHome(homeId);
+        } catch (IllegalArgumentException e) {
+            // Created concurrently
+            return homes.get(homeId);
+        }
+    }
+
+    // Stops the home's scheduler and closes its log file; commands already
+    // queued for its devices still run. Returns false if there is no such home.
+    public boolean removeHome(String homeId) {
+        SmartHomeSystem home = homes.remove(homeId);
+        if (home == null) {
+            return false;
+        }
+        shards[shardIndex(homeId)].homes.decrementAndGet();
+        home.shutdown();
+        return true;
+    }
+
+    public Collection<SmartHomeSystem> getHomes() {
+        return Collections.unmodifiableCollection(homes.values());
+    }
+
+    public int getHomeCount() {
+        return homes.size();
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Shard a home is (or would be) pinned to
+    public int shardIndex(String homeId) {
+        return Math.floorMod(homeId.hashCode(), shards.length);
+    }
+
+    // Number of homes on each shard
+    public List<Integer> getShardLoads() {
+        List<Integer> loads = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            loads.add(shard.homes.get());
+        }
+        return loads;
+    }
+
+    // Shuts down every home, then the shard threads once the commands
+    // already queued have run
+    public void shutdown() {
+        shutdown = true;
+        for (String homeId : new ArrayList<>(homes.keySet())) {
+            removeHome(homeId);
+        }
+        for (Shard shard : shards) {
+            shard.shutdown();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.workers.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static ThreadFactory threads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
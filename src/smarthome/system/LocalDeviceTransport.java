@@ -0,0 +1,19 @@
+package smarthome.system;
+
+import java.util.concurrent.CompletableFuture;
+
+import smarthome.interfaces.DeviceTransport;
+import smarthome.models.Device;
+
+// In-memory devices acknowledge every command immediately
+public class LocalDeviceTransport implements DeviceTransport {
+
+    @Override
+    public CompletableFuture<Void> deliver(Device device) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
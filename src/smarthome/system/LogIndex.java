@@ -0,0 +1,290 @@
+package smarthome.system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Inverted index over log lines, maintained as lines are appended. Every
+// line gets a sequential entry number; each token maps to the ascending
+// list of entry numbers containing it. A query intersects the posting
+// lists of its terms, shortest first, within the entry range of the time
+// window, which is found by binary search on the timestamps. Lines are
+// never scanned; only postings of the query terms are touched.
+//
+// The index does not keep the lines themselves, only which log each came
+// from and its sequence number there; matches are rendered by that log.
+// A line its log no longer holds (e.g. evicted from a ring buffer) is not
+// returned, and whenever the index has doubled since it was last
+// compacted, such entries and those of removed logs are dropped and the
+// rest renumbered, so the index stays proportional to what the logs hold.
+//
+// Searches and compaction call into the logs with the index locked, so a
+// log must add its lines after releasing its own lock.
+public class LogIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    public interface LineSource {
+        // The line with the given sequence number, or null if it is gone
+        String line(long sequence);
+
+        // Lines before this sequence number are gone for good
+        default long firstSequence() {
+            return 0;
+        }
+    }
+
+    // Growable int array, ascending by construction
+    private static class PostingList {
+        private int[] entries = new int[4];
+        private int size;
+
+        private void add(int entry) {
+            // A token repeated within one line is recorded once
+            if (size > 0 && entries[size - 1] == entry) {
+                return;
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+    }
+
+    private final Map<String, PostingList> postings;
+    // Indexed by source id; null once a source is removed
+    private final List<LineSource> sources;
+    private int entryCount;
+    private long[] timestamps;
+    private int[] entrySources;
+    private long[] sequences;
+    private int compactAt;
+
+    public LogIndex() {
+        this.postings = new HashMap<>();
+        this.sources = new ArrayList<>();
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.entrySources = new int[INITIAL_CAPACITY];
+        this.sequences = new long[INITIAL_CAPACITY];
+        this.compactAt = INITIAL_CAPACITY;
+    }
+
+    // Registers a log whose lines are added under the returned id
+    public synchronized int addSource(LineSource source) {
+        sources.add(source);
+        return sources.size() - 1;
+    }
+
+    // Lines of a removed source are no longer returned; ids are not reused,
+    // so a log registered later never renders another log's entries
+    public synchronized void removeSource(int sourceId) {
+        sources.set(sourceId, null);
+    }
+
+    // Indexes the line that the given source holds under the given
+    // sequence number.
+    // Lines from different threads can arrive slightly out of order, so a
+    // timestamp never goes below the previous one; that keeps the array
+    // sorted for range lookups at the cost of a few milliseconds' accuracy
+    public void add(long epochMillis, int sourceId, long sequence, String line) {
+        // Split before taking the lock
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean wordChar = i < line.length() && Character.isLetterOrDigit(line.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(line.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        synchronized (this) {
+            if (entryCount == compactAt) {
+                compact();
+            }
+            insert(epochMillis, sourceId, sequence, tokens);
+        }
+    }
+
+    private void insert(long epochMillis, int sourceId, long sequence, List<String> tokens) {
+        int entry = entryCount;
+        if (entry == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, entry * 2);
+            entrySources = Arrays.copyOf(entrySources, entry * 2);
+            sequences = Arrays.copyOf(sequences, entry * 2);
+        }
+        timestamps[entry] = entry > 0 ? Math.max(epochMillis, timestamps[entry - 1]) : epochMillis;
+        entrySources[entry] = sourceId;
+        sequences[entry] = sequence;
+        entryCount++;
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, t -> new PostingList()).add(entry);
+        }
+    }
+
+    // Drops the entries whose lines are gone for good and renumbers the
+    // rest in order, which keeps every posting list ascending
+    private void compact() {
+        long[] firstSequences = new long[sources.size()];
+        for (int id = 0; id < firstSequences.length; id++) {
+            LineSource source = sources.get(id);
+            firstSequences[id] = source != null ? source.firstSequence() : Long.MAX_VALUE;
+        }
+        int[] renumbered = new int[entryCount];
+        int kept = 0;
+        for (int entry = 0; entry < entryCount; entry++) {
+            if (sequences[entry] >= firstSequences[entrySources[entry]]) {
+                timestamps[kept] = timestamps[entry];
+                entrySources[kept] = entrySources[entry];
+                sequences[kept] = sequences[entry];
+                renumbered[entry] = kept++;
+            } else {
+                renumbered[entry] = -1;
+            }
+        }
+        if (kept < entryCount) {
+            Iterator<PostingList> lists = postings.values().iterator();
+            while (lists.hasNext()) {
+                PostingList list = lists.next();
+                int size = 0;
+                for (int i = 0; i < list.size; i++) {
+                    int entry = renumbered[list.entries[i]];
+                    if (entry >= 0) {
+                        list.entries[size++] = entry;
+                    }
+                }
+                list.size = size;
+                if (size == 0) {
+                    lists.remove();
+                }
+            }
+            entryCount = kept;
+        }
+        compactAt = Math.max(INITIAL_CAPACITY, entryCount * 2);
+    }
+
+    public synchronized int size() {
+        return entryCount;
+    }
+
+    // Lines containing every term of the query (case-insensitive, words
+    // split the same way as the lines) logged within [fromMillis, toMillis),
+    // newest first, at most limit of them. A query without terms returns
+    // every line in the window.
+    public synchronized List<String> search(String query, long fromMillis, long toMillis, int limit) {
+        int first = lowerBound(fromMillis);
+        int end = lowerBound(toMillis);
+        List<String> results = new ArrayList<>();
+        if (first >= end || limit <= 0) {
+            return results;
+        }
+
+        List<PostingList> terms = new ArrayList<>();
+        for (String term : tokenize(query)) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                return results;
+            }
+            terms.add(list);
+        }
+        if (terms.isEmpty()) {
+            for (int entry = end - 1; entry >= first && results.size() < limit; entry--) {
+                render(entry, results);
+            }
+            return results;
+        }
+        terms.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        // Walk the shortest list backwards; every other list keeps a cursor
+        // that only moves backwards too, so each list is passed at most once
+        PostingList shortest = terms.get(0);
+        int[] cursors = new int[terms.size()];
+        for (int t = 1; t < terms.size(); t++) {
+            cursors[t] = lowerBound(terms.get(t), end) - 1;
+        }
+        int from = lowerBound(shortest, first);
+        candidates:
+        for (int i = lowerBound(shortest, end) - 1; i >= from && results.size() < limit; i--) {
+            int entry = shortest.entries[i];
+            for (int t = 1; t < terms.size(); t++) {
+                PostingList other = terms.get(t);
+                int cursor = seekBackwards(other, cursors[t], entry);
+                cursors[t] = cursor;
+                if (cursor < 0) {
+                    break candidates;
+                }
+                if (other.entries[cursor] != entry) {
+                    // Skip to the last candidate the other list still allows
+                    i = seekBackwards(shortest, i - 1, other.entries[cursor]) + 1;
+                    continue candidates;
+                }
+            }
+            render(entry, results);
+        }
+        return results;
+    }
+
+    // Adds the entry's line unless its log no longer holds it
+    private void render(int entry, List<String> results) {
+        LineSource source = sources.get(entrySources[entry]);
+        String line = source != null ? source.line(sequences[entry]) : null;
+        if (line != null) {
+            results.add(line);
+        }
+    }
+
+    // Last position at or before cursor whose entry is <= the given one,
+    // or -1; gallops so that long jumps cost only a logarithmic number of
+    // steps
+    private static int seekBackwards(PostingList list, int cursor, int entry) {
+        if (cursor < 0 || list.entries[cursor] <= entry) {
+            return cursor;
+        }
+        int step = 1;
+        int high = cursor;
+        int low = cursor - step;
+        while (low >= 0 && list.entries[low] > entry) {
+            high = low;
+            step <<= 1;
+            low = cursor - step;
+        }
+        // entries[high] > entry, and entries[low] <= entry when low >= 0
+        int position = Arrays.binarySearch(list.entries, Math.max(low, 0), high, entry);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    private static List<String> tokenize(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.toLowerCase().split("[^\\p{L}\\p{Nd}]+")) {
+            if (!term.isEmpty() && !terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    // First entry logged at or after the given time
+    private int lowerBound(long epochMillis) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < epochMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First position in the list holding an entry >= the given one
+    private static int lowerBound(PostingList list, int entry) {
+        int position = Arrays.binarySearch(list.entries, 0, list.size, entry);
+        return position >= 0 ? position : -position - 1;
+    }
+}
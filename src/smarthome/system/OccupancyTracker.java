@@ -0,0 +1,344 @@
+package smarthome.system;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import smarthome.interfaces.OccupancyListener;
+
+// Occupancy per location, estimated from motion events. A location is
+// occupied while its last motion is younger than the idle timeout. Each
+// location keeps a fixed amount of state however many events it sees:
+// an exponentially decayed activity score and a ring of per-minute motion
+// counts covering the last WINDOW_MINUTES, so recent activity can be
+// queried over any window up to that.
+//
+// Motion costs O(1) and never touches the timer. Each occupied location
+// has at most one pending idle check, armed for its deadline as of when it
+// was armed; when it fires early because motion pushed the deadline out,
+// it is re-armed for the new one. Timer work thus scales with the number
+// of locations going idle, not with the number of motion events.
+public class OccupancyTracker {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final long DEFAULT_HALF_LIFE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final int WINDOW_MINUTES = 60;
+
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private class Room {
+        private final String location;
+        private final int[] minuteCounts = new int[WINDOW_MINUTES];
+        // Minute (since the epoch) of the newest bucket
+        private long currentMinute;
+        private double activity;
+        private long activityAt;
+        private long lastMotion;
+        private long occupiedSince;
+        private long idleSince;
+        private boolean occupied;
+        // The room's pending idle check, if any
+        private ScheduledFuture<?> idleCheck;
+
+        private Room(String location) {
+            this.location = location;
+        }
+
+        // Called with the room locked; returns true if it just became occupied
+        private boolean motion(long now) {
+            advance(now / MINUTE_MILLIS);
+            minuteCounts[(int) (currentMinute % WINDOW_MINUTES)]++;
+            activity = activityAt(now) + 1;
+            activityAt = now;
+            lastMotion = Math.max(lastMotion, now);
+            if (occupied) {
+                return false;
+            }
+            occupied = true;
+            occupiedSince = now;
+            return true;
+        }
+
+        // Clears the buckets of the minutes that passed without motion
+        private void advance(long minute) {
+            if (minute <= currentMinute) {
+                return;
+            }
+            long gap = Math.min(minute - currentMinute, WINDOW_MINUTES);
+            for (long m = minute - gap + 1; m <= minute; m++) {
+                minuteCounts[(int) (m % WINDOW_MINUTES)] = 0;
+            }
+            currentMinute = minute;
+        }
+
+        private double activityAt(long now) {
+            if (activity == 0 || now <= activityAt) {
+                return activity;
+            }
+            return activity * Math.pow(0.5, (double) (now - activityAt) / halfLifeMillis);
+        }
+
+        private int countSince(long now, int minutes) {
+            long minute = now / MINUTE_MILLIS;
+            int count = 0;
+            for (int i = 0; i < Math.min(minutes, WINDOW_MINUTES); i++) {
+                long m = minute - i;
+                if (m <= currentMinute && m > currentMinute - WINDOW_MINUTES) {
+                    count += minuteCounts[(int) (m % WINDOW_MINUTES)];
+                }
+            }
+            return count;
+        }
+    }
+
+    private final Map<String, Room> rooms;
+    private final List<OccupancyListener> listeners;
+    private final ScheduledExecutorService sharedTimer;
+    private ScheduledExecutorService timer;
+    private volatile boolean shutdown;
+    private volatile long idleTimeoutMillis;
+    private volatile long halfLifeMillis;
+
+    public OccupancyTracker() {
+        this(null);
+    }
+
+    // Idle checks run on the given timer, or on a thread of the tracker's
+    // own, started with the first motion event, when it is null
+    public OccupancyTracker(ScheduledExecutorService sharedTimer) {
+        this.rooms = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.sharedTimer = sharedTimer;
+        this.idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        this.halfLifeMillis = DEFAULT_HALF_LIFE_MILLIS;
+    }
+
+    public void addListener(OccupancyListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(OccupancyListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Applies from the next idle check on
+    public void setIdleTimeout(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        this.idleTimeoutMillis = millis;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeoutMillis;
+    }
+
+    public void setActivityHalfLife(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive");
+        }
+        this.halfLifeMillis = millis;
+    }
+
+    public void motionDetected(String location) {
+        motionDetected(location, System.currentTimeMillis());
+    }
+
+    public void motionDetected(String location, long epochMillis) {
+        Room room = rooms.computeIfAbsent(location, Room::new);
+        boolean becameOccupied;
+        synchronized (room) {
+            becameOccupied = room.motion(epochMillis);
+            if (room.idleCheck == null) {
+                armIdleCheck(room, epochMillis + idleTimeoutMillis - System.currentTimeMillis());
+            }
+        }
+        if (becameOccupied) {
+            LocalDateTime since = toLocal(epochMillis);
+            for (OccupancyListener listener : listeners) {
+                try {
+                    listener.onOccupied(location, since);
+                } catch (RuntimeException e) {
+                    System.err.println("Occupancy listener failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Occupied by the idle timeout, even if its idle check has not run yet
+    public boolean isOccupied(String location) {
+        Room room = rooms.get(location);
+        if (room == null) {
+            return false;
+        }
+        synchronized (room) {
+            return room.occupied && System.currentTimeMillis() < room.lastMotion + idleTimeoutMillis;
+        }
+    }
+
+    // Start of the current occupancy, or null if the location is idle
+    public LocalDateTime getOccupiedSince(String location) {
+        Room room = rooms.get(location);
+        if (room == null) {
+            return null;
+        }
+        synchronized (room) {
+            boolean occupied = room.occupied && System.currentTimeMillis() < room.lastMotion + idleTimeoutMillis;
+            return occupied ? toLocal(room.occupiedSince) : null;
+        }
+    }
+
+    // When the location went idle (its last motion plus the idle timeout),
+    // or null if it is occupied or has never seen motion
+    public LocalDateTime getIdleSince(String location) {
+        Room room = rooms.get(location);
+        if (room == null) {
+            return null;
+        }
+        synchronized (room) {
+            long idleAt = room.lastMotion + idleTimeoutMillis;
+            if (room.occupied && System.currentTimeMillis() < idleAt) {
+                return null;
+            }
+            return toLocal(room.occupied ? idleAt : room.idleSince);
+        }
+    }
+
+    public LocalDateTime getLastMotion(String location) {
+        Room room = rooms.get(location);
+        if (room == null) {
+            return null;
+        }
+        synchronized (room) {
+            return toLocal(room.lastMotion);
+        }
+    }
+
+    // Motion events in the last given minutes (at most WINDOW_MINUTES),
+    // counting the current minute as one
+    public int getMotionCount(String location, int minutes) {
+        Room room = rooms.get(location);
+        if (room == null) {
+            return 0;
+        }
+        synchronized (room) {
+            return room.countSince(System.currentTimeMillis(), minutes);
+        }
+    }
+
+    // Motion events with exponentially decaying weight; an event counts
+    // half after one half-life
+    public double getActivity(String location) {
+        Room room = rooms.get(location);
+        if (room == null) {
+            return 0;
+        }
+        synchronized (room) {
+            return room.activityAt(System.currentTimeMillis());
+        }
+    }
+
+    public List<String> getOccupiedLocations() {
+        List<String> occupied = new ArrayList<>();
+        for (String location : rooms.keySet()) {
+            if (isOccupied(location)) {
+                occupied.add(location);
+            }
+        }
+        return occupied;
+    }
+
+    public int getLocationCount() {
+        return rooms.size();
+    }
+
+    // Cancels the pending idle checks, so no listener is called any more,
+    // and stops the tracker's own timer
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (timer != null && timer != sharedTimer) {
+                timer.shutdownNow();
+            }
+            timer = null;
+        }
+        for (Room room : rooms.values()) {
+            synchronized (room) {
+                if (room.idleCheck != null) {
+                    room.idleCheck.cancel(false);
+                    room.idleCheck = null;
+                }
+            }
+        }
+    }
+
+    // Called with the room locked
+    private void armIdleCheck(Room room, long delayMillis) {
+        room.idleCheck = null;
+        ScheduledExecutorService executor = timer();
+        if (executor == null) {
+            return;
+        }
+        try {
+            room.idleCheck = executor.schedule(() -> checkIdle(room), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shared timer shut down with its home
+        }
+    }
+
+    private void checkIdle(Room room) {
+        long now = System.currentTimeMillis();
+        long idleAt;
+        synchronized (room) {
+            if (shutdown) {
+                return;
+            }
+            idleAt = room.lastMotion + idleTimeoutMillis;
+            if (now < idleAt) {
+                // Motion since the check was armed; check again at the new deadline
+                armIdleCheck(room, idleAt - now);
+                return;
+            }
+            room.idleCheck = null;
+            room.occupied = false;
+            room.idleSince = idleAt;
+        }
+        LocalDateTime since = toLocal(idleAt);
+        for (OccupancyListener listener : listeners) {
+            try {
+                listener.onIdle(room.location, since);
+            } catch (RuntimeException e) {
+                System.err.println("Occupancy listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService timer() {
+        if (timer == null && !shutdown) {
+            if (sharedTimer != null) {
+                timer = sharedTimer;
+            } else {
+                timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "occupancy-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return timer;
+    }
+
+    private static LocalDateTime toLocal(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,248 @@
+package smarthome.system;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+// Durable log file behind SmartHomeSystem's in-memory log. append() only
+// queues the line; a background thread batches lines into a buffer and
+// writes it to a FileChannel when it fills up or the flush interval
+// elapses, so the callers (device workers included) never touch the disk.
+//
+// The file is rolled over once it exceeds maxBytes or is older than
+// maxAgeMillis: it is renamed to <name>.<yyyyMMdd-HHmmss> and gzipped by a
+// second thread, and a fresh file is started.
+public class RollingFileAppender {
+
+    public static final long DEFAULT_MAX_BYTES = 5 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    // Lines waiting for the writer; beyond that they are dropped and counted
+    private static final int QUEUE_CAPACITY = 16384;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter SEGMENT_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String STOP = new String("stop");
+
+    private final Path file;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<String> queue;
+    private final ByteBuffer buffer;
+    private final Thread writer;
+    private final ExecutorService compressor;
+    private final AtomicLong dropped;
+    private final AtomicLong written;
+    private volatile int rotations;
+
+    private FileChannel channel;
+    private long segmentBytes;
+    private long segmentStarted;
+
+    public RollingFileAppender(Path file) throws IOException {
+        this(file, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public RollingFileAppender(Path file, long maxBytes, long maxAgeMillis, long flushIntervalMillis)
+            throws IOException {
+        if (maxBytes <= 0 || maxAgeMillis <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Limits and flush interval must be positive");
+        }
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.dropped = new AtomicLong();
+        this.written = new AtomicLong();
+        openSegment();
+
+        this.compressor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer = new Thread(this::writeLoop, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Never blocks; if the writer has fallen far behind the line is dropped
+    public void append(String line) {
+        if (!queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Writes everything queued so far, then stops the threads
+    public void close() {
+        try {
+            if (queue.offer(STOP, 5, TimeUnit.SECONDS)) {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getRotationCount() {
+        return rotations;
+    }
+
+    private void writeLoop() {
+        long nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                long wait = nextFlush - System.currentTimeMillis();
+                String line = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+                if (line == STOP) {
+                    break;
+                }
+                if (line != null) {
+                    write(line);
+                }
+                if (System.currentTimeMillis() >= nextFlush) {
+                    long drops = dropped.get();
+                    if (drops > reportedDrops) {
+                        write(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) +
+                              " - " + (drops - reportedDrops) + " log entries dropped, the log file fell behind");
+                        reportedDrops = drops;
+                    }
+                    flushBuffer();
+                    nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+                }
+            }
+            // Drain whatever arrived before close()
+            String line;
+            while ((line = queue.poll()) != null) {
+                if (line != STOP) {
+                    write(line);
+                }
+            }
+            flushBuffer();
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            // Keep the application running; the in-memory log still has everything
+            System.err.println("Error writing log file " + file + ", file logging disabled: " + e.getMessage());
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String line) throws IOException {
+        if (segmentBytes + buffer.position() >= maxBytes ||
+            System.currentTimeMillis() - segmentStarted >= maxAgeMillis) {
+            rotate();
+        }
+        byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            flushBuffer();
+        }
+        if (bytes.length > buffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes));
+        } else {
+            buffer.put(bytes);
+        }
+        written.incrementAndGet();
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            segmentBytes += channel.write(bytes);
+        }
+    }
+
+    private void rotate() throws IOException {
+        flushBuffer();
+        channel.close();
+
+        String name = file.getFileName() + "." + LocalDateTime.now().format(SEGMENT_SUFFIX);
+        Path segment = file.resolveSibling(name);
+        for (int i = 1; Files.exists(segment) || Files.exists(gzipped(segment)); i++) {
+            segment = file.resolveSibling(name + "-" + i);
+        }
+        Files.move(file, segment);
+        rotations++;
+        Path closed = segment;
+        compressor.execute(() -> compress(closed));
+
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+        segmentStarted = System.currentTimeMillis();
+    }
+
+    private static Path gzipped(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + ".gz");
+    }
+
+    private static void compress(Path segment) {
+        Path target = gzipped(segment);
+        try (InputStream in = Files.newInputStream(segment);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            // The uncompressed segment stays where it is
+            System.err.println("Error compressing log segment " + segment + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+            return;
+        }
+        try {
+            Files.delete(segment);
+        } catch (IOException e) {
+            System.err.println("Error deleting compressed log segment " + segment + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package smarthome.system;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import smarthome.interfaces.ScheduleListener;
+import smarthome.models.ScheduledTask;
+
+// Runs the schedule tick at the start of every minute on its own thread,
+// so tasks fire whether or not a UI is running and never on the Swing
+// event thread. Every run is re-aligned to the wall clock instead of using
+// a fixed rate, so the tick cannot drift across a minute boundary, and a
+// minute is never run twice. Listeners hear about a tick once its tasks
+// have been applied.
+//
+// Hosted homes share their shard's timer thread instead of starting one
+// each; stopping such a service only cancels its own pending tick.
+public class ScheduleService {
+
+    // Fire slightly after the boundary so the clock already reads the new minute
+    private static final long BOUNDARY_SLACK_MILLIS = 20;
+
+    private final Function<LocalDateTime, CompletableFuture<List<ScheduledTask>>> tick;
+    private final List<ScheduleListener> listeners;
+    // Shared timer, or null when the service starts a thread of its own
+    private final ScheduledExecutorService sharedTimer;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> nextTick;
+    private LocalDateTime lastMinute;
+
+    public ScheduleService(Function<LocalDateTime, CompletableFuture<List<ScheduledTask>>> tick) {
+        this(tick, null);
+    }
+
+    public ScheduleService(Function<LocalDateTime, CompletableFuture<List<ScheduledTask>>> tick,
+                           ScheduledExecutorService sharedTimer) {
+        this.tick = tick;
+        this.sharedTimer = sharedTimer;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        if (sharedTimer != null) {
+            executor = sharedTimer;
+        } else {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduleNext();
+    }
+
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        if (nextTick != null) {
+            nextTick.cancel(false);
+            nextTick = null;
+        }
+        if (executor != sharedTimer) {
+            executor.shutdownNow();
+        }
+        executor = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    public void addListener(ScheduleListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ScheduleListener listener) {
+        listeners.remove(listener);
+    }
+
+    private synchronized void scheduleNext() {
+        if (executor == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long delay = 60_000 - now % 60_000 + BOUNDARY_SLACK_MILLIS;
+        nextTick = executor.schedule(this::runTick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runTick() {
+        LocalDateTime minute = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        try {
+            if (!minute.equals(lastMinute)) {
+                lastMinute = minute;
+                tick.apply(minute).thenAccept(executed -> notifyListeners(minute, executed));
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking, one bad task must not stop the schedule
+            System.err.println("Scheduled task tick failed: " + e.getMessage());
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    private void notifyListeners(LocalDateTime minute, List<ScheduledTask> executed) {
+        for (ScheduleListener listener : listeners) {
+            try {
+                listener.onTasksExecuted(minute, executed);
+            } catch (RuntimeException e) {
+                System.err.println("Schedule listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
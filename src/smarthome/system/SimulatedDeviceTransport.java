@@ -0,0 +1,101 @@
+package smarthome.system;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import smarthome.exceptions.DeviceCommunicationException;
+import smarthome.interfaces.DeviceTransport;
+import smarthome.models.Device;
+
+// Pretends every device sits behind a slow, unreliable link. Each command
+// is acknowledged after latency +/- jitter, or fails with the given
+// probability. Pending acknowledgements are timer entries rather than
+// sleeping threads, so thousands of commands can be in flight at once.
+public class SimulatedDeviceTransport implements DeviceTransport {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+    private final ScheduledExecutorService timer;
+
+    // Latest acknowledgement deadline per device, keeps acks in send order
+    private final Map<String, Long> lastDeadline;
+
+    private final AtomicLong sent;
+    private final AtomicLong acknowledged;
+    private final AtomicLong failed;
+
+    public SimulatedDeviceTransport(long latencyMillis, long jitterMillis, double failureRate) {
+        if (latencyMillis < 0 || jitterMillis < 0 || failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("Invalid transport settings");
+        }
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+        // One timer thread fires acknowledgements in deadline order
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-transport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastDeadline = new ConcurrentHashMap<>();
+        this.sent = new AtomicLong();
+        this.acknowledged = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+
+    @Override
+    public CompletableFuture<Void> deliver(Device device) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMillis;
+        if (jitterMillis > 0) {
+            delay += random.nextLong(-jitterMillis, jitterMillis + 1);
+        }
+        long now = System.nanoTime();
+        long deadline = lastDeadline.merge(device.getId(),
+                now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)), Math::max);
+        boolean fails = random.nextDouble() < failureRate;
+
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        sent.incrementAndGet();
+        timer.schedule(() -> {
+            if (fails) {
+                failed.incrementAndGet();
+                ack.completeExceptionally(new DeviceCommunicationException(
+                        device.getName() + " did not acknowledge the command"));
+            } else {
+                acknowledged.incrementAndGet();
+                ack.complete(null);
+            }
+        }, deadline - now, TimeUnit.NANOSECONDS);
+        return ack;
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getAcknowledgedCount() {
+        return acknowledged.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getInFlightCount() {
+        return sent.get() - acknowledged.get() - failed.get();
+    }
+
+    // Commands already in flight are still acknowledged
+    @Override
+    public void shutdown() {
+        timer.shutdown();
+    }
+}
@@ -1,26 +1,137 @@
 package smarthome.system;
 
 import smarthome.models.*;
+import smarthome.automation.AutomationEvent;
+import smarthome.automation.RuleEngine;
 import smarthome.exceptions.*;
+import smarthome.history.DeviceHistoryStore;
+import smarthome.interfaces.DeviceCommandDispatcher;
+import smarthome.interfaces.DeviceStateListener;
+import smarthome.interfaces.DeviceTransport;
+import smarthome.interfaces.OccupancyListener;
+import smarthome.interfaces.ScheduleListener;
 import smarthome.interfaces.Switchable;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 public class SmartHomeSystem {
-    private static SmartHomeSystem instance;
+    public static final String DEFAULT_HOME_ID = "default";
+    
+    // The home of the desktop app and the single-home server, created on
+    // first use; the JVM's class initialization makes that thread-safe
+    private static class DefaultHome {
+        private static final SmartHomeSystem INSTANCE = new SmartHomeSystem();
+    }
+    
+    private final String homeId;
     private Map<String, Device> devices;
+    // Immutable list of all devices in the order added, replaced on every
+    // add/remove so readers never need to copy
+    private volatile List<Device> deviceSnapshot;
+    private Map<String, Device> devicesByName;
     private Map<String, User> users;
     private User currentUser;
-    private boolean systemOn;
+    private volatile boolean systemOn;
     private List<String> systemLogs;
+    private List<DeviceStateListener> stateListeners;
+    private DeviceStateListener stateDispatcher;
+    private RuleEngine ruleEngine;
+    private ClimateController climateController;
+    private DeviceHistoryStore historyStore;
+    private EnergyMonitor energyMonitor;
+    private Map<String, Scene> scenes;
+    private ReadWriteLock stateLock;
+    private DeviceExecutor deviceExecutor;
+    private DeviceTransport transport;
+    private volatile boolean consoleEcho;
+    private volatile RollingFileAppender logFile;
+    private final LogIndex logIndex;
+    private final int systemLogSource;
+    // Index source of each attached security system's event log, by device id
+    private final Map<String, Integer> securityLogSources;
+    // Created on first use rather than in the constructor, which must not
+    // hand out this::executeScheduledTasks before the object is complete
+    private final ScheduledExecutorService scheduleTimer;
+    private volatile ScheduleService scheduleService;
+    private final OccupancyTracker occupancyTracker;
     
     private SmartHomeSystem() {
-        devices = new HashMap<>();
+        this(DEFAULT_HOME_ID, new DeviceExecutor(), null);
+    }
+    
+    // An independent home whose device commands and scheduled tasks run on
+    // the given (possibly shared) executor and timer; a null timer gives
+    // the home a scheduler thread of its own. Used by HomeRuntime. Homes
+    // on a shared timer are hosted ones; neither their log nor their
+    // devices print to the console unless asked to.
+    public SmartHomeSystem(String homeId, DeviceExecutor deviceExecutor, ScheduledExecutorService timer) {
+        this.homeId = homeId;
+        // Looked up from device worker threads as well
+        devices = new ConcurrentHashMap<>();
+        deviceSnapshot = Collections.emptyList();
+        devicesByName = new ConcurrentHashMap<>();
+        consoleEcho = timer == null;
         users = new HashMap<>();
         systemOn = false;
         systemLogs = new ArrayList<>();
+        logIndex = new LogIndex();
+        systemLogSource = logIndex.addSource(sequence -> {
+            synchronized (systemLogs) {
+                return sequence < systemLogs.size() ? systemLogs.get((int) sequence) : null;
+            }
+        });
+        securityLogSources = new ConcurrentHashMap<>();
+        scheduleTimer = timer;
+        
+        // Devices report state changes to the dispatcher, which fans them
+        // out to every system-level listener (rule engine, ...)
+        stateListeners = new CopyOnWriteArrayList<>();
+        stateDispatcher = this::dispatchStateChange;
+        
+        // Every device command runs through the device's own queue so
+        // commands for one device never interleave
+        this.deviceExecutor = deviceExecutor;
+        transport = new LocalDeviceTransport();
+        DeviceCommandDispatcher queued = (device, command) -> sendCommand(device, d -> command.run());
+        
+        ruleEngine = new RuleEngine(devices::get, this::logSystemEvent);
+        ruleEngine.setDispatcher(queued);
+        ruleEngine.setEnabled(false);
+        stateListeners.add(ruleEngine);
+        climateController = new ClimateController(this::logSystemEvent);
+        climateController.setDispatcher(queued);
+        stateListeners.add(climateController);
+        historyStore = new DeviceHistoryStore();
+        stateListeners.add(historyStore);
+        energyMonitor = new EnergyMonitor();
+        stateListeners.add(energyMonitor);
+        
+        occupancyTracker = new OccupancyTracker(timer);
+        occupancyTracker.addListener(new OccupancyListener() {
+            @Override
+            public void onIdle(String location, LocalDateTime since) {
+                switchOffIdleLights(location);
+            }
+        });
+        
+        scenes = new ConcurrentHashMap<>();
+        stateLock = new ReentrantReadWriteLock();
         
         // Add admin user by default
         users.put("admin", new AdminUser("admin", "admin123"));
@@ -32,37 +143,61 @@ public class SmartHomeSystem {
     }
     
     public static SmartHomeSystem getInstance() {
-        if (instance == null) {
-            instance = new SmartHomeSystem();
-        }
-        return instance;
+        return DefaultHome.INSTANCE;
+    }
+    
+    public String getHomeId() {
+        return homeId;
     }
     
-    public void turnSystemOn() {
+    // Switches every device on with its default settings; the future
+    // completes once all of them have been handled, and the rule engine
+    // is enabled from then on. Callers on the GUI thread must not wait
+    // for it there.
+    public CompletableFuture<Void> turnSystemOn() {
         this.systemOn = true;
         
-        // Start all devices with default settings
-        for (Device device : devices.values()) {
+        // Start all devices with default settings; commands are pipelined,
+        // so this takes about one device round trip however many there are
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Device device : deviceSnapshot) {
             if (device instanceof Switchable) {
-                ((Switchable) device).turnOn();
-                device.setToDefaultSettings();
+                pending.add(sendCommand(device, d -> {
+                    ((Switchable) d).turnOn();
+                    d.setToDefaultSettings();
+                }));
             }
         }
-        
-        logSystemEvent("System turned ON by " + (currentUser != null ? currentUser.getUsername() : "SYSTEM"));
+        String username = currentUser != null ? currentUser.getUsername() : "SYSTEM";
+        return whenAllRun(pending).thenRun(() -> {
+            ruleEngine.setEnabled(true);
+            logSystemEvent("System turned ON by " + username);
+        });
     }
     
-    public void turnSystemOff() {
+    // Switches every device off; the future completes once all of them
+    // have been handled
+    public CompletableFuture<Void> turnSystemOff() {
         this.systemOn = false;
+        ruleEngine.setEnabled(false);
         
         // Turn off all devices
-        for (Device device : devices.values()) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Device device : deviceSnapshot) {
             if (device instanceof Switchable) {
-                ((Switchable) device).turnOff();
+                pending.add(sendCommand(device, d -> ((Switchable) d).turnOff()));
             }
         }
-        
-        logSystemEvent("System turned OFF by " + (currentUser != null ? currentUser.getUsername() : "SYSTEM"));
+        String username = currentUser != null ? currentUser.getUsername() : "SYSTEM";
+        return whenAllRun(pending).thenRun(() -> logSystemEvent("System turned OFF by " + username));
+    }
+    
+    // Marks the system on without resetting any device, e.g. when a standby
+    // takes over from a failed primary with the devices as they were
+    public void resumeSystem() {
+        this.systemOn = true;
+        ruleEngine.setEnabled(true);
+        logSystemEvent("System resumed with " + deviceSnapshot.size() + " devices");
     }
     
     public boolean isSystemOn() {
@@ -76,13 +211,138 @@ public class SmartHomeSystem {
         }
         
         if (currentUser.hasPermission("ADD_DEVICE")) {
-            devices.put(device.getId(), device);
+            synchronized (devices) {
+                Device replaced = attach(device);
+                publishDevices(Collections.singletonList(device),
+                               replaced != null ? Collections.singleton(replaced) : Collections.emptySet());
+            }
             logSystemEvent("Device added: " + device.getName() + " by " + currentUser.getUsername());
         } else {
             throw new AuthenticationException("User does not have permission to add devices");
         }
     }
     
+    // Registers many devices at once, e.g. from an import. The device list
+    // and name index are rebuilt once at the end instead of per device, so
+    // callers registering more than a handful should use this rather than
+    // addDevice in a loop, which copies the list every time.
+    // A device whose id is already registered replaces the old one.
+    public void addDevices(Collection<? extends Device> newDevices) throws AuthenticationException {
+        if (currentUser == null) {
+            throw new AuthenticationException("User not authenticated");
+        }
+        if (!currentUser.hasPermission("ADD_DEVICE")) {
+            throw new AuthenticationException("User does not have permission to add devices");
+        }
+        
+        List<Device> added = new ArrayList<>(newDevices.size());
+        Set<Device> replaced = new HashSet<>();
+        synchronized (devices) {
+            for (Device device : newDevices) {
+                Device previous = attach(device);
+                if (previous != null) {
+                    replaced.add(previous);
+                }
+                added.add(device);
+            }
+            // An id repeated within the collection keeps only its last device
+            added.removeIf(replaced::contains);
+            publishDevices(added, replaced);
+        }
+        logSystemEvent(added.size() + " devices added by " + currentUser.getUsername() +
+                       (replaced.isEmpty() ? "" : " (" + replaced.size() + " replaced)"));
+    }
+    
+    // Registers and removes devices as a copy of another system, e.g. a
+    // standby following its primary. Not tied to a user: the changes were
+    // authorized where they were made.
+    public void restoreDevices(Collection<? extends Device> restored, Collection<String> removedIds) {
+        List<Device> added = new ArrayList<>(restored.size());
+        Set<Device> removed = new HashSet<>();
+        synchronized (devices) {
+            Set<Device> dropped = new HashSet<>();
+            for (String id : removedIds) {
+                Device device = devices.remove(id);
+                if (device != null) {
+                    dropped.add(device);
+                }
+            }
+            // Replaced devices are detached by attach()
+            removed.addAll(dropped);
+            for (Device device : restored) {
+                Device previous = attach(device);
+                if (previous != null) {
+                    removed.add(previous);
+                }
+                added.add(device);
+            }
+            added.removeIf(removed::contains);
+            publishDevices(added, removed);
+            for (Device device : dropped) {
+                detach(device);
+            }
+        }
+        logSystemEvent(added.size() + " devices restored, " + removed.size() + " replaced or removed");
+    }
+    
+    // Wires a device into the registry and every subsystem, returning the
+    // device it replaced, if any. Called with devices locked.
+    private Device attach(Device device) {
+        Device replaced = devices.put(device.getId(), device);
+        if (replaced != null && replaced != device) {
+            detach(replaced);
+        }
+        device.setReporting(consoleEcho);
+        device.addStateListener(stateDispatcher);
+        historyStore.track(device);
+        energyMonitor.track(device);
+        if (device instanceof SecuritySystem) {
+            SecuritySystem security = (SecuritySystem) device;
+            ruleEngine.observeSecurityMode(security.getSecurityMode());
+            SecurityEventLog log = security.getSecurityEventLog();
+            int source = logIndex.addSource(new LogIndex.LineSource() {
+                @Override
+                public String line(long sequence) {
+                    String line = log.renderRecorded(sequence);
+                    return line != null ? "[" + security.getName() + "] " + line : null;
+                }
+                
+                @Override
+                public long firstSequence() {
+                    return log.getFirstRetained();
+                }
+            });
+            securityLogSources.put(security.getId(), source);
+            log.setListener((sequence, epochMillis, type, argument) ->
+                    logIndex.add(epochMillis, source, sequence,
+                                 security.getName() + " " + SecurityEventLog.format(epochMillis, type, argument)));
+        }
+        if (device instanceof AirConditioner) {
+            climateController.register((AirConditioner) device);
+        }
+        return replaced != device ? replaced : null;
+    }
+    
+    private void detach(Device device) {
+        device.removeStateListener(stateDispatcher);
+        deviceExecutor.remove(device);
+        energyMonitor.untrack(device);
+        // A device replaced by one with the same id hands its history on
+        if (!devices.containsKey(device.getId())) {
+            historyStore.forget(device.getId());
+        }
+        if (device instanceof SecuritySystem) {
+            ((SecuritySystem) device).getSecurityEventLog().setListener(null);
+            Integer source = securityLogSources.remove(device.getId());
+            if (source != null) {
+                logIndex.removeSource(source);
+            }
+        }
+        if (device instanceof AirConditioner) {
+            climateController.unregister((AirConditioner) device);
+        }
+    }
+    
     public void removeDevice(String deviceId) throws DeviceNotFoundException, AuthenticationException {
         // Check if user has permission to remove devices
         if (currentUser == null) {
@@ -90,8 +350,15 @@ public class SmartHomeSystem {
         }
         
         if (currentUser.hasPermission("REMOVE_DEVICE")) {
-            if (devices.containsKey(deviceId)) {
-                Device removed = devices.remove(deviceId);
+            Device removed;
+            synchronized (devices) {
+                removed = devices.remove(deviceId);
+                if (removed != null) {
+                    publishDevices(Collections.emptyList(), Collections.singleton(removed));
+                    detach(removed);
+                }
+            }
+            if (removed != null) {
                 logSystemEvent("Device removed: " + removed.getName() + " by " + currentUser.getUsername());
             } else {
                 throw new DeviceNotFoundException("Device with ID " + deviceId + " not found.");
@@ -109,8 +376,68 @@ public class SmartHomeSystem {
         }
     }
     
+    // Read-only snapshot; cheap to call, reflects later adds/removes only on
+    // the next call
     public List<Device> getAllDevices() {
-        return new ArrayList<>(devices.values());
+        return deviceSnapshot;
+    }
+    
+    public void forEachDevice(Consumer<? super Device> action) {
+        for (Device device : deviceSnapshot) {
+            action.accept(device);
+        }
+    }
+    
+    public Stream<Device> streamDevices() {
+        return deviceSnapshot.stream();
+    }
+    
+    public <T extends Device> Stream<T> streamDevices(Class<T> type) {
+        return deviceSnapshot.stream().filter(type::isInstance).map(type::cast);
+    }
+    
+    public int getDeviceCount() {
+        return deviceSnapshot.size();
+    }
+    
+    // Looks a device up by id, or else by name
+    public Device findDevice(String idOrName) throws DeviceNotFoundException {
+        Device device = devices.get(idOrName);
+        if (device != null) {
+            return device;
+        }
+        device = devicesByName.get(idOrName);
+        if (device != null && device.getName().equals(idOrName)) {
+            return device;
+        }
+        // Renamed since it was indexed
+        for (Device candidate : deviceSnapshot) {
+            if (candidate.getName().equals(idOrName)) {
+                devicesByName.put(idOrName, candidate);
+                return candidate;
+            }
+        }
+        throw new DeviceNotFoundException("Device " + idOrName + " not found.");
+    }
+    
+    // Called with devices locked, in the same critical section as the map
+    // changes it publishes, so a concurrent add or remove can neither slip
+    // between them nor be lost from the snapshot
+    private void publishDevices(List<Device> added, Set<Device> removed) {
+        for (Device device : removed) {
+            devicesByName.remove(device.getName(), device);
+        }
+        for (Device device : added) {
+            devicesByName.putIfAbsent(device.getName(), device);
+        }
+        List<Device> next = new ArrayList<>(deviceSnapshot.size() + added.size());
+        for (Device device : deviceSnapshot) {
+            if (!removed.contains(device)) {
+                next.add(device);
+            }
+        }
+        next.addAll(added);
+        deviceSnapshot = Collections.unmodifiableList(next);
     }
     
     public void login(String username, String password) throws AuthenticationException {
@@ -150,60 +477,393 @@ public class SmartHomeSystem {
     }
     
     public void handleMotionDetected(String locationName) {
+        // Occupancy is tracked even while the system is off
+        occupancyTracker.motionDetected(locationName);
         if (systemOn) {
             logSystemEvent("Motion detected in " + locationName);
             
             // Turn on lights in the location where motion is detected
-            for (Device device : devices.values()) {
+            for (Device device : deviceSnapshot) {
                 if (device instanceof Light && device.getLocation().equals(locationName)) {
                     Light light = (Light) device;
-                    if (light.isMotionActivated() && !light.isOn()) {
-                        light.activateByMotion();
-                        logSystemEvent("Turned on " + device.getName() + " due to motion detection");
-                    }
+                    sendCommand(light, d -> {
+                        if (light.isMotionActivated() && !light.isOn()) {
+                            light.activateByMotion();
+                            logSystemEvent("Turned on " + light.getName() + " due to motion detection");
+                        }
+                    });
                 }
                 
                 // If there's a security system, notify it about motion
                 if (device instanceof SecuritySystem) {
-                    ((SecuritySystem)device).detectMotion(locationName);
+                    submit(device, d -> ((SecuritySystem) d).detectMotion(locationName));
                 }
             }
+            
+            ruleEngine.onEvent(AutomationEvent.motion(locationName));
         }
     }
     
-    public void executeScheduledTasks() {
-        if (!systemOn) return;
+    // Lights that motion switched on go off again once their room is idle;
+    // lights a user switched on are left alone
+    private void switchOffIdleLights(String locationName) {
+        if (!systemOn) {
+            return;
+        }
+        for (Device device : deviceSnapshot) {
+            if (device instanceof Light && device.getLocation().equals(locationName)) {
+                Light light = (Light) device;
+                sendCommand(light, d -> {
+                    if (light.isOn() && light.isActivatedByMotion()) {
+                        light.turnOff();
+                        logSystemEvent("Turned off " + light.getName() + " (" + locationName + " idle)");
+                    }
+                });
+            }
+        }
+    }
+    
+    public void addScene(Scene scene) {
+        scenes.put(scene.getName(), scene);
+        logSystemEvent("Scene defined: " + scene);
+    }
+    
+    public void removeScene(String name) {
+        if (scenes.remove(name) != null) {
+            logSystemEvent("Scene removed: " + name);
+        }
+    }
+    
+    public List<Scene> getScenes() {
+        return new ArrayList<>(scenes.values());
+    }
+    
+    // Applies all commands of a scene as one batch. The scene runs on the
+    // devices' mailboxes, after the commands already queued for them and
+    // before any queued later. Readers using readConsistent() see the home
+    // either before or after the scene, never half-way; listeners get all
+    // of its changes in one onStateChanges call once it is complete. The
+    // future completes once the scene has been applied, or exceptionally
+    // with whatever a command threw.
+    public CompletableFuture<Void> applyScene(String name) throws SceneNotFoundException {
+        Scene scene = scenes.get(name);
+        if (scene == null) {
+            throw new SceneNotFoundException("Scene " + name + " not found.");
+        }
+        
+        Device[] targets = scene.getDevices();
+        CompletableFuture<Void> applied = deviceExecutor.executeTogether(Arrays.asList(targets), () -> {
+            List<StateChange> changes = new ArrayList<>();
+            for (Device device : targets) {
+                device.beginBatch();
+            }
+            stateLock.writeLock().lock();
+            try {
+                scene.executeCommands();
+            } finally {
+                stateLock.writeLock().unlock();
+                for (Device device : targets) {
+                    changes.addAll(device.endBatch());
+                }
+            }
+            // Still before any later command for these devices
+            if (!changes.isEmpty()) {
+                for (DeviceStateListener listener : stateListeners) {
+                    listener.onStateChanges(changes);
+                }
+            }
+        });
+        return applied.thenRun(() -> logSystemEvent("Scene applied: " + scene.getName() + " (" +
+                scene.getCommandCount() + " commands on " + targets.length + " devices)"));
+    }
+    
+    // Runs a multi-device read so it never observes a partially applied scene
+    public <T> T readConsistent(Supplier<T> reader) {
+        stateLock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+    
+    public RuleEngine getRuleEngine() {
+        return ruleEngine;
+    }
+    
+    public ClimateController getClimateController() {
+        return climateController;
+    }
+    
+    public DeviceHistoryStore getHistoryStore() {
+        return historyStore;
+    }
+    
+    public OccupancyTracker getOccupancyTracker() {
+        return occupancyTracker;
+    }
+    
+    public EnergyMonitor getEnergyMonitor() {
+        return energyMonitor;
+    }
+    
+    // Listeners registered here receive state changes from every device in the home
+    public void addDeviceStateListener(DeviceStateListener listener) {
+        if (!stateListeners.contains(listener)) {
+            stateListeners.add(listener);
+        }
+    }
+    
+    public void removeDeviceStateListener(DeviceStateListener listener) {
+        stateListeners.remove(listener);
+    }
+    
+    private void dispatchStateChange(Device device, DeviceAttribute attribute, Object value) {
+        for (DeviceStateListener listener : stateListeners) {
+            listener.onStateChange(device, attribute, value);
+        }
+    }
+    
+    // Starts running the scheduled tasks at the start of every minute on a
+    // background thread; does nothing if already running
+    public void startScheduler() {
+        scheduleService().start();
+    }
+    
+    public void stopScheduler() {
+        ScheduleService service = scheduleService;
+        if (service != null) {
+            service.stop();
+        }
+    }
+    
+    public boolean isSchedulerRunning() {
+        ScheduleService service = scheduleService;
+        return service != null && service.isRunning();
+    }
+    
+    public void addScheduleListener(ScheduleListener listener) {
+        scheduleService().addListener(listener);
+    }
+    
+    public void removeScheduleListener(ScheduleListener listener) {
+        ScheduleService service = scheduleService;
+        if (service != null) {
+            service.removeListener(listener);
+        }
+    }
+    
+    private synchronized ScheduleService scheduleService() {
+        if (scheduleService == null) {
+            scheduleService = new ScheduleService(this::executeScheduledTasks, scheduleTimer);
+        }
+        return scheduleService;
+    }
+    
+    public CompletableFuture<List<ScheduledTask>> executeScheduledTasks() {
+        return executeScheduledTasks(LocalDateTime.now());
+    }
+    
+    // Sends every task due at the given minute to its device; completes with
+    // those tasks once all of them have been applied (or have failed)
+    public CompletableFuture<List<ScheduledTask>> executeScheduledTasks(LocalDateTime now) {
+        if (!systemOn) return CompletableFuture.completedFuture(Collections.emptyList());
         
-        LocalDateTime now = LocalDateTime.now();
         int dayOfWeek = now.getDayOfWeek().getValue() % 7; // 0 = Sunday, 6 = Saturday
         
-        for (Device device : devices.values()) {
+        // Time-band and quiet-hours adjustments for all air conditioners
+        climateController.tick(now.toLocalTime());
+        
+        List<ScheduledTask> executed = new ArrayList<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Device device : deviceSnapshot) {
             for (ScheduledTask task : device.getScheduledTasks()) {
                 if (task.isEnabled() && task.getDaysOfWeek()[dayOfWeek]) {
                     // Check if it's time to execute the task
                     if (task.getTime().getHour() == now.getHour() && 
                         task.getTime().getMinute() == now.getMinute()) {
-                        task.execute();
-                        logSystemEvent("Executed scheduled task: " + task.getName() + " for " + device.getName());
+                        executed.add(task);
+                        pending.add(sendCommand(device, d -> {
+                            task.execute();
+                            logSystemEvent("Executed scheduled task: " + task.getName() + " for " + d.getName());
+                        }));
                     }
                 }
             }
         }
+        List<ScheduledTask> result = Collections.unmodifiableList(executed);
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                                .handle((done, error) -> result);
     }
     
+    // Queues a command on the device's mailbox. Commands for the same device
+    // run one at a time in submission order; the future completes once this
+    // one has run.
+    public CompletableFuture<Void> submit(Device device, Consumer<Device> command) {
+        return deviceExecutor.execute(device, command);
+    }
+    
+    // Sends a command to the device over the transport and applies it to the
+    // device model once the device acknowledged it. The future completes
+    // exceptionally with a DeviceCommunicationException if it did not.
+    public CompletableFuture<Void> sendCommand(Device device, Consumer<Device> command) {
+        CompletableFuture<Void> result = transport.deliver(device).thenCompose(ack -> submit(device, command));
+        result.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof DeviceCommunicationException) {
+                logSystemEvent("Command to " + device.getName() + " failed: " + cause.getMessage());
+            }
+            return null;
+        });
+        return result;
+    }
+    
+    // Like sendCommand, but only applies the command if the device is still
+    // at expectedVersion, e.g. the version an operator saw when making the
+    // change. Completes with the device's new version, or exceptionally with
+    // a StaleDeviceStateException if someone else changed it first.
+    public CompletableFuture<Long> sendCommandIfVersion(Device device, long expectedVersion, Consumer<Device> command) {
+        if (device.getVersion() != expectedVersion) {
+            // Already outdated, don't bother the device
+            return CompletableFuture.failedFuture(staleState(device, expectedVersion));
+        }
+        return transport.deliver(device)
+                .thenCompose(ack -> submitAndGet(device, d -> d.updateIfVersion(expectedVersion, command) ? d.getVersion() : -1L))
+                .thenCompose(version -> version >= 0
+                        ? CompletableFuture.completedFuture(version)
+                        : CompletableFuture.failedFuture(staleState(device, expectedVersion)));
+    }
+    
+    private StaleDeviceStateException staleState(Device device, long expectedVersion) {
+        return new StaleDeviceStateException(device.getName() + " was changed by someone else",
+                                             expectedVersion, device.getVersion());
+    }
+    
+    public void setDeviceTransport(DeviceTransport transport) {
+        DeviceTransport previous = this.transport;
+        this.transport = transport;
+        previous.shutdown();
+    }
+    
+    public DeviceTransport getDeviceTransport() {
+        return transport;
+    }
+    
+    public <T> CompletableFuture<T> submitAndGet(Device device, Function<Device, T> command) {
+        return deviceExecutor.submit(device, command);
+    }
+    
+    public DeviceExecutor getDeviceExecutor() {
+        return deviceExecutor;
+    }
+    
+    // Stops the scheduler, transport and device workers, e.g. when a server
+    // exits; commands already queued are still applied
+    public void shutdown() {
+        transport.shutdown();
+        stopScheduler();
+        occupancyTracker.shutdown();
+        deviceExecutor.shutdown();
+        setLogFile(null);
+    }
+    
+    // Completes once every command has run, failed or not; failures were
+    // logged per device, the other devices were handled
+    private static CompletableFuture<Void> whenAllRun(List<CompletableFuture<Void>> pending) {
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                                .handle((done, error) -> null);
+    }
+    
+    // Called from device worker threads as well as the caller's thread
     private void logSystemEvent(String event) {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         String logEntry = timestamp + " - " + event;
-        systemLogs.add(logEntry);
+        long sequence;
+        synchronized (systemLogs) {
+            systemLogs.add(logEntry);
+            sequence = systemLogs.size() - 1;
+            // Queued in the same order as the in-memory log
+            RollingFileAppender appender = logFile;
+            if (appender != null) {
+                appender.append(logEntry);
+            }
+        }
+        // Indexed outside the log's lock; the index calls back into the log
+        logIndex.add(System.currentTimeMillis(), systemLogSource, sequence, logEntry);
         
         // Print to console for debugging
-        System.out.println(logEntry);
+        if (consoleEcho) {
+            System.out.println(logEntry);
+        }
+    }
+    
+    // Also writes every log entry to the given file from now on, with the
+    // default rotation limits and flush interval
+    public void enableLogFile(Path file) throws IOException {
+        setLogFile(new RollingFileAppender(file));
+    }
+    
+    // Replaces (and closes) the current log file appender; null disables it
+    public void setLogFile(RollingFileAppender appender) {
+        RollingFileAppender previous;
+        synchronized (systemLogs) {
+            previous = logFile;
+            logFile = appender;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    public RollingFileAppender getLogFile() {
+        return logFile;
+    }
+    
+    // Whether log entries, and the home's devices' feedback, are also
+    // printed to the console
+    public void setConsoleEcho(boolean enabled) {
+        this.consoleEcho = enabled;
+        for (Device device : deviceSnapshot) {
+            device.setReporting(enabled);
+        }
+    }
+    
+    public int getSystemLogCount() {
+        synchronized (systemLogs) {
+            return systemLogs.size();
+        }
+    }
+    
+    // Full-text search over the system log and the logs of every registered
+    // security system: lines containing all words of the query within
+    // [from, to), newest first. Either bound may be null.
+    public List<String> searchLogs(String query, LocalDateTime from, LocalDateTime to, int limit) {
+        if (currentUser == null || !currentUser.hasPermission("VIEW_LOGS")) {
+            return new ArrayList<>();
+        }
+        long fromMillis = from != null ? from.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : Long.MIN_VALUE;
+        long toMillis = to != null ? to.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : Long.MAX_VALUE;
+        return logIndex.search(query, fromMillis, toMillis, limit);
+    }
+    
+    // Entries [from, from + count) of the system log, for viewers that page
+    // through it instead of copying all of it
+    public List<String> getSystemLogs(int from, int count) {
+        if (currentUser == null || !currentUser.hasPermission("VIEW_LOGS")) {
+            return new ArrayList<>();
+        }
+        synchronized (systemLogs) {
+            int end = Math.min(systemLogs.size(), from + count);
+            return from < end ? new ArrayList<>(systemLogs.subList(from, end)) : new ArrayList<>();
+        }
     }
     
     public List<String> getSystemLogs() {
         // Only admin can access logs
         if (currentUser != null && currentUser.hasPermission("VIEW_LOGS")) {
-            return new ArrayList<>(systemLogs);
+            synchronized (systemLogs) {
+                return new ArrayList<>(systemLogs);
+            }
         }
         return new ArrayList<>();
     }
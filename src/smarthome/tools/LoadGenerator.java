@@ -0,0 +1,431 @@
+package smarthome.tools;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import smarthome.exceptions.StaleDeviceStateException;
+import smarthome.models.*;
+import smarthome.system.SimulatedDeviceTransport;
+import smarthome.system.SmartHomeSystem;
+
+// Headless load generator and soak-test harness. Builds a synthetic home
+// of the requested size, then drives motion events, operator commands and
+// schedule ticks at fixed rates while reporting throughput, latency
+// percentiles, heap and GC activity at every interval.
+//
+// Usage: LoadGenerator [--homes N] [--rooms N] [--devices N] [--users N]
+//                      [--tasks N] [--motion-rate R] [--command-rate R]
+//                      [--tick-rate R] [--duration 60s|30m|4h] [--report 10s]
+//                      [--latency MS] [--jitter MS] [--failure-rate P] [--seed N]
+//
+// --rooms is per home, --devices per room and --tasks per device; rates are
+// events per second. With --latency the simulated device transport is used.
+// Every schedule tick stands for the next minute of a simulated clock, so
+// each one finds the tasks due in that minute, whatever the tick rate.
+public class LoadGenerator {
+
+    private static final long DRIVER_PERIOD_MILLIS = 10;
+
+    private static class Settings {
+        int homes = 1;
+        int rooms = 10;
+        int devicesPerRoom = 10;
+        int users = 5;
+        int tasksPerDevice = 1;
+        double motionRate = 20;
+        double commandRate = 200;
+        double tickRate = 1;
+        long durationSeconds = 60;
+        long reportSeconds = 10;
+        long latencyMillis = 0;
+        long jitterMillis = 0;
+        double failureRate = 0;
+        long seed = 42;
+    }
+
+    private static class Metric {
+        private final String name;
+        private final LatencyHistogram interval = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        private Metric(String name) {
+            this.name = name;
+        }
+
+        private void record(long nanos) {
+            interval.recordNanos(nanos);
+            total.recordNanos(nanos);
+        }
+
+        private String describe(LatencyHistogram histogram, double seconds) {
+            return String.format("%s %.1f/s p50 %s p95 %s p99 %s max %s", name,
+                    histogram.getCount() / seconds,
+                    millis(histogram.getPercentileMicros(50)),
+                    millis(histogram.getPercentileMicros(95)),
+                    millis(histogram.getPercentileMicros(99)),
+                    millis(histogram.getMaxMicros()));
+        }
+    }
+
+    // Turns a target rate into a number of events per driver period,
+    // carrying fractions over so low rates still fire
+    private static class RateDriver {
+        private final double perPeriod;
+        private double owed;
+
+        private RateDriver(double perSecond) {
+            this.perPeriod = perSecond * DRIVER_PERIOD_MILLIS / 1000.0;
+        }
+
+        private int due() {
+            owed += perPeriod;
+            int events = (int) owed;
+            owed -= events;
+            return events;
+        }
+    }
+
+    private final Settings settings;
+    private final SmartHomeSystem system;
+    private final Random random;
+    private final List<Device> devices;
+    private final List<String> locations;
+
+    private final Metric motion = new Metric("motion");
+    private final Metric commands = new Metric("commands");
+    private final Metric ticks = new Metric("ticks");
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    // Simulated minute of the last schedule tick; only the tick driver
+    // advances it
+    private LocalDateTime tickClock;
+    private long lastGcCount;
+    private long lastGcMillis;
+
+    private LoadGenerator(Settings settings) {
+        this.settings = settings;
+        this.system = SmartHomeSystem.getInstance();
+        this.random = new Random(settings.seed);
+        this.devices = new ArrayList<>();
+        this.locations = new ArrayList<>();
+    }
+
+    public static void main(String[] args) {
+        Settings settings;
+        try {
+            settings = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [--homes N] [--rooms N] [--devices N] [--users N] [--tasks N]\n" +
+                               "                     [--motion-rate R] [--command-rate R] [--tick-rate R]\n" +
+                               "                     [--duration 60s|30m|4h] [--report 10s]\n" +
+                               "                     [--latency MS] [--jitter MS] [--failure-rate P] [--seed N]");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            new LoadGenerator(settings).run();
+        } catch (Exception e) {
+            System.err.println("Load test failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static Settings parse(String[] args) {
+        Settings settings = new Settings();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--homes": settings.homes = Integer.parseInt(value); break;
+                    case "--rooms": settings.rooms = Integer.parseInt(value); break;
+                    case "--devices": settings.devicesPerRoom = Integer.parseInt(value); break;
+                    case "--users": settings.users = Integer.parseInt(value); break;
+                    case "--tasks": settings.tasksPerDevice = Integer.parseInt(value); break;
+                    case "--motion-rate": settings.motionRate = Double.parseDouble(value); break;
+                    case "--command-rate": settings.commandRate = Double.parseDouble(value); break;
+                    case "--tick-rate": settings.tickRate = Double.parseDouble(value); break;
+                    case "--duration": settings.durationSeconds = parseSeconds(value); break;
+                    case "--report": settings.reportSeconds = parseSeconds(value); break;
+                    case "--latency": settings.latencyMillis = Long.parseLong(value); break;
+                    case "--jitter": settings.jitterMillis = Long.parseLong(value); break;
+                    case "--failure-rate": settings.failureRate = Double.parseDouble(value); break;
+                    case "--seed": settings.seed = Long.parseLong(value); break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+        if (settings.homes <= 0 || settings.rooms <= 0 || settings.devicesPerRoom <= 0 ||
+            settings.reportSeconds <= 0 || settings.durationSeconds <= 0) {
+            throw new IllegalArgumentException("Sizes, duration and report interval must be positive");
+        }
+        return settings;
+    }
+
+    // Accepts plain seconds or a number with an s, m or h suffix
+    private static long parseSeconds(String value) {
+        char unit = value.charAt(value.length() - 1);
+        if (Character.isDigit(unit)) {
+            return Long.parseLong(value);
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (unit) {
+            case 's': return amount;
+            case 'm': return amount * 60;
+            case 'h': return amount * 3600;
+            default: throw new NumberFormatException(value);
+        }
+    }
+
+    public void run() throws Exception {
+        // Per-command console output would dominate everything we measure
+        Device.setConsoleOutput(false);
+        system.setConsoleEcho(false);
+        system.login("admin", "admin123");
+
+        if (settings.latencyMillis > 0 || settings.jitterMillis > 0 || settings.failureRate > 0) {
+            system.setDeviceTransport(new SimulatedDeviceTransport(
+                    settings.latencyMillis, settings.jitterMillis, settings.failureRate));
+        }
+
+        long start = System.nanoTime();
+        buildHome();
+        System.out.printf("Built %d devices in %d locations, %d users, %d tasks in %.0f ms%n",
+                devices.size(), locations.size(), settings.users,
+                devices.size() * settings.tasksPerDevice, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        system.turnSystemOn().join();
+        System.out.printf("System turned on in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+        resetGcBaseline();
+
+        ScheduledExecutorService drivers = Executors.newScheduledThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "load-driver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RateDriver motionRate = new RateDriver(settings.motionRate);
+        RateDriver commandRate = new RateDriver(settings.commandRate);
+        RateDriver tickRate = new RateDriver(settings.tickRate);
+        // Separate random sources, the drivers run on different threads
+        Random motionRandom = new Random(random.nextLong());
+        Random commandRandom = new Random(random.nextLong());
+
+        drivers.scheduleAtFixedRate(() -> {
+            for (int i = motionRate.due(); i > 0; i--) {
+                driveMotion(motionRandom);
+            }
+        }, 0, DRIVER_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        drivers.scheduleAtFixedRate(() -> {
+            for (int i = commandRate.due(); i > 0; i--) {
+                driveCommand(commandRandom);
+            }
+        }, 0, DRIVER_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        drivers.scheduleAtFixedRate(() -> {
+            for (int i = tickRate.due(); i > 0; i--) {
+                driveTick();
+            }
+        }, 0, DRIVER_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+        long runStart = System.nanoTime();
+        long end = runStart + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+        long nextReport = runStart;
+        long lastReport = runStart;
+        while (System.nanoTime() < end) {
+            nextReport += TimeUnit.SECONDS.toNanos(settings.reportSeconds);
+            long sleep = Math.min(nextReport, end) - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+            long now = System.nanoTime();
+            report(now - runStart, (now - lastReport) / 1e9);
+            lastReport = now;
+        }
+
+        drivers.shutdownNow();
+        drainInFlight();
+        summarize((System.nanoTime() - runStart) / 1e9);
+    }
+
+    private void buildHome() throws Exception {
+        for (int u = 0; u < settings.users; u++) {
+            system.addUser(new User("load-user-" + u, "load" + u));
+        }
+
+        // Tasks are spread over the simulated minutes the ticks of the run
+        // cover, so every tick finds some that are due
+        tickClock = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        LocalTime firstTask = tickClock.plusMinutes(1).toLocalTime();
+        long taskMinutes = Math.max(1, Math.min(24 * 60, Math.round(settings.tickRate * settings.durationSeconds)));
+        boolean[] everyDay = new boolean[7];
+        Arrays.fill(everyDay, true);
+        int taskCount = 0;
+
+        for (int h = 0; h < settings.homes; h++) {
+            SecuritySystem security = new SecuritySystem("Security H" + h, "Home " + h + " Entrance", "admin");
+            devices.add(security);
+            for (int r = 0; r < settings.rooms; r++) {
+                String location = "Home " + h + " Room " + r;
+                locations.add(location);
+                for (int d = 0; d < settings.devicesPerRoom; d++) {
+                    Device device;
+                    switch (d % 3) {
+                        case 0:
+                            Light light = new Light("Light H" + h + "R" + r + "D" + d, location, "admin");
+                            light.setMotionActivated(d % 2 == 0);
+                            device = light;
+                            break;
+                        case 1:
+                            device = new Fan("Fan H" + h + "R" + r + "D" + d, location, "admin");
+                            break;
+                        default:
+                            device = new AirConditioner("AC H" + h + "R" + r + "D" + d, location, "admin");
+                            break;
+                    }
+                    devices.add(device);
+                    for (int t = 0; t < settings.tasksPerDevice; t++) {
+                        LocalTime time = firstTask.plusMinutes(taskCount++ % taskMinutes);
+                        device.addScheduledTask(new ScheduledTask("Load task " + t, device,
+                                t % 2 == 0 ? "ON" : "OFF", new String[0], time, everyDay));
+                    }
+                }
+            }
+        }
+        // Registered in one go; adding them one by one copies the device
+        // list every time
+        system.addDevices(devices);
+    }
+
+    private void driveMotion(Random random) {
+        String location = locations.get(random.nextInt(locations.size()));
+        long start = System.nanoTime();
+        system.handleMotionDetected(location);
+        motion.record(System.nanoTime() - start);
+    }
+
+    // The same kind of conditional update the GUI controls send
+    private void driveCommand(Random random) {
+        Device device = devices.get(random.nextInt(devices.size()));
+        DeviceCommand command = randomCommand(device, random);
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        system.sendCommandIfVersion(device, device.getVersion(), command::execute)
+              .whenComplete((version, error) -> {
+                  inFlight.decrementAndGet();
+                  commands.record(System.nanoTime() - start);
+                  if (error != null) {
+                      Throwable cause = error instanceof CompletionException && error.getCause() != null
+                              ? error.getCause() : error;
+                      if (cause instanceof StaleDeviceStateException) {
+                          conflicts.incrementAndGet();
+                      } else {
+                          commands.errors.incrementAndGet();
+                      }
+                  }
+              });
+    }
+
+    private static DeviceCommand randomCommand(Device device, Random random) {
+        int choice = random.nextInt(3);
+        if (choice == 0) {
+            return new DeviceCommand(random.nextBoolean() ? "ON" : "OFF");
+        }
+        if (device instanceof Light) {
+            return new DeviceCommand("SET_BRIGHTNESS", String.valueOf(random.nextInt(101)));
+        } else if (device instanceof Fan) {
+            return new DeviceCommand("SET_SPEED", String.valueOf(1 + random.nextInt(5)));
+        } else if (device instanceof AirConditioner) {
+            return new DeviceCommand("SET_TEMPERATURE", String.valueOf(16 + random.nextInt(15)));
+        } else if (device instanceof SecuritySystem) {
+            String[] modes = {"HOME", "AWAY", "DISARMED"};
+            return new DeviceCommand("SET_SECURITY_MODE", modes[random.nextInt(modes.length)]);
+        }
+        return new DeviceCommand("ON");
+    }
+
+    private void driveTick() {
+        tickClock = tickClock.plusMinutes(1);
+        long start = System.nanoTime();
+        system.executeScheduledTasks(tickClock);
+        ticks.record(System.nanoTime() - start);
+    }
+
+    private void report(long elapsedNanos, double seconds) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+
+        System.out.printf("[%6ds] %s | %s errors %d conflicts %d in-flight %d | %s | heap %d/%d MB gc %d (%d ms) | logs %d%n",
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos),
+                motion.describe(motion.interval, seconds),
+                commands.describe(commands.interval, seconds),
+                commands.errors.get(), conflicts.get(), inFlight.get(),
+                ticks.describe(ticks.interval, seconds),
+                heap.getUsed() >> 20, heap.getMax() >> 20,
+                gcCount - lastGcCount, gcMillis - lastGcMillis,
+                system.getSystemLogCount());
+
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+        motion.interval.reset();
+        commands.interval.reset();
+        ticks.interval.reset();
+    }
+
+    private void resetGcBaseline() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            lastGcCount += Math.max(0, collector.getCollectionCount());
+            lastGcMillis += Math.max(0, collector.getCollectionTime());
+        }
+    }
+
+    private void drainInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        if (inFlight.get() > 0) {
+            System.out.println(inFlight.get() + " command(s) still in flight after 30 s");
+        }
+    }
+
+    private void summarize(double seconds) {
+        System.out.println("===== Summary (" + Math.round(seconds) + " s) =====");
+        System.out.println(motion.describe(motion.total, seconds));
+        System.out.println(commands.describe(commands.total, seconds) +
+                           " errors " + commands.errors.get() + " conflicts " + conflicts.get());
+        System.out.println(ticks.describe(ticks.total, seconds));
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2fms", micros / 1000.0);
+    }
+}